@@ -165,7 +165,19 @@ tasks {
     }
 
     test {
-        useJUnitPlatform()
+        useJUnitPlatform {
+            excludeTags("benchmark")
+        }
+    }
+
+    register<Test>("benchmark") {
+        description = "Runs the benchmarks tagged with 'benchmark'."
+        group = "verification"
+        testClassesDirs = sourceSets["test"].output.classesDirs
+        classpath = sourceSets["test"].runtimeClasspath
+        useJUnitPlatform {
+            includeTags("benchmark")
+        }
     }
 
     signPlugin {
@@ -4,13 +4,20 @@
  */
 package com.didalgo.intellij.chatgpt;
 
+import com.didalgo.intellij.chatgpt.chat.AssistantType;
+import com.didalgo.intellij.chatgpt.chat.models.ModelType;
+import com.didalgo.intellij.chatgpt.chat.models.TokenizerRegistry;
 import com.didalgo.intellij.chatgpt.settings.GeneralSettings;
 import com.didalgo.intellij.chatgpt.ui.action.editor.ActionsUtil;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.startup.StartupActivity;
+import com.intellij.util.concurrency.AppExecutorUtil;
 import lombok.Getter;
 import org.jetbrains.annotations.NotNull;
 
+import java.util.ArrayList;
+import java.util.List;
+
 public class StartupHandler implements StartupActivity {
 
     private @Getter static volatile boolean fullyStarted;
@@ -19,10 +26,19 @@ public class StartupHandler implements StartupActivity {
     @Override
     public void runActivity(@NotNull Project project) {
         try {
-            GeneralSettings.getInstance();
+            var settings = GeneralSettings.getInstance();
             ActionsUtil.refreshActions();
+            TokenizerRegistry.getInstance().warmUp(getEnabledModels(settings), AppExecutorUtil.getAppExecutorService());
         } finally {
             fullyStarted = true;
         }
     }
+
+    private static List<ModelType> getEnabledModels(GeneralSettings settings) {
+        List<ModelType> models = new ArrayList<>();
+        for (var assistantType : settings.getEnabledInToolWindow())
+            if (assistantType != AssistantType.System.ONLINE)
+                models.add(settings.getAssistantOptions(assistantType).getModelType());
+        return models;
+    }
 }
@@ -27,7 +27,19 @@ public interface ChatLink {
 
     ConversationContext getConversationContext();
 
-    Future<?> pushMessage(String prompt, List<? extends TextContent> textContents);
+    default Future<?> pushMessage(String prompt, List<? extends TextContent> textContents) {
+        return pushMessage(prompt, textContents, TokenBudgetPlanner.CHAT_ACTION);
+    }
+
+    /**
+     * Sends the prompt with the given context to the assistant.
+     *
+     * @param prompt the user prompt
+     * @param textContents the text contents attached to the prompt
+     * @param actionType the type of the action sending the prompt, used to predict the reply length
+     * @return the future completed when the message has been pushed
+     */
+    Future<?> pushMessage(String prompt, List<? extends TextContent> textContents, String actionType);
 
     void addChatMessageListener(ChatMessageListener listener);
 
@@ -4,7 +4,10 @@
  */
 package com.didalgo.intellij.chatgpt.chat;
 
+import com.didalgo.intellij.chatgpt.core.PluginExecutors;
 import com.didalgo.intellij.chatgpt.core.TextSubstitutor;
+import com.didalgo.intellij.chatgpt.diagnostic.ChatExchangeEvent;
+import com.didalgo.intellij.chatgpt.settings.GeneralSettings;
 import com.didalgo.intellij.chatgpt.text.TextContent;
 import com.didalgo.intellij.chatgpt.ui.prompt.context.DefaultInputContext;
 import com.intellij.openapi.application.ApplicationManager;
@@ -29,6 +32,7 @@ public class ChatLinkService extends AbstractChatLink {
         this.conversationHandler = engine;
         this.conversationContext = new ChatLinkState(configuration);
         this.conversationContext.setTextSubstitutor(project.getService(TextSubstitutor.class));
+        this.conversationContext.setTruncationMode(() -> GeneralSettings.getInstance().getTruncationMode());
         this.inputContext = new DefaultInputContext();
     }
 
@@ -48,11 +52,13 @@ public class ChatLinkService extends AbstractChatLink {
     }
 
     @Override
-    public Future<?> pushMessage(String prompt, List<? extends TextContent> textContents) {
-        return ApplicationManager.getApplication().executeOnPooledThread(() -> pushMessage(prompt, textContents, getInputContext()));
+    public Future<?> pushMessage(String prompt, List<? extends TextContent> textContents, String actionType) {
+        return PluginExecutors.getExecutor().submit(() -> pushMessage(prompt, textContents, actionType, getInputContext()));
     }
 
-    public void pushMessage(String prompt, List<? extends TextContent> textContents, InputContext inputContext) {
+    public void pushMessage(String prompt, List<? extends TextContent> textContents, String actionType, InputContext inputContext) {
+        var jfrEvent = new ChatExchangeEvent();
+        jfrEvent.begin();
         ChatMessageComposer composer = ApplicationManager.getApplication().getService(ChatMessageComposer.class);
         List<TextContent> mergedCtx = mergeContext(textContents, inputContext);
         List<Media> mediaList = getMediaAttachments(inputContext);
@@ -60,10 +66,17 @@ public class ChatLinkService extends AbstractChatLink {
         if (message.getContent().isEmpty()) {
             return;
         }
+        message = TokenBudgetPlanner.withActionType(message, actionType);
 
         inputContext.clear();
 
-        ChatMessageListener listener = this.chatMessageListeners.fire();
+        if (jfrEvent.isEnabled()) {
+            jfrEvent.model = getModelIdIfPresent();
+            jfrEvent.actionType = actionType;
+            jfrEvent.promptChars = message.getContent().length();
+            jfrEvent.mediaCount = mediaList.size();
+        }
+        ChatMessageListener listener = jfrEvent.committingOnEnd(this.chatMessageListeners.fire());
         ChatMessageEvent.Starting event = ChatMessageEvent.starting(this, message);
         try {
             listener.exchangeStarting(event);
@@ -78,6 +91,14 @@ public class ChatLinkService extends AbstractChatLink {
         }
     }
 
+    private String getModelIdIfPresent() {
+        try {
+            return conversationContext.getModelType().id();
+        } catch (UnsupportedOperationException e) {
+            return null;
+        }
+    }
+
     private static List<TextContent> mergeContext(List<? extends TextContent> textContents, InputContext inputContext) {
         if (inputContext.getAttachments().isEmpty()) {
             return List.copyOf(textContents);
@@ -6,29 +6,42 @@ package com.didalgo.intellij.chatgpt.chat;
 
 import com.didalgo.gpt3.ChatFormatDescriptor;
 import com.didalgo.gpt3.GPT3Tokenizer;
-import com.didalgo.intellij.chatgpt.chat.messages.MessageSupport;
+import com.didalgo.intellij.chatgpt.chat.client.ChatClientHolder;
 import com.didalgo.intellij.chatgpt.chat.models.ModelType;
 import com.didalgo.intellij.chatgpt.core.TextSubstitutor;
+import com.didalgo.intellij.chatgpt.diagnostic.HistoryTrimEvent;
+import com.didalgo.intellij.chatgpt.settings.GeneralSettings;
 import com.didalgo.intellij.chatgpt.text.TextContent;
 import com.intellij.openapi.application.ApplicationInfo;
+import com.intellij.util.concurrency.AppExecutorUtil;
 import org.springframework.ai.chat.messages.Message;
 import org.springframework.ai.chat.messages.SystemMessage;
 import org.springframework.ai.chat.messages.UserMessage;
 
+import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Objects;
 import java.util.function.Supplier;
 
-import static com.didalgo.intellij.chatgpt.chat.ChatMessageUtils.countTokens;
 import static com.didalgo.intellij.chatgpt.chat.ChatMessageUtils.isRoleSystem;
 
 public class ChatLinkState implements ConversationContext {
 
+    /** The fraction of the input token limit at which background compaction kicks in. */
+    private static final double COMPACTION_THRESHOLD = 0.75;
+    /** The number of most recent messages never summarized by compaction. */
+    private static final int COMPACTION_KEEP_RECENT = 4;
+    /** The action type under which the output budget of the summarizing model is planned. */
+    private static final String COMPACTION_ACTION = "compaction";
+
     private final LinkedList<Message> chatMessages = new LinkedList<>();
     private volatile List<? extends TextContent> lastSentTextFragments = List.of();
     private volatile TextSubstitutor textSubstitutor = TextSubstitutor.NONE;
+    private volatile Supplier<TruncationMode> truncationMode = () -> TruncationMode.KEEP_TAIL;
     private final AssistantConfiguration configuration;
+    private volatile ConversationCompactor compactor;
+    private volatile TokenBudget tokenBudget;
 
 
     public ChatLinkState(AssistantConfiguration configuration) {
@@ -51,6 +64,25 @@ public class ChatLinkState implements ConversationContext {
         return textSubstitutor;
     }
 
+    public void setTruncationMode(TruncationMode truncationMode) {
+        Objects.requireNonNull(truncationMode);
+        setTruncationMode(() -> truncationMode);
+    }
+
+    /**
+     * Sets the supplier of the truncation mode applied to the oldest kept message, queried on
+     * each trim, so the mode may follow a setting.
+     *
+     * @param truncationMode the truncation mode supplier
+     */
+    public void setTruncationMode(Supplier<TruncationMode> truncationMode) {
+        this.truncationMode = Objects.requireNonNull(truncationMode);
+    }
+
+    public final TruncationMode getTruncationMode() {
+        return truncationMode.get();
+    }
+
     public Supplier<String> getSystemPrompt() {
         return getModelConfiguration().getSystemPrompt();
     }
@@ -88,8 +120,8 @@ public class ChatLinkState implements ConversationContext {
     public List<Message> getChatMessages(ModelType model, UserMessage userMessage) {
         var chatMessages = new LinkedList<Message>();
 
-        // Add the system prompt appropriately
-        boolean hasSystemMessage = addSystemPrompt(model, chatMessages);
+        // Add the system prompt appropriately, as a user message if the model doesn't support system messages
+        int promptCount = addSystemPrompt(model, chatMessages) ? 1 : 0;
 
         // Add the rest of the messages
         synchronized (this.chatMessages) {
@@ -100,17 +132,102 @@ public class ChatLinkState implements ConversationContext {
             substitutePlaceholders(chatMessages);
 
             // Trim messages if exceeding token limit
-            int maxTokens = model.getInputTokenLimit();
+            var budget = this.tokenBudget = TokenBudgetPlanner.getInstance().getBudget(model, TokenBudgetPlanner.getActionType(userMessage));
             var tokenizer = model.getTokenizer();
             var chatFormatDescriptor = model.getChatFormatDescriptor();
-            int removed = dropOldestMessagesToStayWithinTokenLimit(chatMessages, maxTokens, tokenizer, chatFormatDescriptor);
-            while (removed-- > 0)
-                this.chatMessages.remove(hasSystemMessage ? 1 : 0);
+            int removed = dropOldestMessagesToStayWithinTokenLimit(chatMessages, promptCount, budget.inputTokens(), tokenizer, chatFormatDescriptor);
+            if (removed > 0)
+                this.chatMessages.subList(0, removed).clear();
 
+            maybeCompactHistory(budget.inputTokens(), MessageTokenCounter.of(tokenizer, chatFormatDescriptor));
             return chatMessages;
         }
     }
 
+    @Override
+    public int countHistoryTokens(ModelType model) {
+        var tokenizer = model.getTokenizer();
+        List<Message> messages;
+        synchronized (chatMessages) {
+            messages = new ArrayList<>(chatMessages);
+        }
+        // placeholders are left unsubstituted, so the memoized per-message counts are reused
+        int tokenCount = MessageTokenCounter.of(tokenizer, model.getChatFormatDescriptor()).countTokens(messages);
+        var systemPrompt = createSystemPrompt();
+        if (systemPrompt != null)
+            tokenCount += TokenEstimationService.getInstance().countTokens(systemPrompt, tokenizer);
+        return tokenCount;
+    }
+
+    private void maybeCompactHistory(int tokenLimit, MessageTokenCounter tokenCounter) {
+        if (!GeneralSettings.getInstance().isEnableConversationCompaction())
+            return;
+        if (tokenCounter.countTokens(this.chatMessages) < tokenLimit * COMPACTION_THRESHOLD)
+            return;
+
+        int cut = ConversationCompactor.findCompactionCut(this.chatMessages, COMPACTION_KEEP_RECENT);
+        if (cut > 0)
+            getCompactor().compactAsync(this.chatMessages.subList(0, cut), this::applyCompaction);
+    }
+
+    /**
+     * Swaps the compaction summary into the history, provided the summarized messages
+     * are still at the beginning of the history.
+     *
+     * @param compaction the finished compaction
+     * @return {@code true} if the history has been compacted
+     */
+    public boolean applyCompaction(ConversationCompactor.Compaction compaction) {
+        var summarized = compaction.summarized();
+        synchronized (chatMessages) {
+            if (chatMessages.size() < summarized.size())
+                return false;
+            for (int i = 0; i < summarized.size(); i++)
+                if (chatMessages.get(i) != summarized.get(i))
+                    return false;
+
+            chatMessages.subList(0, summarized.size()).clear();
+            chatMessages.addFirst(compaction.summary());
+            return true;
+        }
+    }
+
+    protected ConversationCompactor getCompactor() {
+        var compactor = this.compactor;
+        if (compactor == null) {
+            synchronized (this) {
+                if ((compactor = this.compactor) == null)
+                    this.compactor = compactor = createCompactor();
+            }
+        }
+        return compactor;
+    }
+
+    protected ConversationCompactor createCompactor() {
+        return new ConversationCompactor(
+                () -> ChatClientHolder.getChatClient(getCompactionAssistantType()),
+                this::getCompactionInputBudget,
+                task -> AppExecutorUtil.getAppExecutorService().execute(task));
+    }
+
+    protected ConversationCompactor.InputBudget getCompactionInputBudget() {
+        var assistantType = GeneralSettings.getInstance().getCompactionAssistant();
+        var model = (assistantType != null)
+                ? GeneralSettings.getInstance().getAssistantOptions(assistantType).getModelType()
+                : getModelType();
+        var budget = TokenBudgetPlanner.getInstance().getBudget(model, COMPACTION_ACTION);
+        if (budget.inputTokens() == Integer.MAX_VALUE)
+            return null;
+
+        return new ConversationCompactor.InputBudget(budget.inputTokens(),
+                MessageTokenCounter.of(model.getTokenizer(), model.getChatFormatDescriptor()));
+    }
+
+    protected AssistantType getCompactionAssistantType() {
+        var assistantType = GeneralSettings.getInstance().getCompactionAssistant();
+        return (assistantType != null) ? assistantType : getAssistantType();
+    }
+
     private boolean addSystemPrompt(ModelType model, List<Message> messages) {
         String systemPrompt = createSystemPrompt();
         if (systemPrompt != null && !systemPrompt.isBlank()) {
@@ -143,31 +260,64 @@ public class ChatLinkState implements ConversationContext {
         ChatMessageUtils.substitutePlaceholders(chatMessages, getTextSubstitutor());
     }
 
-    public int dropOldestMessagesToStayWithinTokenLimit(List<Message> messages, int maxTokens, GPT3Tokenizer tokenizer, ChatFormatDescriptor formatDescriptor) {
-        // here we assume ratio at most 2/3 available tokens for input prompt with context history,
-        // and at least 1/3 tokens for output
-        int tokenLimit = maxTokens/3*2;
-        int tokenCount;
-        int removed = 0;
+    public int dropOldestMessagesToStayWithinTokenLimit(List<Message> messages, int tokenLimit, GPT3Tokenizer tokenizer, ChatFormatDescriptor formatDescriptor) {
         boolean hasSystemMessage = !messages.isEmpty() && isRoleSystem(messages.get(0));
-        int oldestMessageIndex = hasSystemMessage? 1: 0;
+        return dropOldestMessagesToStayWithinTokenLimit(messages, hasSystemMessage? 1: 0, tokenLimit, tokenizer, formatDescriptor);
+    }
 
-        while ((tokenCount = countTokens(messages, tokenizer, formatDescriptor)) > tokenLimit && oldestMessageIndex < messages.size() - 1) {
-            messages.remove(oldestMessageIndex);
-            removed++;
+    /**
+     * Drops the oldest messages following the given number of leading prompt messages, which are
+     * always kept, until the conversation fits within the token limit. The latest message is never
+     * dropped, but truncated instead if still exceeding the limit.
+     *
+     * @param messages the messages to trim in place
+     * @param promptCount the number of leading prompt messages to keep, whatever their role
+     * @param tokenLimit the token limit
+     * @param tokenizer the tokenizer
+     * @param formatDescriptor the chat format descriptor
+     * @return the number of dropped messages, not counting the prompt messages
+     */
+    public int dropOldestMessagesToStayWithinTokenLimit(List<Message> messages, int promptCount, int tokenLimit, GPT3Tokenizer tokenizer, ChatFormatDescriptor formatDescriptor) {
+        var jfrEvent = new HistoryTrimEvent();
+        jfrEvent.begin();
+        var tokenCounter = MessageTokenCounter.of(tokenizer, formatDescriptor);
+        int oldestMessageIndex = Math.min(promptCount, messages.size());
+
+        long tokenCount = tokenCounter.countTokens(messages);
+        jfrEvent.messageCount = messages.size();
+        jfrEvent.tokensBefore = tokenCount;
+        int removed = 0;
+        if (tokenCount > tokenLimit && oldestMessageIndex < messages.size() - 1) {
+            // find the minimal number of oldest messages to drop, always keeping the latest one
+            long[] prefixSums = tokenCounter.prefixSums(messages, oldestMessageIndex, messages.size() - 1);
+            removed = Math.min(MessageTokenCounter.lowerBound(prefixSums, tokenCount - tokenLimit), prefixSums.length - 1);
+            messages.subList(oldestMessageIndex, oldestMessageIndex + removed).clear();
+            tokenCount -= prefixSums[removed];
         }
 
-        if (tokenCount > tokenLimit) {
+        if (tokenCount > tokenLimit && oldestMessageIndex < messages.size()) {
             var lastMessage = messages.get(oldestMessageIndex);
-            // TODO: calculation is currently wrong
-            var lastMsgCutoff = lastMessage.getContent().length() - tokenLimit;
-            if (lastMsgCutoff > 0)
-                messages.set(oldestMessageIndex,
-                        MessageSupport.substring(lastMessage, lastMsgCutoff));
+            var maxMessageTokens = tokenLimit - (tokenCount - tokenCounter.countTokens(lastMessage));
+            messages.set(oldestMessageIndex,
+                    tokenCounter.truncate(lastMessage, (int) Math.max(0, maxMessageTokens), getTruncationMode()));
+            jfrEvent.truncated = true;
+        }
+
+        if (jfrEvent.shouldCommit()) {
+            jfrEvent.messagesRemoved = removed;
+            jfrEvent.tokenLimit = tokenLimit;
+            jfrEvent.tokensAfter = jfrEvent.truncated ? tokenCounter.countTokens(messages) : tokenCount;
+            jfrEvent.commit();
         }
         return removed;
     }
 
+    @Override
+    public TokenBudget getTokenBudget() {
+        var tokenBudget = this.tokenBudget;
+        return (tokenBudget != null) ? tokenBudget : ConversationContext.super.getTokenBudget();
+    }
+
     @Override
     public AssistantType getAssistantType() {
         return getModelConfiguration().getAssistantType();
@@ -176,6 +326,7 @@ public class ChatLinkState implements ConversationContext {
     @Override
     public void clear() {
         chatMessages.clear();
+        tokenBudget = null;
         setLastPostedCodeFragments(List.of());
     }
 }
@@ -117,6 +117,13 @@ public abstract class ChatMessageEvent extends EventObject {
             return new ResponseArriving(this, responseChunk, partialResponseChoices);
         }
 
+        public ResponseDeltaArriving responseDeltaArriving(ChatResponse responseChunk, String delta, int deltaOffset, CharSequence content) {
+            requireNonNull(responseChunk, "responseChunk");
+            requireNonNull(delta, "delta");
+            requireNonNull(content, "content");
+            return new ResponseDeltaArriving(this, responseChunk, delta, deltaOffset, content);
+        }
+
         public ResponseArrived responseArrived(ChatResponse response) {
             requireNonNull(response.getResults(), "responseChoices");
             return new ResponseArrived(this, response);
@@ -156,11 +163,50 @@ public abstract class ChatMessageEvent extends EventObject {
             return responseChunk;
         }
 
-        public final List<Generation> getPartialResponseChoices() {
+        public List<Generation> getPartialResponseChoices() {
             return partialResponseChoices;
         }
     }
 
+    /**
+     * Streamed response chunk carrying only the newly arrived text, together with a cheap
+     * append-only view of the content accumulated so far. The full text is materialized
+     * only when {@link #getPartialResponseChoices()} or {@code getContent().toString()} is called.
+     */
+    public static class ResponseDeltaArriving extends ResponseArriving {
+        private final String delta;
+        private final int deltaOffset;
+        private final CharSequence content;
+        private volatile List<Generation> partialResponseChoices;
+
+        protected ResponseDeltaArriving(Started sourceEvent, ChatResponse responseChunk, String delta, int deltaOffset, CharSequence content) {
+            super(sourceEvent, responseChunk, null);
+            this.delta = delta;
+            this.deltaOffset = deltaOffset;
+            this.content = content;
+        }
+
+        public final String getDelta() {
+            return delta;
+        }
+
+        public final int getDeltaOffset() {
+            return deltaOffset;
+        }
+
+        public final CharSequence getContent() {
+            return content;
+        }
+
+        @Override
+        public List<Generation> getPartialResponseChoices() {
+            var choices = partialResponseChoices;
+            if (choices == null)
+                partialResponseChoices = choices = List.of(new Generation(content.toString()));
+            return choices;
+        }
+    }
+
     public static class ResponseArrived extends Started {
         private final ChatResponse response;
 
@@ -0,0 +1,235 @@
+/*
+ * Copyright (c) 2024 Mariusz Bernacki <consulting@didalgo.com>
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.didalgo.intellij.chatgpt.chat;
+
+import com.intellij.openapi.diagnostic.Logger;
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.MessageType;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.chat.prompt.Prompt;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Compacts conversation history by summarizing its older turns in the background.
+ * <p>
+ * Summarization runs on the given executor, off the send path, and at most one summarization
+ * is in progress at a time. The finished {@link Compaction} is handed over to the callback,
+ * which is expected to swap the summary into the history if the summarized turns are still there.
+ * <p>
+ * The transcript sent to the summarizing model is kept within its input budget: only the oldest
+ * turns fitting into the budget are summarized, leaving the rest for a later compaction. After a
+ * failed summarization, further attempts are suspended with an exponentially growing delay.
+ */
+public class ConversationCompactor {
+
+    private static final Logger LOG = Logger.getInstance(ConversationCompactor.class);
+
+    public static final String SUMMARY_PREFIX = "Summary of the earlier part of this conversation:\n\n";
+
+    static final String SUMMARIZE_INSTRUCTIONS = """
+            Summarize the following conversation between a user and an AI programming assistant. \
+            The summary replaces the original messages in the assistant's memory, so keep all facts \
+            needed to continue the conversation: the goals, decisions made, names of files, classes \
+            and methods, error messages, and open questions. Keep only the code that is essential. \
+            Be concise and answer with the summary only.
+
+            ---
+
+            """;
+
+    /** The delay before retrying after the first failed summarization, doubled on each subsequent failure. */
+    static final long INITIAL_RETRY_DELAY_NANOS = TimeUnit.MINUTES.toNanos(1);
+    /** The maximum delay before retrying after a failed summarization. */
+    static final long MAX_RETRY_DELAY_NANOS = TimeUnit.HOURS.toNanos(1);
+
+    private final Supplier<ChatClient> chatClient;
+    private final Supplier<InputBudget> inputBudget;
+    private final Executor executor;
+    private final LongSupplier nanoClock;
+    private final AtomicBoolean running = new AtomicBoolean();
+    private volatile Message lastSummarizedMessage;
+    private volatile int failureCount;
+    private volatile long retryAtNanos;
+
+    /**
+     * The input token budget of the summarizing model.
+     *
+     * @param inputTokens the maximum number of prompt tokens
+     * @param tokenCounter the token counter matching the summarizing model
+     */
+    public record InputBudget(int inputTokens, MessageTokenCounter tokenCounter) { }
+
+    /**
+     * The summary of a sequence of conversation messages.
+     *
+     * @param summarized the summarized messages
+     * @param summary the message replacing the summarized messages
+     */
+    public record Compaction(List<Message> summarized, Message summary) { }
+
+    /**
+     * Creates the compactor.
+     *
+     * @param chatClient the supplier of the chat client used for summarization
+     * @param inputBudget the supplier of the summarizing model's input budget, supplying
+     *                    {@code null} if the transcript size is unlimited
+     * @param executor the executor running the summarization
+     */
+    public ConversationCompactor(Supplier<ChatClient> chatClient, Supplier<InputBudget> inputBudget, Executor executor) {
+        this(chatClient, inputBudget, executor, System::nanoTime);
+    }
+
+    ConversationCompactor(Supplier<ChatClient> chatClient, Supplier<InputBudget> inputBudget, Executor executor, LongSupplier nanoClock) {
+        this.chatClient = requireNonNull(chatClient, "chatClient");
+        this.inputBudget = requireNonNull(inputBudget, "inputBudget");
+        this.executor = requireNonNull(executor, "executor");
+        this.nanoClock = requireNonNull(nanoClock, "nanoClock");
+    }
+
+    public boolean isRunning() {
+        return running.get();
+    }
+
+    /**
+     * Starts summarizing the given messages in the background, unless another summarization
+     * is in progress, the same messages have already been summarized, or the retry delay after
+     * a failed summarization has not elapsed yet.
+     *
+     * @param messages the messages to summarize
+     * @param onReady the callback receiving the finished compaction
+     * @return {@code true} if the summarization was started
+     */
+    public boolean compactAsync(List<Message> messages, Consumer<Compaction> onReady) {
+        if (messages.isEmpty() || messages.get(messages.size() - 1) == lastSummarizedMessage)
+            return false;
+        if (failureCount > 0 && nanoClock.getAsLong() - retryAtNanos < 0)
+            return false;
+        if (!running.compareAndSet(false, true))
+            return false;
+
+        var summarized = List.copyOf(messages);
+        try {
+            executor.execute(() -> {
+                try {
+                    var compaction = compact(summarized);
+                    failureCount = 0;
+                    lastSummarizedMessage = compaction.summarized().get(compaction.summarized().size() - 1);
+                    onReady.accept(compaction);
+                } catch (Exception e) {
+                    onFailure(e);
+                } finally {
+                    running.set(false);
+                }
+            });
+        } catch (RuntimeException e) {
+            running.set(false);
+            throw e;
+        }
+        return true;
+    }
+
+    private void onFailure(Exception e) {
+        int failures = ++failureCount;
+        long delay = INITIAL_RETRY_DELAY_NANOS << Math.min(failures - 1, 20);
+        retryAtNanos = nanoClock.getAsLong() + Math.min(delay, MAX_RETRY_DELAY_NANOS);
+
+        String message = "Unable to summarize conversation history due to " + e + " (failure " + failures + ")";
+        if (failures == 1)
+            LOG.warn(message, e);
+        else
+            LOG.debug(message, e);
+    }
+
+    public int getFailureCount() {
+        return failureCount;
+    }
+
+    /**
+     * Summarizes the given messages synchronously.
+     * <p>
+     * If the transcript of all the messages exceeds the summarizing model's input budget, only
+     * the oldest messages fitting into the budget are summarized, and the returned compaction
+     * covers just them. If not even the shortest summarizable prefix fits, its messages are
+     * truncated in the transcript.
+     *
+     * @param messages the messages to summarize
+     * @return the compaction
+     */
+    public Compaction compact(List<Message> messages) {
+        var summarized = messages;
+        var transcript = messages;
+        var budget = inputBudget.get();
+        if (budget != null && !messages.isEmpty()) {
+            var tokenCounter = budget.tokenCounter();
+            int available = budget.inputTokens() - tokenCounter.countTokens(List.of(new UserMessage(SUMMARIZE_INSTRUCTIONS)));
+            long[] prefixSums = tokenCounter.prefixSums(messages, 0, messages.size());
+            if (prefixSums[messages.size()] > available) {
+                int fitting = MessageTokenCounter.lowerBound(prefixSums, available + 1L) - 1;
+                int cut = findCompactionCut(messages.subList(0, fitting + 1), 0);
+                if (cut > 0) {
+                    summarized = transcript = messages.subList(0, cut);
+                } else {
+                    summarized = messages.subList(0, findShortestCompactionCut(messages));
+                    transcript = truncateEach(summarized, Math.max(0, available) / summarized.size(), tokenCounter);
+                }
+            }
+        }
+
+        var prompt = new Prompt(new UserMessage(SUMMARIZE_INSTRUCTIONS + toTranscript(transcript)));
+        var summary = chatClient.get().prompt(prompt).call().chatResponse().getResult().getOutput().getContent();
+        return new Compaction(List.copyOf(summarized), new UserMessage(SUMMARY_PREFIX + summary.strip()));
+    }
+
+    private static int findShortestCompactionCut(List<Message> messages) {
+        for (int cut = 2; cut < messages.size(); cut++)
+            if (messages.get(cut).getMessageType() == MessageType.ASSISTANT)
+                return cut;
+        return messages.size();
+    }
+
+    private static List<Message> truncateEach(List<Message> messages, int maxTokens, MessageTokenCounter tokenCounter) {
+        var truncated = new ArrayList<Message>(messages.size());
+        for (Message message : messages)
+            truncated.add(tokenCounter.truncate(message, maxTokens, TruncationMode.KEEP_BOTH_ENDS));
+        return truncated;
+    }
+
+    /**
+     * Finds the number of oldest messages to summarize, so that the remaining history starts with
+     * an assistant message, keeping the user/assistant alternation after the summary is swapped in.
+     *
+     * @param messages the conversation history
+     * @param keepRecent the minimal number of most recent messages left intact
+     * @return the number of messages to summarize, or {@code 0} if there's nothing worth summarizing
+     */
+    public static int findCompactionCut(List<Message> messages, int keepRecent) {
+        for (int cut = Math.min(messages.size() - keepRecent, messages.size() - 1); cut >= 2; cut--)
+            if (messages.get(cut).getMessageType() == MessageType.ASSISTANT)
+                return cut;
+        return 0;
+    }
+
+    protected String toTranscript(List<Message> messages) {
+        var buf = new StringBuilder();
+        for (Message message : messages) {
+            buf.append(message instanceof AssistantMessage ? "Assistant" : "User").append(": ")
+                    .append(message.getContent().strip())
+                    .append("\n\n");
+        }
+        return buf.toString();
+    }
+}
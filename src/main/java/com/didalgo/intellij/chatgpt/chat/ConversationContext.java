@@ -26,4 +26,25 @@ public interface ConversationContext {
     ModelType getModelType();
 
     List<Message> getChatMessages(ModelType model, UserMessage userMessage);
+
+    /**
+     * Returns the token budget of the most recent exchange, or the expected budget of the next
+     * chat exchange if nothing has been sent yet.
+     *
+     * @return the token budget
+     */
+    default TokenBudget getTokenBudget() {
+        return TokenBudgetPlanner.getInstance().getBudget(getModelType(), TokenBudgetPlanner.CHAT_ACTION);
+    }
+
+    /**
+     * Estimates the token count of the conversation history, including the system prompt, as it
+     * would be sent along with the next message before trimming.
+     *
+     * @param model the model
+     * @return the estimated token count of the history
+     */
+    default int countHistoryTokens(ModelType model) {
+        return 0;
+    }
 }
@@ -0,0 +1,145 @@
+/*
+ * Copyright (c) 2024 Mariusz Bernacki <consulting@didalgo.com>
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.didalgo.intellij.chatgpt.chat;
+
+import com.didalgo.gpt3.GPT3Tokenizer;
+import it.unimi.dsi.fastutil.longs.Long2IntMap;
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
+
+import java.util.function.ToIntFunction;
+
+/**
+ * Counts tokens of a text being edited, tokenizing only the lines changed since the previous count.
+ * <p>
+ * The text is split into lines, each including its line terminator, and the token counts of the
+ * lines of the previous count are kept, so after an edit only the lines of the edited region are
+ * tokenized again. Tokens of the supported encodings practically never span a line break, so the
+ * sum of line counts is a close estimate of the token count of the whole text.
+ * <p>
+ * Line counts are keyed by a 64-bit hash of the line, so the counter never holds a copy of the
+ * text, and no more than {@link #MAX_RETAINED_LINES} line counts are retained between counts.
+ * Lines longer than {@link #MAX_CHUNK_LENGTH} characters are tokenized in chunks, allowing the
+ * count to be cancelled in the middle of a line.
+ */
+public final class LineTokenCounter {
+
+    /** The maximum number of line counts retained for the next count. */
+    static final int MAX_RETAINED_LINES = 100_000;
+    /** The maximum number of characters tokenized between cancellation checks. */
+    static final int MAX_CHUNK_LENGTH = 4096;
+
+    private final GPT3Tokenizer tokenizer;
+    private final ToIntFunction<String> encoder;
+    private Long2IntMap lineCounts = newLineCounts();
+    private int tokenCount;
+
+    LineTokenCounter(GPT3Tokenizer tokenizer, ToIntFunction<String> encoder) {
+        this.tokenizer = tokenizer;
+        this.encoder = encoder;
+    }
+
+    public static LineTokenCounter of(GPT3Tokenizer tokenizer) {
+        return new LineTokenCounter(tokenizer, line -> tokenizer.encode(line).size());
+    }
+
+    public GPT3Tokenizer getTokenizer() {
+        return tokenizer;
+    }
+
+    /**
+     * Counts tokens of the given text.
+     *
+     * @param text the current text
+     * @return the estimated token count
+     */
+    public int countTokens(CharSequence text) {
+        return countTokens(text, () -> { });
+    }
+
+    /**
+     * Counts tokens of the given text, allowing the count to be cancelled before each line, or
+     * each chunk of a long line, is tokenized. Lines tokenized before cancellation are retained
+     * for the next count.
+     *
+     * @param text the current text
+     * @param checkCanceled the action called before tokenizing a line, throwing an exception
+     *                      to cancel the count
+     * @return the estimated token count
+     */
+    public synchronized int countTokens(CharSequence text, Runnable checkCanceled) {
+        var previousCounts = lineCounts;
+        var counts = newLineCounts();
+        int tokenCount = 0;
+        boolean completed = false;
+        try {
+            for (int start = 0, length = text.length(); start < length; ) {
+                int end = start;
+                while (end < length && text.charAt(end++) != '\n') { }
+
+                long hash = hash(text, start, end);
+                int count = counts.get(hash);
+                if (count < 0)
+                    count = previousCounts.get(hash);
+                if (count < 0)
+                    count = countLineTokens(text, start, end, checkCanceled);
+                if (counts.size() < MAX_RETAINED_LINES)
+                    counts.put(hash, count);
+                tokenCount += count;
+                start = end;
+            }
+            completed = true;
+        } finally {
+            if (completed || previousCounts.size() + counts.size() > MAX_RETAINED_LINES)
+                this.lineCounts = counts;
+            else
+                previousCounts.putAll(counts);
+        }
+        return this.tokenCount = tokenCount;
+    }
+
+    private int countLineTokens(CharSequence text, int start, int end, Runnable checkCanceled) {
+        int count = 0;
+        while (end - start > MAX_CHUNK_LENGTH) {
+            int chunkEnd = start + MAX_CHUNK_LENGTH;
+            // split at a whitespace, where tokens of the supported encodings begin
+            for (int i = chunkEnd; i > start + MAX_CHUNK_LENGTH / 2; i--) {
+                if (Character.isWhitespace(text.charAt(i))) {
+                    chunkEnd = i;
+                    break;
+                }
+            }
+            checkCanceled.run();
+            count += encoder.applyAsInt(text.subSequence(start, chunkEnd).toString());
+            start = chunkEnd;
+        }
+        checkCanceled.run();
+        return count + encoder.applyAsInt(text.subSequence(start, end).toString());
+    }
+
+    private static long hash(CharSequence text, int start, int end) {
+        // 64-bit FNV-1a, collisions are practically impossible within a single text
+        long hash = 0xcbf29ce484222325L;
+        for (int i = start; i < end; i++) {
+            hash ^= text.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    private static Long2IntMap newLineCounts() {
+        var counts = new Long2IntOpenHashMap();
+        counts.defaultReturnValue(-1);
+        return counts;
+    }
+
+    /**
+     * Returns the token count of the most recently counted text.
+     *
+     * @return the token count
+     */
+    public synchronized int getTokenCount() {
+        return tokenCount;
+    }
+}
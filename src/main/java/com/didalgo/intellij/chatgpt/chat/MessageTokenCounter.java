@@ -0,0 +1,178 @@
+/*
+ * Copyright (c) 2024 Mariusz Bernacki <consulting@didalgo.com>
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.didalgo.intellij.chatgpt.chat;
+
+import com.didalgo.gpt3.ChatFormatDescriptor;
+import com.didalgo.gpt3.GPT3Tokenizer;
+import com.didalgo.intellij.chatgpt.chat.messages.MessageSupport;
+import com.intellij.util.containers.CollectionFactory;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.ai.chat.messages.Message;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Counts chat message tokens, memoizing the count of every message.
+ * <p>
+ * Counts are cached per message identity and per tokenizer, so a message already seen by the
+ * counter is never tokenized again. The token count of a whole conversation is the sum of
+ * per-message counts plus a constant reply overhead, which allows finding the history cut
+ * point with a single binary search over prefix sums.
+ */
+public final class MessageTokenCounter {
+
+    private static final Map<GPT3Tokenizer, Map<ChatFormatDescriptor, MessageTokenCounter>> counters
+            = CollectionFactory.createConcurrentWeakIdentityMap();
+
+    /** Replacement character decoded from token sequences split in the middle of a multibyte character. */
+    private static final String MALFORMED_CHAR = "\uFFFD";
+
+    private final GPT3Tokenizer tokenizer;
+    private final ChatFormatDescriptor formatDescriptor;
+    private final Map<Message, Integer> messageTokenCounts = CollectionFactory.createConcurrentWeakIdentityMap();
+    private final int replyTokenCount;
+
+    private MessageTokenCounter(GPT3Tokenizer tokenizer, ChatFormatDescriptor formatDescriptor) {
+        this.tokenizer = requireNonNull(tokenizer, "tokenizer");
+        this.formatDescriptor = requireNonNull(formatDescriptor, "formatDescriptor");
+        this.replyTokenCount = ChatMessageUtils.countTokens(List.of(), tokenizer, formatDescriptor);
+    }
+
+    public static MessageTokenCounter of(GPT3Tokenizer tokenizer, ChatFormatDescriptor formatDescriptor) {
+        return counters.computeIfAbsent(tokenizer, __ -> new ConcurrentHashMap<>())
+                .computeIfAbsent(formatDescriptor, __ -> new MessageTokenCounter(tokenizer, formatDescriptor));
+    }
+
+    public GPT3Tokenizer getTokenizer() {
+        return tokenizer;
+    }
+
+    /**
+     * Returns the number of tokens added to every conversation irrespective of its messages.
+     *
+     * @return the reply priming token count
+     */
+    public int getReplyTokenCount() {
+        return replyTokenCount;
+    }
+
+    /**
+     * Returns the number of tokens the given message contributes to a conversation.
+     *
+     * @param message the message
+     * @return the message token count
+     */
+    public int countTokens(Message message) {
+        return messageTokenCounts.computeIfAbsent(message,
+                this::countTokensUncached);
+    }
+
+    /**
+     * Returns the number of tokens of the whole conversation.
+     *
+     * @param messages the conversation messages
+     * @return the conversation token count
+     */
+    public int countTokens(List<Message> messages) {
+        int tokenCount = replyTokenCount;
+        for (Message message : messages)
+            tokenCount += countTokens(message);
+        return tokenCount;
+    }
+
+    /**
+     * Truncates the content of the given message, so that the message contributes at most
+     * {@code maxTokens} tokens to a conversation. The retained content is cut at exact token
+     * boundaries: the content is encoded once, and the largest number of retained tokens is
+     * found by binary search, needing a logarithmic number of verifying encodes at most.
+     *
+     * @param message the message to truncate
+     * @param maxTokens the maximum token count of the message
+     * @param mode the truncation mode
+     * @return the truncated message, or the original message if it already fits
+     */
+    public Message truncate(Message message, int maxTokens, TruncationMode mode) {
+        int messageTokens = countTokens(message);
+        if (messageTokens <= maxTokens)
+            return message;
+
+        List<Integer> tokens = tokenizer.encode(message.getContent());
+        int overhead = messageTokens - tokens.size();
+        int high = Math.max(0, Math.min(tokens.size(), maxTokens - overhead));
+
+        Message candidate = truncate(message, tokens, high, mode);
+        if (high == 0 || countTokensUncached(candidate) <= maxTokens)
+            return candidate;
+
+        int low = 0;
+        Message best = truncate(message, tokens, 0, mode);
+        while (low < high - 1) {
+            int mid = (low + high) >>> 1;
+            candidate = truncate(message, tokens, mid, mode);
+            if (countTokensUncached(candidate) <= maxTokens) {
+                low = mid;
+                best = candidate;
+            } else {
+                high = mid;
+            }
+        }
+        return best;
+    }
+
+    private Message truncate(Message message, List<Integer> tokens, int keptTokens, TruncationMode mode) {
+        int headTokens = mode.headTokens(keptTokens);
+        int tailTokens = keptTokens - headTokens;
+        String head = StringUtils.stripEnd(tokenizer.decode(tokens.subList(0, headTokens)), MALFORMED_CHAR);
+        String tail = StringUtils.stripStart(tokenizer.decode(tokens.subList(tokens.size() - tailTokens, tokens.size())), MALFORMED_CHAR);
+        return MessageSupport.elide(message, head, tail);
+    }
+
+    private int countTokensUncached(Message message) {
+        return ChatMessageUtils.countTokens(List.of(message), tokenizer, formatDescriptor) - replyTokenCount;
+    }
+
+    /**
+     * Computes prefix sums of message token counts in the given range of messages.
+     * The element {@code [k]} of the result is the sum of token counts of the first {@code k}
+     * messages starting from {@code fromIndex}.
+     *
+     * @param messages the conversation messages
+     * @param fromIndex the index of the first message, inclusive
+     * @param toIndex the index of the last message, exclusive
+     * @return the prefix sums array of length {@code toIndex - fromIndex + 1}
+     */
+    public long[] prefixSums(List<Message> messages, int fromIndex, int toIndex) {
+        long[] sums = new long[toIndex - fromIndex + 1];
+        int k = 0;
+        for (Message message : messages.subList(fromIndex, toIndex)) {
+            sums[k + 1] = sums[k] + countTokens(message);
+            k++;
+        }
+        return sums;
+    }
+
+    /**
+     * Finds the smallest {@code k} such that {@code prefixSums[k] >= target}.
+     *
+     * @param prefixSums the non-decreasing prefix sums
+     * @param target the searched value
+     * @return the lower bound index, or {@code prefixSums.length} if no such index exists
+     */
+    public static int lowerBound(long[] prefixSums, long target) {
+        int low = 0, high = prefixSums.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (prefixSums[mid] < target)
+                low = mid + 1;
+            else
+                high = mid;
+        }
+        return low;
+    }
+}
@@ -0,0 +1,26 @@
+/*
+ * Copyright (c) 2024 Mariusz Bernacki <consulting@didalgo.com>
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.didalgo.intellij.chatgpt.chat;
+
+/**
+ * The split of a model context window between the prompt with conversation history
+ * and the reply generated by the model.
+ *
+ * @param contextTokens the total number of tokens the model accepts
+ * @param inputTokens the number of tokens available for the prompt with conversation history
+ * @param outputTokens the number of tokens reserved for the reply
+ * @param observedReplies the number of observed replies the reservation is based on,
+ *                        or {@code 0} if the reservation is a default one
+ */
+public record TokenBudget(int contextTokens, int inputTokens, int outputTokens, int observedReplies) {
+
+    public boolean isUnlimited() {
+        return contextTokens == Integer.MAX_VALUE;
+    }
+
+    public boolean isObserved() {
+        return observedReplies > 0;
+    }
+}
@@ -0,0 +1,163 @@
+/*
+ * Copyright (c) 2024 Mariusz Bernacki <consulting@didalgo.com>
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.didalgo.intellij.chatgpt.chat;
+
+import com.didalgo.intellij.chatgpt.chat.models.ModelType;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.components.Service;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.UserMessage;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Splits model context windows between input and output, based on the reply lengths actually observed.
+ * <p>
+ * Generation token counts are tracked per model and per action type, in a sliding window of the most
+ * recent replies. The output reservation is a high percentile of the observed lengths with some headroom,
+ * falling back to the model-wide statistics when the action type has too few samples, and to a default
+ * reservation when the model has none. This way large context windows aren't wasted on a fixed fraction
+ * reserved for output, and small ones aren't over-trimmed.
+ * <p>
+ * The reservation never goes below the reply length the requests of the model family ask for, as the
+ * prompt together with it must fit in the context window. When the family's token counts are only
+ * approximated with an OpenAI tokenizer, the input budget additionally keeps a safety margin for the
+ * counts falling short.
+ */
+@Service
+public final class TokenBudgetPlanner {
+
+    /** The metadata key of the user message carrying the type of the action which sent it. */
+    public static final String ACTION_TYPE = "actionType";
+    /** The action type of prompts typed in the chat tool window. */
+    public static final String CHAT_ACTION = "chat";
+
+    static final int SAMPLE_WINDOW = 64;
+    static final int MIN_SAMPLES = 5;
+    static final double OUTPUT_PERCENTILE = 0.95;
+    static final double OUTPUT_HEADROOM = 1.25;
+    static final int MIN_OUTPUT_TOKENS = 256;
+    static final int DEFAULT_OUTPUT_TOKENS = 4096;
+    /** The fraction by which approximate token counts may fall short of the actual ones. */
+    static final double APPROXIMATE_TOKENIZER_MARGIN = 0.25;
+
+    private final Map<String, GenerationStats> generationStats = new ConcurrentHashMap<>();
+
+    public static TokenBudgetPlanner getInstance() {
+        return ApplicationManager.getApplication().getService(TokenBudgetPlanner.class);
+    }
+
+    /**
+     * Returns the type of the action which sent the given user message.
+     *
+     * @param message the user message, may be {@code null}
+     * @return the action type, or {@link #CHAT_ACTION} if unknown
+     */
+    public static String getActionType(Message message) {
+        if (message != null && message.getMetadata().get(ACTION_TYPE) instanceof String actionType)
+            return actionType;
+        return CHAT_ACTION;
+    }
+
+    /**
+     * Returns a copy of the given user message tagged with the type of the action sending it.
+     *
+     * @param message the user message
+     * @param actionType the action type
+     * @return the tagged message
+     */
+    public static UserMessage withActionType(UserMessage message, String actionType) {
+        var metadata = new HashMap<>(message.getMetadata());
+        metadata.put(ACTION_TYPE, actionType);
+        return new UserMessage(message.getContent(), message.getMedia(), metadata);
+    }
+
+    /**
+     * Records the length of a reply generated by the given model.
+     *
+     * @param model the model
+     * @param actionType the type of the action the reply was generated for
+     * @param generationTokens the number of generated tokens
+     */
+    public void recordGeneration(ModelType model, String actionType, long generationTokens) {
+        if (generationTokens <= 0)
+            return;
+
+        int tokens = (int) Math.min(generationTokens, Integer.MAX_VALUE);
+        generationStats.computeIfAbsent(statsKey(model, actionType), __ -> new GenerationStats()).add(tokens);
+        generationStats.computeIfAbsent(statsKey(model, null), __ -> new GenerationStats()).add(tokens);
+    }
+
+    /**
+     * Computes the token budget for the next exchange with the given model.
+     *
+     * @param model the model
+     * @param actionType the type of the action sending the prompt
+     * @return the token budget
+     */
+    public TokenBudget getBudget(ModelType model, String actionType) {
+        int contextTokens = model.getInputTokenLimit();
+        if (contextTokens == Integer.MAX_VALUE)
+            return new TokenBudget(contextTokens, contextTokens, 0, 0);
+
+        var stats = generationStats.get(statsKey(model, actionType));
+        if (stats == null || stats.size() < MIN_SAMPLES)
+            stats = generationStats.get(statsKey(model, null));
+
+        int outputTokens, observedReplies;
+        if (stats != null && stats.size() >= MIN_SAMPLES) {
+            observedReplies = stats.size();
+            outputTokens = (int) Math.ceil(stats.percentile(OUTPUT_PERCENTILE) * OUTPUT_HEADROOM);
+            outputTokens = Math.min(Math.max(outputTokens, MIN_OUTPUT_TOKENS), contextTokens / 2);
+        } else {
+            observedReplies = 0;
+            outputTokens = Math.min(DEFAULT_OUTPUT_TOKENS, contextTokens / 3);
+        }
+
+        int inputTokens;
+        var family = model.getFamily();
+        if (family == null) {
+            inputTokens = contextTokens - outputTokens;
+        } else {
+            outputTokens = Math.min(Math.max(outputTokens, family.getMaxOutputTokens()), contextTokens);
+            inputTokens = contextTokens - outputTokens;
+            if (family.isTokenizerApproximate())
+                inputTokens = (int) (inputTokens / (1 + APPROXIMATE_TOKENIZER_MARGIN));
+        }
+        return new TokenBudget(contextTokens, inputTokens, outputTokens, observedReplies);
+    }
+
+    private static String statsKey(ModelType model, String actionType) {
+        return (actionType == null) ? model.id() : model.id() + '\u0000' + actionType;
+    }
+
+    /**
+     * The sliding window of the most recently observed reply lengths.
+     */
+    static final class GenerationStats {
+        private final int[] samples = new int[SAMPLE_WINDOW];
+        private int count;
+        private int next;
+
+        synchronized void add(int tokens) {
+            samples[next] = tokens;
+            next = (next + 1) % samples.length;
+            count = Math.min(count + 1, samples.length);
+        }
+
+        synchronized int size() {
+            return count;
+        }
+
+        synchronized int percentile(double p) {
+            int[] sorted = Arrays.copyOf(samples, count);
+            Arrays.sort(sorted);
+            return sorted[Math.min(count - 1, (int) Math.ceil(p * count) - 1)];
+        }
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright (c) 2024 Mariusz Bernacki <consulting@didalgo.com>
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.didalgo.intellij.chatgpt.chat;
+
+import com.didalgo.gpt3.GPT3Tokenizer;
+import com.didalgo.intellij.chatgpt.core.PluginExecutors;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.components.Service;
+import com.intellij.util.concurrency.AppExecutorUtil;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Supplier;
+import java.util.function.ToIntFunction;
+
+/**
+ * Estimates token counts of prompt attachments and other text in the background.
+ * <p>
+ * Estimations run on a pool of at most {@value #MAX_CONCURRENT_ESTIMATIONS} concurrent tasks, so
+ * attaching many large files doesn't occupy all threads with tokenization. Token counts are cached
+ * by the hash of the text and the tokenizer, for all attachments and chats of the application, and
+ * a count requested while the same text is being counted waits for that count instead of
+ * tokenizing the text again.
+ */
+@Service
+public final class TokenEstimationService {
+
+    public static final int MAX_CONCURRENT_ESTIMATIONS = 2;
+
+    public static final int MAX_CACHED_COUNTS = 4096;
+
+    private final Executor executor;
+    private final Map<Key, Integer> counts = new LinkedHashMap<>(64, 0.75f, true);
+    private final Map<Key, CompletableFuture<Integer>> inFlight = new HashMap<>();
+
+    private record Key(long high, long low, Object tokenizer) {
+
+        static Key of(String text, Object tokenizer) {
+            try {
+                var digest = MessageDigest.getInstance("SHA-256").digest(text.getBytes(StandardCharsets.UTF_8));
+                var buffer = ByteBuffer.wrap(digest);
+                return new Key(buffer.getLong(), buffer.getLong(), tokenizer);
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException("SHA-256 not supported", e);
+            }
+        }
+    }
+
+    public TokenEstimationService() {
+        this(AppExecutorUtil.createBoundedApplicationPoolExecutor("ChatGPT Token Estimation",
+                PluginExecutors.getExecutor(), MAX_CONCURRENT_ESTIMATIONS));
+    }
+
+    public TokenEstimationService(Executor executor) {
+        this.executor = executor;
+    }
+
+    public static TokenEstimationService getInstance() {
+        return ApplicationManager.getApplication().getService(TokenEstimationService.class);
+    }
+
+    /**
+     * Returns the bounded estimation pool, for estimations submitted by other means.
+     *
+     * @return the estimation executor
+     */
+    public Executor getExecutor() {
+        return executor;
+    }
+
+    /**
+     * Runs the given estimation on the bounded estimation pool.
+     *
+     * @param estimation the estimation
+     * @return the future result of the estimation
+     */
+    public <T> CompletableFuture<T> submit(Supplier<T> estimation) {
+        return CompletableFuture.supplyAsync(estimation, executor);
+    }
+
+    /**
+     * Counts tokens of the given text, on the calling thread unless the count is cached or
+     * already in progress.
+     *
+     * @param text the text
+     * @param tokenizer the tokenizer
+     * @return the token count
+     */
+    public int countTokens(String text, GPT3Tokenizer tokenizer) {
+        return countTokens(text, tokenizer, t -> tokenizer.encode(t).size());
+    }
+
+    int countTokens(String text, Object tokenizer, ToIntFunction<String> encoder) {
+        var key = Key.of(text, tokenizer);
+        CompletableFuture<Integer> task, pending;
+        synchronized (this) {
+            var count = counts.get(key);
+            if (count != null)
+                return count;
+
+            pending = inFlight.get(key);
+            task = (pending != null) ? pending : new CompletableFuture<>();
+            if (pending == null)
+                inFlight.put(key, task);
+        }
+        if (pending != null)
+            return pending.join();
+
+        try {
+            int count = encoder.applyAsInt(text);
+            synchronized (this) {
+                counts.put(key, count);
+                if (counts.size() > MAX_CACHED_COUNTS)
+                    counts.remove(counts.keySet().iterator().next());
+            }
+            task.complete(count);
+            return count;
+        } catch (RuntimeException | Error e) {
+            task.completeExceptionally(e);
+            throw e;
+        } finally {
+            synchronized (this) {
+                inFlight.remove(key);
+            }
+        }
+    }
+}
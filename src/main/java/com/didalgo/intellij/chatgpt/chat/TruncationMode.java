@@ -0,0 +1,25 @@
+/*
+ * Copyright (c) 2024 Mariusz Bernacki <consulting@didalgo.com>
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.didalgo.intellij.chatgpt.chat;
+
+/**
+ * Specifies which part of an oversized message survives truncation.
+ */
+public enum TruncationMode {
+    /** Keeps the beginning of the message. */
+    KEEP_HEAD,
+    /** Keeps the end of the message, where the prompt of composed messages is placed. */
+    KEEP_TAIL,
+    /** Keeps both the beginning and the end of the message, evenly split. */
+    KEEP_BOTH_ENDS;
+
+    int headTokens(int keptTokens) {
+        return switch (this) {
+            case KEEP_HEAD -> keptTokens;
+            case KEEP_TAIL -> 0;
+            case KEEP_BOTH_ENDS -> keptTokens / 2;
+        };
+    }
+}
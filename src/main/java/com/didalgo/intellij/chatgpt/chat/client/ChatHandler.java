@@ -7,11 +7,17 @@ package com.didalgo.intellij.chatgpt.chat.client;
 import com.didalgo.intellij.chatgpt.chat.ChatMessageEvent;
 import com.didalgo.intellij.chatgpt.chat.ChatMessageListener;
 import com.didalgo.intellij.chatgpt.chat.ConversationContext;
+import com.didalgo.intellij.chatgpt.chat.TokenBudgetPlanner;
+import com.didalgo.intellij.chatgpt.chat.metadata.ChatResponseMetadataBuilder;
+import com.didalgo.intellij.chatgpt.chat.metadata.ExchangeLatencyTracker;
+import com.didalgo.intellij.chatgpt.chat.metadata.ExchangeTimer;
+import com.didalgo.intellij.chatgpt.chat.metadata.ExchangeTimings;
+import com.didalgo.intellij.chatgpt.chat.metadata.UsageAggregator;
 import com.didalgo.intellij.chatgpt.chat.models.ModelType;
+import com.didalgo.intellij.chatgpt.settings.GeneralSettings;
 import com.intellij.openapi.diagnostic.Logger;
 import org.apache.commons.lang3.StringUtils;
 import org.reactivestreams.Subscription;
-import org.springframework.ai.chat.messages.AssistantMessage;
 import org.springframework.ai.chat.metadata.ChatResponseMetadata;
 import org.springframework.ai.chat.model.ChatResponse;
 import org.springframework.ai.chat.model.Generation;
@@ -19,7 +25,7 @@ import org.springframework.ai.chat.prompt.Prompt;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
-import java.util.*;
+import java.util.List;
 import java.util.function.Consumer;
 
 public class ChatHandler {
@@ -29,7 +35,7 @@ public class ChatHandler {
     public Flux<?> handle(ConversationContext ctx, ChatMessageEvent.Initiating event, ChatMessageListener listener) {
         var modelType = ctx.getModelType();
         var chatClient = ChatClientHolder.getChatClient(ctx.getAssistantType());
-        var flowHandler = new ChatCompletionHandler(listener);
+        var flowHandler = new ChatCompletionHandler(listener, ChunkCoalescer.Options.fromSettings(GeneralSettings.getInstance()));
         var prompt = event.getPrompt()
                 .map(prmpt -> maybeOverrideChatOptions(modelType, prmpt))
                 .orElseThrow(() -> new IllegalArgumentException("Prompt is required"));
@@ -63,68 +69,117 @@ public class ChatHandler {
 
     static class ChatCompletionHandler {
         private final ChatMessageListener listener;
-        private final SortedMap<Integer, StringBuffer> partialResponseChoices;
-        private final SortedMap<Integer, ChatResponseMetadata> lastMetadata;
+        private final ChunkCoalescer coalescer;
+        private final UsageAggregator usage = new UsageAggregator();
+        private final ExchangeTimer timer = new ExchangeTimer();
+        private volatile ChatResponse lastChunk;
+        private volatile ChatResponseMetadata lastMetadata;
         private volatile ChatMessageEvent.Started event;
 
         public ChatCompletionHandler(ChatMessageListener listener) {
+            this(listener, ChunkCoalescer.Options.PASS_THROUGH);
+        }
+
+        public ChatCompletionHandler(ChatMessageListener listener, ChunkCoalescer.Options coalescingOptions) {
             this.listener = listener;
-            this.partialResponseChoices = Collections.synchronizedSortedMap(new TreeMap<>());
-            this.lastMetadata = Collections.synchronizedSortedMap(new TreeMap<>());
+            this.coalescer = new ChunkCoalescer(coalescingOptions, this::dispatchResponseArriving);
         }
 
         public Consumer<Subscription> onSubscribe(ChatMessageEvent.Initiating event) {
             return subscription -> {
+                timer.subscribed();
                 listener.exchangeStarted(this.event = event.started(subscription));
             };
         }
 
         public Runnable onComplete(ConversationContext ctx) {
             return () -> {
-                var assistantMessages = toMessages(partialResponseChoices);
-                if (!assistantMessages.isEmpty()) {
+                var content = coalescer.complete();
+                var assistantMessages = toMessages(content);
+                if (!content.isEmpty())
                     ctx.addChatMessage(assistantMessages.get(0).getOutput());
-                }
-                listener.responseArrived(event.responseArrived(new ChatResponse(assistantMessages, lastMetadata.get(0))));
+                var metadata = withTimings(lastMetadata, recordGeneration(ctx, content));
+                listener.responseArrived(event.responseArrived(new ChatResponse(assistantMessages, metadata)));
             };
         }
 
         public Consumer<ChatResponse> onNextChunk() {
             return chunk -> {
                 if (chunk.getResult() != null) {
-                    listener.responseArriving(event.responseArriving(chunk, formResponse(chunk, chunk.getResult())));
+                    timer.chunkArrived();
+                    lastChunk = chunk;
+                    acceptMetadata(chunk);
+                    coalescer.append(getContent(chunk.getResult()));
                 } else if (chunk.getMetadata() != null) {
-                    lastMetadata.put(0, chunk.getMetadata());
+                    lastMetadata = chunk.getMetadata();
+                    usage.accept(lastMetadata.getUsage());
                 }
             };
         }
 
+        /**
+         * Accepts the reply of a model which doesn't stream. The reply isn't dispatched as arriving
+         * content, the listener receives it once the exchange completes.
+         */
         public Consumer<ChatResponse> onNext() {
             return result -> {
                 if (result.getResult() != null) {
-                    listener.responseArrived(event.responseArrived(new ChatResponse(formResponse(result, result.getResult()), lastMetadata.get(0))));
+                    timer.chunkArrived();
+                    lastChunk = result;
+                    acceptMetadata(result);
+                    coalescer.accumulate(getContent(result.getResult()));
                 }
             };
         }
 
         public Consumer<Throwable> onError() {
             return cause -> {
+                coalescer.complete();
                 listener.exchangeFailed(event.failed(cause));
                 cause.printStackTrace();
             };
         }
 
-        private List<Generation> formResponse(ChatResponse response, Generation choice) {
-            partialResponseChoices.computeIfAbsent(0, __ -> new StringBuffer())
-                    .append(StringUtils.defaultIfEmpty(choice.getOutput().getContent(), ""));
-            lastMetadata.put(0, response.getMetadata());
-            return toMessages(partialResponseChoices);
+        private static String getContent(Generation choice) {
+            return StringUtils.defaultIfEmpty(choice.getOutput().getContent(), "");
+        }
+
+        private void acceptMetadata(ChatResponse response) {
+            lastMetadata = response.getMetadata();
+            if (lastMetadata != null)
+                usage.accept(lastMetadata.getUsage());
+        }
+
+        private ExchangeTimings recordGeneration(ConversationContext ctx, CharSequence content) {
+            var modelType = ctx.getModelType();
+            long generationTokens = usage.getGenerationTokens();
+            if (generationTokens <= 0 && !content.isEmpty())
+                generationTokens = modelType.getTokenizer().encode(content.toString()).size();
+
+            var actionType = TokenBudgetPlanner.getActionType(event.getUserMessage());
+            TokenBudgetPlanner.getInstance().recordGeneration(modelType, actionType, generationTokens);
+
+            var timings = timer.completed(modelType.id(), generationTokens);
+            ExchangeLatencyTracker.getInstance().record(timings);
+            return timings;
+        }
+
+        private ChatResponseMetadata withTimings(ChatResponseMetadata metadata, ExchangeTimings timings) {
+            var builder = new ChatResponseMetadataBuilder();
+            if (metadata != null)
+                builder.accept(metadata);
+            return builder
+                    .withUsage(usage)
+                    .withKeyValue(ExchangeTimings.METADATA_KEY, timings)
+                    .build();
+        }
+
+        private void dispatchResponseArriving(String delta, int deltaOffset, CharSequence content) {
+            listener.responseArriving(event.responseDeltaArriving(lastChunk, delta, deltaOffset, content));
         }
 
-        private List<Generation> toMessages(SortedMap<Integer, StringBuffer> partialResponseChoices) {
-            List<AssistantMessage> responseChoices = new ArrayList<>(partialResponseChoices.size());
-            partialResponseChoices.forEach((key, value) -> responseChoices.add(new AssistantMessage(value.toString())));
-            return List.of(new Generation(responseChoices.get(0).getContent()));
+        private List<Generation> toMessages(CharSequence content) {
+            return List.of(new Generation(content.toString()));
         }
     }
 }
@@ -0,0 +1,179 @@
+/*
+ * Copyright (c) 2024 Mariusz Bernacki <consulting@didalgo.com>
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.didalgo.intellij.chatgpt.chat.client;
+
+import com.didalgo.intellij.chatgpt.settings.GeneralSettings;
+import com.didalgo.intellij.chatgpt.text.TextRope;
+import reactor.core.Disposable;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.awt.*;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Batches streamed response chunks before they are dispatched to the listeners.
+ * <p>
+ * Chunks are accumulated until either the time window elapses or the character budget
+ * is exhausted, whichever comes first. A code fence arriving in a chunk flushes the batch
+ * immediately, so that code blocks start rendering without delay. Each flush delivers the
+ * accumulated delta together with a view of the whole content received so far.
+ */
+public final class ChunkCoalescer {
+
+    private static final String CODE_FENCE = "```";
+
+    /**
+     * Receives coalesced chunks of the streamed content.
+     */
+    @FunctionalInterface
+    public interface Sink {
+        void flush(String delta, int deltaOffset, CharSequence content);
+    }
+
+    /**
+     * Coalescing options.
+     *
+     * @param window the maximum time a chunk may be held before being dispatched
+     * @param charBudget the number of pending characters triggering an immediate flush
+     */
+    public record Options(Duration window, int charBudget) {
+        public static final Options PASS_THROUGH = new Options(Duration.ZERO, 0);
+
+        public Options {
+            requireNonNull(window, "window");
+        }
+
+        public boolean isPassThrough() {
+            return window.isZero() || charBudget <= 1;
+        }
+
+        public static Options fromSettings(GeneralSettings settings) {
+            int windowMillis = settings.getStreamCoalescingWindowMillis();
+            var window = (windowMillis < 0) ? Duration.ZERO
+                    : (windowMillis == 0) ? getDisplayFramePeriod() : Duration.ofMillis(windowMillis);
+
+            return new Options(window, settings.getStreamCoalescingCharBudget());
+        }
+    }
+
+    private final Options options;
+    private final Scheduler scheduler;
+    private final Sink sink;
+    private final TextRope content = new TextRope();
+    private final StringBuilder pending = new StringBuilder();
+    private String tail = "";
+    private Disposable scheduledFlush;
+    private boolean completed;
+
+    public ChunkCoalescer(Options options, Sink sink) {
+        this(options, Schedulers.parallel(), sink);
+    }
+
+    public ChunkCoalescer(Options options, Scheduler scheduler, Sink sink) {
+        this.options = requireNonNull(options, "options");
+        this.scheduler = requireNonNull(scheduler, "scheduler");
+        this.sink = requireNonNull(sink, "sink");
+    }
+
+    /**
+     * Accepts the next chunk of the streamed content.
+     *
+     * @param delta the chunk text
+     */
+    public synchronized void append(String delta) {
+        if (completed || delta.isEmpty())
+            return;
+
+        boolean fenceBoundary = containsCodeFence(delta);
+        content.append(delta);
+        pending.append(delta);
+
+        if (options.isPassThrough() || fenceBoundary || pending.length() >= options.charBudget())
+            flush();
+        else if (scheduledFlush == null)
+            scheduledFlush = scheduler.schedule(this::scheduledFlush, options.window().toNanos(), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Accepts content received in one piece, such as the reply of a model which doesn't stream,
+     * without dispatching it.
+     *
+     * @param text the content text
+     */
+    public synchronized void accumulate(String text) {
+        if (!completed)
+            content.append(text);
+    }
+
+    private boolean containsCodeFence(String delta) {
+        // the fence may be split across chunks
+        String head = delta.substring(0, Math.min(delta.length(), CODE_FENCE.length() - 1));
+        boolean found = delta.contains(CODE_FENCE) || (tail + head).contains(CODE_FENCE);
+
+        String joined = tail + delta;
+        tail = joined.substring(Math.max(0, joined.length() - (CODE_FENCE.length() - 1)));
+        return found;
+    }
+
+    private synchronized void scheduledFlush() {
+        scheduledFlush = null;
+        if (!completed)
+            flush();
+    }
+
+    private void flush() {
+        cancelScheduledFlush();
+        if (pending.isEmpty())
+            return;
+
+        String delta = pending.toString();
+        pending.setLength(0);
+        sink.flush(delta, content.length() - delta.length(), content.snapshot());
+    }
+
+    private void cancelScheduledFlush() {
+        if (scheduledFlush != null) {
+            scheduledFlush.dispose();
+            scheduledFlush = null;
+        }
+    }
+
+    /**
+     * Completes the stream, dropping any pending chunks without flushing them.
+     *
+     * @return the whole content received
+     */
+    public synchronized CharSequence complete() {
+        completed = true;
+        cancelScheduledFlush();
+        pending.setLength(0);
+        return content.snapshot();
+    }
+
+    public synchronized CharSequence getContent() {
+        return content.snapshot();
+    }
+
+    /**
+     * Returns the frame period of the fastest display, or of a 60 Hz display if it cannot be determined.
+     *
+     * @return the display frame period
+     */
+    public static Duration getDisplayFramePeriod() {
+        int refreshRate = DisplayMode.REFRESH_RATE_UNKNOWN;
+        if (!GraphicsEnvironment.isHeadless()) {
+            for (GraphicsDevice device : GraphicsEnvironment.getLocalGraphicsEnvironment().getScreenDevices())
+                refreshRate = Math.max(refreshRate, device.getDisplayMode().getRefreshRate());
+        }
+        if (refreshRate <= 0)
+            refreshRate = 60;
+
+        return Duration.ofNanos(TimeUnit.SECONDS.toNanos(1) / refreshRate);
+    }
+}
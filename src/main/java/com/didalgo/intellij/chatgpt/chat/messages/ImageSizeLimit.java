@@ -0,0 +1,29 @@
+/*
+ * Copyright (c) 2024 Mariusz Bernacki <consulting@didalgo.com>
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.didalgo.intellij.chatgpt.chat.messages;
+
+/**
+ * The largest image resolution a model makes use of. Providers scale larger images down before
+ * the model sees them, so sending more pixels only costs encoding time and upload bytes.
+ *
+ * @param maxLongSide the maximum length of the longer image side
+ * @param maxShortSide the maximum length of the shorter image side
+ */
+public record ImageSizeLimit(int maxLongSide, int maxShortSide) {
+
+    public static final ImageSizeLimit NONE = new ImageSizeLimit(Integer.MAX_VALUE, Integer.MAX_VALUE);
+
+    /**
+     * Returns the factor by which an image of the given size has to be scaled to fit in this limit.
+     *
+     * @param width the image width
+     * @param height the image height
+     * @return the scale factor, {@code 1.0} if the image already fits
+     */
+    public double scaleOf(int width, int height) {
+        double longSide = Math.max(width, height), shortSide = Math.min(width, height);
+        return Math.min(1.0, Math.min(maxLongSide / longSide, maxShortSide / shortSide));
+    }
+}
@@ -4,61 +4,268 @@
  */
 package com.didalgo.intellij.chatgpt.chat.messages;
 
+import com.didalgo.intellij.chatgpt.core.PluginExecutors;
 import org.springframework.ai.model.Media;
 import org.springframework.util.MimeTypeUtils;
 
+import javax.imageio.IIOException;
 import javax.imageio.IIOImage;
 import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
 import javax.imageio.ImageWriteParam;
-import javax.imageio.stream.MemoryCacheImageOutputStream;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStreamImpl;
 import java.awt.*;
 import java.awt.geom.AffineTransform;
 import java.awt.image.BufferedImage;
 import java.awt.image.RenderedImage;
-import java.io.ByteArrayOutputStream;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
 
 public class MediaSupport {
 
+    /** Opaque images with up to this many distinct colors are encoded as PNG straight away. */
+    static final int PNG_MAX_COLORS = 256;
+    /** Opaque images with at least this many distinct colors among the sampled pixels are encoded as JPEG straight away. */
+    static final int JPEG_MIN_COLORS = 16384;
+    private static final int MAX_SAMPLED_PIXELS = 65536;
+    private static final float JPEG_QUALITY = 0.9f;
+
+    private static final Map<String, Queue<ImageWriter>> IDLE_WRITERS = new ConcurrentHashMap<>();
+
     public static Media fromRenderedImageAsCompressedMedia(RenderedImage image) {
-        var png = imageToPng(image);
-        var jpeg = imageToJpeg(image);
+        return fromRenderedImageAsCompressedMedia(image, ImageSizeLimit.NONE);
+    }
+
+    /**
+     * Encodes the given image for a prompt, scaled down to the given size limit.
+     * <p>
+     * Images with transparency, and images with few colors, like most screenshots, are encoded as PNG,
+     * and images with many colors, like photos, as JPEG. For images in between, both encoders run in
+     * parallel, and the one falling behind is aborted as soon as its output grows larger than the
+     * complete output of the other.
+     *
+     * @param image the image
+     * @param sizeLimit the largest resolution the target model makes use of
+     * @return the encoded image
+     */
+    public static Media fromRenderedImageAsCompressedMedia(RenderedImage image, ImageSizeLimit sizeLimit) {
+        BufferedImage downsampledImage = downsample(image, sizeLimit);
+        var colors = ColorStatistics.of(downsampledImage);
+        // an alpha channel of only opaque pixels just makes PNG output larger
+        BufferedImage scaledImage = colors.translucent() ? downsampledImage : (BufferedImage) removeAlphaChannel(downsampledImage);
+        if (colors.translucent() || colors.distinctColors() <= PNG_MAX_COLORS)
+            return new MediaHandle(MimeTypeUtils.IMAGE_PNG, encode(scaledImage, ImageFormat.PNG, null));
+        if (colors.distinctColors() >= JPEG_MIN_COLORS)
+            return new MediaHandle(MimeTypeUtils.IMAGE_JPEG, encode(scaledImage, ImageFormat.JPEG, null));
 
-        if (png.size() > jpeg.size()) {
-            return new MediaHandle(MimeTypeUtils.IMAGE_JPEG, jpeg.toByteArray());
+        var smallestSize = new AtomicLong(Long.MAX_VALUE);
+        var jpegTask = CompletableFuture.supplyAsync(() -> encode(scaledImage, ImageFormat.JPEG, smallestSize), PluginExecutors.getExecutor());
+        byte[] png = encode(scaledImage, ImageFormat.PNG, smallestSize);
+        byte[] jpeg = jpegTask.join();
+        if (png == null || (jpeg != null && jpeg.length < png.length)) {
+            return new MediaHandle(MimeTypeUtils.IMAGE_JPEG, jpeg);
         } else {
-            return new MediaHandle(MimeTypeUtils.IMAGE_PNG, png.toByteArray());
+            return new MediaHandle(MimeTypeUtils.IMAGE_PNG, png);
         }
     }
 
-    private static ByteArrayOutputStream imageToPng(RenderedImage image) {
-        try {
-            var pngOutputStream = new ByteArrayOutputStream();
-            ImageIO.write(image, "png", pngOutputStream);
-            return pngOutputStream;
+    private static BufferedImage downsample(RenderedImage image, ImageSizeLimit sizeLimit) {
+        BufferedImage bufferedImage = toBufferedImage(image);
+        double scale = sizeLimit.scaleOf(image.getWidth(), image.getHeight());
+        if (scale >= 1.0)
+            return bufferedImage;
+
+        int width = Math.max(1, (int) Math.round(image.getWidth() * scale));
+        int height = Math.max(1, (int) Math.round(image.getHeight() * scale));
+        return resizeImage(bufferedImage, width, height);
+    }
+
+    private static BufferedImage toBufferedImage(RenderedImage image) {
+        if (image instanceof BufferedImage bufferedImage)
+            return bufferedImage;
+
+        int imageType = image.getColorModel().hasAlpha() ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB;
+        var bufferedImage = new BufferedImage(image.getWidth(), image.getHeight(), imageType);
+        Graphics2D g = bufferedImage.createGraphics();
+        g.drawRenderedImage(image, new AffineTransform());
+        g.dispose();
+        return bufferedImage;
+    }
+
+    /**
+     * The image properties deciding the encoding format.
+     *
+     * @param translucent whether any sampled pixel isn't fully opaque
+     * @param distinctColors the number of distinct colors among the sampled pixels
+     */
+    record ColorStatistics(boolean translucent, int distinctColors) {
+
+        static ColorStatistics of(BufferedImage image) {
+            int width = image.getWidth(), height = image.getHeight();
+            int step = (int) Math.max(1, Math.ceil(Math.sqrt((double) width * height / MAX_SAMPLED_PIXELS)));
+            boolean hasAlpha = image.getColorModel().hasAlpha();
+            boolean translucent = false;
+
+            int[] samples = new int[((width + step - 1) / step) * ((height + step - 1) / step)];
+            int count = 0;
+            for (int y = 0; y < height; y += step) {
+                for (int x = 0; x < width; x += step) {
+                    int argb = image.getRGB(x, y);
+                    translucent |= hasAlpha && (argb >>> 24) != 0xFF;
+                    samples[count++] = argb;
+                }
+            }
+
+            Arrays.sort(samples, 0, count);
+            int distinctColors = (count == 0) ? 0 : 1;
+            for (int i = 1; i < count; i++)
+                if (samples[i] != samples[i - 1])
+                    distinctColors++;
+
+            return new ColorStatistics(translucent, distinctColors);
         }
-        catch (IOException e) {
-            throw new UncheckedIOException(e);
+    }
+
+    enum ImageFormat {
+        PNG("png"), JPEG("jpeg");
+
+        private final String formatName;
+
+        ImageFormat(String formatName) {
+            this.formatName = formatName;
         }
     }
 
-    private static ByteArrayOutputStream imageToJpeg(RenderedImage image) {
+    /**
+     * Encodes the image in the given format, using a pooled writer.
+     *
+     * @param image the image
+     * @param format the format
+     * @param smallestSize the size of the smallest output of a competing encoding, updated on completion,
+     *                     or {@code null} if there's no competition
+     * @return the encoded image, or {@code null} if aborted after exceeding the smallest size
+     */
+    static byte[] encode(BufferedImage image, ImageFormat format, AtomicLong smallestSize) {
+        ImageWriter writer = borrowWriter(format);
+        var output = new BoundedImageOutputStream((smallestSize == null) ? () -> Long.MAX_VALUE : smallestSize::get);
         try {
-            var jpgOutputStream = new ByteArrayOutputStream();
-            var jpgWriter = ImageIO.getImageWritersByFormatName("jpg").next();
-            var jpgWriteParam = jpgWriter.getDefaultWriteParam();
-            jpgWriteParam.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
-            jpgWriteParam.setCompressionQuality(0.9f);
-
-            jpgWriter.setOutput(new MemoryCacheImageOutputStream(jpgOutputStream));
-            var outputImage = new IIOImage(removeAlphaChannel(image), null, null);
-            jpgWriter.write(null, outputImage, jpgWriteParam);
-            jpgWriter.dispose();
-            return jpgOutputStream;
-        }
-        catch (IOException e) {
+            writer.setOutput(output);
+            if (format == ImageFormat.JPEG) {
+                var writeParam = writer.getDefaultWriteParam();
+                writeParam.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+                writeParam.setCompressionQuality(JPEG_QUALITY);
+                writer.write(null, new IIOImage(removeAlphaChannel(image), null, null), writeParam);
+            } else {
+                writer.write(image);
+            }
+        } catch (IOException e) {
+            if (output.isLimitExceeded())
+                return null;
             throw new UncheckedIOException(e);
+        } finally {
+            returnWriter(format, writer);
+        }
+
+        byte[] bytes = output.toByteArray();
+        if (smallestSize != null)
+            smallestSize.accumulateAndGet(bytes.length, Math::min);
+        return bytes;
+    }
+
+    private static ImageWriter borrowWriter(ImageFormat format) {
+        ImageWriter writer = IDLE_WRITERS.computeIfAbsent(format.formatName, __ -> new ConcurrentLinkedQueue<>()).poll();
+        return (writer != null) ? writer : ImageIO.getImageWritersByFormatName(format.formatName).next();
+    }
+
+    private static void returnWriter(ImageFormat format, ImageWriter writer) {
+        writer.reset();
+        IDLE_WRITERS.get(format.formatName).offer(writer);
+    }
+
+    /**
+     * An in-memory image output stream, failing as soon as its length exceeds a limit.
+     */
+    static final class BoundedImageOutputStream extends ImageOutputStreamImpl {
+        private final LongSupplier limit;
+        private byte[] buffer = new byte[16384];
+        private int length;
+        private boolean limitExceeded;
+
+        BoundedImageOutputStream(LongSupplier limit) {
+            this.limit = limit;
+        }
+
+        boolean isLimitExceeded() {
+            return limitExceeded;
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(buffer, length);
+        }
+
+        @Override
+        public int read() throws IOException {
+            checkClosed();
+            bitOffset = 0;
+            return (streamPos < length) ? buffer[(int) streamPos++] & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            checkClosed();
+            bitOffset = 0;
+            int n = (int) Math.min(len, length - streamPos);
+            if (n <= 0)
+                return (len == 0) ? 0 : -1;
+            System.arraycopy(buffer, (int) streamPos, b, off, n);
+            streamPos += n;
+            return n;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            flushBits();
+            ensureCapacity(streamPos + 1);
+            buffer[(int) streamPos++] = (byte) b;
+            length = Math.max(length, (int) streamPos);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            flushBits();
+            ensureCapacity(streamPos + len);
+            System.arraycopy(b, off, buffer, (int) streamPos, len);
+            streamPos += len;
+            length = Math.max(length, (int) streamPos);
+        }
+
+        private void ensureCapacity(long size) throws IOException {
+            if (size > limit.getAsLong()) {
+                limitExceeded = true;
+                throw new IOException("Size limit exceeded");
+            }
+            if (size > Integer.MAX_VALUE - 8)
+                throw new IOException("Image too large");
+            if (size > buffer.length)
+                buffer = Arrays.copyOf(buffer, (int) Math.min(Integer.MAX_VALUE - 8, Math.max(size, 2L * buffer.length)));
+        }
+
+        @Override
+        public long length() {
+            return length;
         }
     }
 
@@ -78,6 +285,49 @@ public class MediaSupport {
         return rgbImage;
     }
 
+    /**
+     * Decodes the given image, skipping source pixels already while decoding if the image is
+     * larger than twice the given bounds, so the full resolution raster is never allocated.
+     * The result is about the given size or larger, to be {@linkplain #resizeImage scaled down}
+     * to the exact size.
+     *
+     * @param imageData the encoded image
+     * @param maxWidth the target width
+     * @param maxHeight the target height
+     * @return the decoded image
+     * @throws IOException if the image cannot be decoded
+     */
+    public static BufferedImage readImageSubsampled(byte[] imageData, int maxWidth, int maxHeight) throws IOException {
+        try (ImageInputStream input = ImageIO.createImageInputStream(new ByteArrayInputStream(imageData))) {
+            Iterator<ImageReader> readers = (input == null) ? null : ImageIO.getImageReaders(input);
+            if (readers == null || !readers.hasNext())
+                throw new IIOException("Unsupported image format");
+
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(input, true, true);
+                double oversize = Math.max((double) reader.getWidth(0) / maxWidth, (double) reader.getHeight(0) / maxHeight);
+                ImageReadParam param = reader.getDefaultReadParam();
+                int subsampling = (int) (oversize / 2);
+                if (subsampling > 1)
+                    param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+                return reader.read(0, param);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    /**
+     * Scales the given image down to fit in the given bounds, keeping the aspect ratio. Large
+     * reductions are done in successive halving steps with bilinear interpolation, which is
+     * much faster than area averaging and gives comparable quality.
+     *
+     * @param image the image
+     * @param maxWidth the maximum width
+     * @param maxHeight the maximum height
+     * @return the scaled image, or the given image if it already fits
+     */
     public static BufferedImage resizeImage(BufferedImage image, int maxWidth, int maxHeight) {
         int imageWidth = image.getWidth();
         int imageHeight = image.getHeight();
@@ -87,14 +337,23 @@ public class MediaSupport {
             return image;
         }
 
-        int newWidth = (int) (imageWidth / oversize);
-        int newHeight = (int) (imageHeight / oversize);
-        Image resizedImage = image.getScaledInstance(newWidth, newHeight, Image.SCALE_SMOOTH);
-        BufferedImage resizedBufferedImage = new BufferedImage(newWidth, newHeight, BufferedImage.TYPE_INT_RGB);
+        int newWidth = Math.max(1, (int) (imageWidth / oversize));
+        int newHeight = Math.max(1, (int) (imageHeight / oversize));
+        int imageType = (image.getTransparency() == Transparency.OPAQUE) ? BufferedImage.TYPE_INT_RGB : BufferedImage.TYPE_INT_ARGB;
+        BufferedImage result = image;
+        int width = imageWidth, height = imageHeight;
+        do {
+            width = Math.max(newWidth, width / 2);
+            height = Math.max(newHeight, height / 2);
+
+            var step = new BufferedImage(width, height, imageType);
+            Graphics2D g2d = step.createGraphics();
+            g2d.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g2d.drawImage(result, 0, 0, width, height, null);
+            g2d.dispose();
+            result = step;
+        } while (width != newWidth || height != newHeight);
 
-        Graphics2D g2d = resizedBufferedImage.createGraphics();
-        g2d.drawImage(resizedImage, 0, 0, null);
-        g2d.dispose();
-        return resizedBufferedImage;
+        return result;
     }
 }
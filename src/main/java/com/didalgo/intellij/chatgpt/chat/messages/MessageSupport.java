@@ -18,6 +18,23 @@ public class MessageSupport {
         return setContent(message, ELLIPSIS + " " + message.getContent().substring(fromIndex));
     }
 
+    /**
+     * Returns a copy of the given message with the content replaced by its head and tail,
+     * joined with an ellipsis marking the removed middle part.
+     *
+     * @param message the original message
+     * @param head the retained beginning of the content, may be empty
+     * @param tail the retained end of the content, may be empty
+     * @return the elided message
+     */
+    public static Message elide(Message message, String head, String tail) {
+        if (head.isEmpty())
+            return setContent(message, ELLIPSIS + " " + tail);
+        if (tail.isEmpty())
+            return setContent(message, head + " " + ELLIPSIS);
+        return setContent(message, head + "\n" + ELLIPSIS + "\n" + tail);
+    }
+
     /**
      * Sets new content to a given {@link Message} and returns a new instance of the message with updated content.
      * This method supports updating content for {@link UserMessage}, {@link SystemMessage}, and {@link AssistantMessage}.
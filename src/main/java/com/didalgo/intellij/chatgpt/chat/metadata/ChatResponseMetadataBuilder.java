@@ -6,6 +6,7 @@ package com.didalgo.intellij.chatgpt.chat.metadata;
 
 import org.springframework.ai.chat.metadata.ChatResponseMetadata;
 import org.springframework.ai.chat.metadata.EmptyRateLimit;
+import org.springframework.ai.chat.metadata.Usage;
 
 import java.util.Map;
 import java.util.function.Consumer;
@@ -36,6 +37,16 @@ public class ChatResponseMetadataBuilder implements Consumer<ChatResponseMetadat
         }
     }
 
+    public ChatResponseMetadataBuilder withUsage(Usage usage) {
+        usageAggregator.accept(usage);
+        return this;
+    }
+
+    public ChatResponseMetadataBuilder withKeyValue(String key, Object value) {
+        builder.withKeyValue(key, value);
+        return this;
+    }
+
     public ChatResponseMetadata build() {
         return builder
                 .withUsage(usageAggregator.toImmutableUsage())
@@ -0,0 +1,57 @@
+/*
+ * Copyright (c) 2024 Mariusz Bernacki <consulting@didalgo.com>
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.didalgo.intellij.chatgpt.chat.metadata;
+
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.components.Service;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps rolling histograms of exchange latencies per model, telling slow providers apart
+ * from slow rendering.
+ */
+@Service
+public final class ExchangeLatencyTracker {
+
+    static final int WINDOW_SIZE = 100;
+
+    private final Map<String, ModelLatency> modelLatencies = new ConcurrentHashMap<>();
+
+    public static ExchangeLatencyTracker getInstance() {
+        return ApplicationManager.getApplication().getService(ExchangeLatencyTracker.class);
+    }
+
+    /**
+     * Latency histograms of a single model.
+     *
+     * @param timeToFirstTokenMillis the histogram of times to first token, in milliseconds
+     * @param maxChunkGapMillis the histogram of the longest gaps between chunks, in milliseconds
+     * @param tokensPerSecond the histogram of output throughputs, in tokens per second
+     */
+    public record ModelLatency(
+            LatencyHistogram timeToFirstTokenMillis,
+            LatencyHistogram maxChunkGapMillis,
+            LatencyHistogram tokensPerSecond) {
+
+        ModelLatency() {
+            this(new LatencyHistogram(WINDOW_SIZE), new LatencyHistogram(WINDOW_SIZE), new LatencyHistogram(WINDOW_SIZE));
+        }
+    }
+
+    public void record(ExchangeTimings timings) {
+        var latency = modelLatencies.computeIfAbsent(timings.modelId(), __ -> new ModelLatency());
+        latency.timeToFirstTokenMillis().record(timings.timeToFirstToken().toMillis());
+        latency.maxChunkGapMillis().record(timings.maxChunkGap().toMillis());
+        if (timings.tokensPerSecond() > 0)
+            latency.tokensPerSecond().record(Math.round(timings.tokensPerSecond()));
+    }
+
+    public Optional<ModelLatency> getModelLatency(String modelId) {
+        return Optional.ofNullable(modelLatencies.get(modelId));
+    }
+}
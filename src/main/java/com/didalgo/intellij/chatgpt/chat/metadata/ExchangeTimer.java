@@ -0,0 +1,68 @@
+/*
+ * Copyright (c) 2024 Mariusz Bernacki <consulting@didalgo.com>
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.didalgo.intellij.chatgpt.chat.metadata;
+
+import java.time.Duration;
+import java.util.function.LongSupplier;
+
+/**
+ * Captures the timings of a single chat exchange as its response stream progresses.
+ */
+public final class ExchangeTimer {
+
+    private final LongSupplier nanoClock;
+    private long subscribedNanos = -1;
+    private long firstChunkNanos = -1;
+    private long lastChunkNanos = -1;
+    private long chunkGapSumNanos;
+    private long maxChunkGapNanos;
+    private int chunkCount;
+
+    public ExchangeTimer() {
+        this(System::nanoTime);
+    }
+
+    public ExchangeTimer(LongSupplier nanoClock) {
+        this.nanoClock = nanoClock;
+    }
+
+    public synchronized void subscribed() {
+        subscribedNanos = nanoClock.getAsLong();
+    }
+
+    public synchronized void chunkArrived() {
+        long now = nanoClock.getAsLong();
+        if (chunkCount++ == 0) {
+            firstChunkNanos = now;
+        } else {
+            long gap = now - lastChunkNanos;
+            chunkGapSumNanos += gap;
+            maxChunkGapNanos = Math.max(maxChunkGapNanos, gap);
+        }
+        lastChunkNanos = now;
+    }
+
+    /**
+     * Completes the measurement.
+     *
+     * @param modelId the id of the model which generated the response
+     * @param generationTokens the number of generated tokens
+     * @return the exchange timings
+     */
+    public synchronized ExchangeTimings completed(String modelId, long generationTokens) {
+        long now = nanoClock.getAsLong();
+        long start = (subscribedNanos >= 0) ? subscribedNanos : now;
+        long firstChunk = (firstChunkNanos >= 0) ? firstChunkNanos : now;
+
+        return new ExchangeTimings(
+                modelId,
+                Duration.ofNanos(firstChunk - start),
+                Duration.ofNanos(now - start),
+                Duration.ofNanos((chunkCount > 1) ? chunkGapSumNanos / (chunkCount - 1) : 0),
+                Duration.ofNanos(maxChunkGapNanos),
+                chunkCount,
+                generationTokens);
+    }
+}
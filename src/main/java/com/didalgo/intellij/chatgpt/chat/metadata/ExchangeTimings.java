@@ -0,0 +1,55 @@
+/*
+ * Copyright (c) 2024 Mariusz Bernacki <consulting@didalgo.com>
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.didalgo.intellij.chatgpt.chat.metadata;
+
+import org.springframework.ai.chat.metadata.ChatResponseMetadata;
+
+import java.time.Duration;
+import java.util.Optional;
+
+/**
+ * Latency measurements of a single chat exchange, from the subscription to the response stream
+ * until its completion.
+ *
+ * @param modelId the id of the model which generated the response
+ * @param timeToFirstToken the time from the subscription until the first chunk arrived
+ * @param totalTime the time from the subscription until the stream completed
+ * @param meanChunkGap the mean time between consecutive chunks
+ * @param maxChunkGap the longest time between consecutive chunks
+ * @param chunkCount the number of chunks received
+ * @param generationTokens the number of generated tokens
+ */
+public record ExchangeTimings(
+        String modelId,
+        Duration timeToFirstToken,
+        Duration totalTime,
+        Duration meanChunkGap,
+        Duration maxChunkGap,
+        int chunkCount,
+        long generationTokens) {
+
+    /** The key of the timings in the {@link ChatResponseMetadata} of the completed response. */
+    public static final String METADATA_KEY = "exchangeTimings";
+
+    /**
+     * Returns the output throughput. For streamed responses the throughput is measured
+     * from the first chunk, excluding the time the provider needed to start responding.
+     *
+     * @return the generated tokens per second, or {@code 0} if unknown
+     */
+    public double tokensPerSecond() {
+        var generationTime = (chunkCount > 1) ? totalTime.minus(timeToFirstToken) : totalTime;
+        if (generationTokens <= 0 || generationTime.isZero() || generationTime.isNegative())
+            return 0.0;
+
+        return generationTokens * 1e9 / generationTime.toNanos();
+    }
+
+    public static Optional<ExchangeTimings> from(ChatResponseMetadata metadata) {
+        if (metadata != null && metadata.get(METADATA_KEY) instanceof ExchangeTimings timings)
+            return Optional.of(timings);
+        return Optional.empty();
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright (c) 2024 Mariusz Bernacki <consulting@didalgo.com>
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.didalgo.intellij.chatgpt.chat.metadata;
+
+import java.util.Arrays;
+
+/**
+ * Rolling histogram of the most recent values, with exponentially growing buckets.
+ * <p>
+ * Bucket {@code k} counts values in the range {@code [2^(k-1), 2^k)}, bucket {@code 0} counts zeros.
+ * Values leaving the rolling window are subtracted from their buckets, so the histogram always
+ * describes exactly the last {@code windowSize} recorded values.
+ */
+public final class LatencyHistogram {
+
+    private static final int BUCKET_COUNT = Long.SIZE;
+
+    private final long[] window;
+    private final int[] bucketCounts = new int[BUCKET_COUNT];
+    private int next;
+    private int size;
+
+    public LatencyHistogram(int windowSize) {
+        if (windowSize <= 0)
+            throw new IllegalArgumentException("windowSize: " + windowSize);
+        this.window = new long[windowSize];
+    }
+
+    public synchronized void record(long value) {
+        value = Math.max(0, value);
+        if (size == window.length)
+            bucketCounts[bucketOf(window[next])]--;
+        else
+            size++;
+
+        window[next] = value;
+        bucketCounts[bucketOf(value)]++;
+        next = (next + 1) % window.length;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Returns the approximate percentile of the values in the window, as the upper bound
+     * of the bucket containing it.
+     *
+     * @param p the percentile, from {@code 0.0} to {@code 1.0}
+     * @return the percentile upper bound, or {@code -1} if the histogram is empty
+     */
+    public synchronized long percentile(double p) {
+        if (size == 0)
+            return -1;
+
+        int rank = Math.max(1, (int) Math.ceil(p * size));
+        int seen = 0;
+        for (int bucket = 0; bucket < BUCKET_COUNT; bucket++) {
+            seen += bucketCounts[bucket];
+            if (seen >= rank)
+                return (bucket == 0) ? 0 : (bucket == BUCKET_COUNT - 1) ? Long.MAX_VALUE : (1L << bucket) - 1;
+        }
+        return Long.MAX_VALUE;
+    }
+
+    public synchronized int[] getBucketCounts() {
+        return Arrays.copyOf(bucketCounts, bucketCounts.length);
+    }
+
+    private static int bucketOf(long value) {
+        return Long.SIZE - Long.numberOfLeadingZeros(value);
+    }
+}
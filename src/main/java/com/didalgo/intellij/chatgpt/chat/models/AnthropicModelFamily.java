@@ -4,6 +4,7 @@
  */
 package com.didalgo.intellij.chatgpt.chat.models;
 
+import com.didalgo.intellij.chatgpt.chat.messages.ImageSizeLimit;
 import com.didalgo.intellij.chatgpt.settings.GeneralSettings;
 import org.springframework.ai.anthropic.AnthropicChatModel;
 import org.springframework.ai.anthropic.AnthropicChatOptions;
@@ -11,6 +12,9 @@ import org.springframework.ai.anthropic.api.AnthropicApi;
 
 public class AnthropicModelFamily implements ModelFamily {
 
+    /** The maximum reply length requested, which the Messages API requires. */
+    public static final int MAX_OUTPUT_TOKENS = 4096;
+
     @Override
     public AnthropicChatModel createChatModel(GeneralSettings.AssistantOptions config) {
         var baseUrl = config.isEnableCustomApiEndpointUrl()? config.getApiEndpointUrl(): getDefaultApiEndpointUrl();
@@ -20,7 +24,7 @@ public class AnthropicModelFamily implements ModelFamily {
                 .withModel(config.getModelName())
                 .withTemperature(config.getTemperature())
                 .withTopP(config.getTopP())
-                .withMaxTokens(4096)
+                .withMaxTokens(MAX_OUTPUT_TOKENS)
                 .build();
         return new AnthropicChatModel(api, options);
     }
@@ -34,4 +38,26 @@ public class AnthropicModelFamily implements ModelFamily {
     public String getApiKeysHomepage() {
         return "https://console.anthropic.com/settings/keys";
     }
+
+    @Override
+    public com.didalgo.gpt3.ModelType getTokenizerModel(String modelId) {
+        // the tokenizer isn't public, approximated with cl100k_base
+        return TokenizerRegistry.DEFAULT_TOKENIZER_MODEL;
+    }
+
+    @Override
+    public boolean isTokenizerApproximate() {
+        return true;
+    }
+
+    @Override
+    public int getMaxOutputTokens() {
+        return MAX_OUTPUT_TOKENS;
+    }
+
+    @Override
+    public ImageSizeLimit getImageSizeLimit() {
+        // images are scaled to 1568 px on the longer side
+        return new ImageSizeLimit(1568, Integer.MAX_VALUE);
+    }
 }
@@ -6,6 +6,7 @@ package com.didalgo.intellij.chatgpt.chat.models;
 
 import com.azure.ai.openai.OpenAIClientBuilder;
 import com.azure.core.credential.AzureKeyCredential;
+import com.didalgo.intellij.chatgpt.chat.messages.ImageSizeLimit;
 import com.didalgo.intellij.chatgpt.settings.GeneralSettings;
 import org.springframework.ai.azure.openai.AzureOpenAiChatModel;
 import org.springframework.ai.azure.openai.AzureOpenAiChatOptions;
@@ -52,4 +53,10 @@ public class AzureOpenAiModelFamily implements ModelFamily {
     public String getApiKeysHomepage() {
         return "https://portal.azure.com/";
     }
+
+    @Override
+    public ImageSizeLimit getImageSizeLimit() {
+        // high detail images are fit into 2048x2048 and then scaled to 768 px on the shorter side
+        return new ImageSizeLimit(2048, 768);
+    }
 }
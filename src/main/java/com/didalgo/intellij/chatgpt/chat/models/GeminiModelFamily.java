@@ -7,6 +7,7 @@ package com.didalgo.intellij.chatgpt.chat.models;
 import com.didalgo.ai.gemini.GeminiChatModel;
 import com.didalgo.ai.gemini.GeminiChatOptions;
 import com.didalgo.ai.gemini.api.GeminiApi;
+import com.didalgo.intellij.chatgpt.chat.messages.ImageSizeLimit;
 import com.didalgo.intellij.chatgpt.settings.GeneralSettings;
 
 public class GeminiModelFamily implements ModelFamily {
@@ -34,4 +35,21 @@ public class GeminiModelFamily implements ModelFamily {
     public String getApiKeysHomepage() {
         return "https://aistudio.google.com/app/apikey";
     }
+
+    @Override
+    public com.didalgo.gpt3.ModelType getTokenizerModel(String modelId) {
+        // the tokenizer isn't public, approximated with cl100k_base
+        return TokenizerRegistry.DEFAULT_TOKENIZER_MODEL;
+    }
+
+    @Override
+    public boolean isTokenizerApproximate() {
+        return true;
+    }
+
+    @Override
+    public ImageSizeLimit getImageSizeLimit() {
+        // images are scaled to fit into 3072x3072
+        return new ImageSizeLimit(3072, 3072);
+    }
 }
@@ -4,6 +4,7 @@
  */
 package com.didalgo.intellij.chatgpt.chat.models;
 
+import com.didalgo.intellij.chatgpt.chat.messages.ImageSizeLimit;
 import com.didalgo.intellij.chatgpt.settings.GeneralSettings;
 import org.springframework.ai.chat.model.ChatModel;
 import org.springframework.util.ReflectionUtils;
@@ -37,6 +38,48 @@ public interface ModelFamily {
         return "".equals(getApiKeysHomepage());
     }
 
+    /**
+     * Returns the OpenAI model whose tokenizer counts tokens of the given model of this family.
+     * Families with proprietary tokenizers return the closest approximation. The method is called
+     * once per model by the {@link TokenizerRegistry}.
+     *
+     * @param modelId the model id
+     * @return the tokenizer model, or {@code null} to use {@link TokenizerRegistry#DEFAULT_TOKENIZER_MODEL}
+     */
+    default com.didalgo.gpt3.ModelType getTokenizerModel(String modelId) {
+        return TokenizerRegistry.findOpenAiTokenizerModel(modelId).orElse(TokenizerRegistry.DEFAULT_TOKENIZER_MODEL);
+    }
+
+    /**
+     * Tells whether the {@linkplain #getTokenizerModel(String) tokenizer model} only approximates
+     * the proprietary tokenizer of the models of this family, so token counts may fall short.
+     *
+     * @return {@code true} if token counts are approximate
+     */
+    default boolean isTokenizerApproximate() {
+        return false;
+    }
+
+    /**
+     * Returns the maximum reply length sent with each request to the models of this family. The
+     * prompt together with it must fit in the context window, or the request is rejected.
+     *
+     * @return the maximum number of reply tokens requested, or {@code 0} if not sent
+     */
+    default int getMaxOutputTokens() {
+        return 0;
+    }
+
+    /**
+     * Returns the largest image resolution the models of this family make use of. Images attached
+     * to prompts are scaled down to it before they're encoded.
+     *
+     * @return the image size limit
+     */
+    default ImageSizeLimit getImageSizeLimit() {
+        return ImageSizeLimit.NONE;
+    }
+
     static ModelFamily create(Class<? extends ModelFamily> clazz) {
         return Arrays.stream(ModelFamily.class.getFields())
                 .filter(field -> field.getType().equals(clazz) && ReflectionUtils.isPublicStaticFinal(field))
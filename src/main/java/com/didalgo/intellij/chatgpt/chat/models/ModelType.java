@@ -32,18 +32,10 @@ public interface ModelType {
     }
 
     default GPT3Tokenizer getTokenizer() {
-        try {
-            return com.didalgo.gpt3.ModelType.forModel(id()).orElseThrow().getTokenizer();
-        } catch (IllegalArgumentException e) {
-            return com.didalgo.gpt3.ModelType.forModel(com.didalgo.gpt3.ModelType.GPT_4.modelName()).orElseThrow().getTokenizer();
-        }
+        return TokenizerRegistry.getInstance().getTokenizer(this);
     }
 
     default ChatFormatDescriptor getChatFormatDescriptor() {
-        try {
-            return com.didalgo.gpt3.ModelType.forModel(id()).orElseThrow().getChatFormatDescriptor();
-        } catch (IllegalArgumentException e) {
-            return com.didalgo.gpt3.ModelType.forModel(com.didalgo.gpt3.ModelType.GPT_4.modelName()).orElseThrow().getChatFormatDescriptor();
-        }
+        return TokenizerRegistry.getInstance().getChatFormatDescriptor(this);
     }
 }
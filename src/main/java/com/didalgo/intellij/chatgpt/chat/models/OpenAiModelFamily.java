@@ -4,6 +4,7 @@
  */
 package com.didalgo.intellij.chatgpt.chat.models;
 
+import com.didalgo.intellij.chatgpt.chat.messages.ImageSizeLimit;
 import com.didalgo.intellij.chatgpt.settings.GeneralSettings;
 import org.springframework.ai.openai.OpenAiChatModel;
 import org.springframework.ai.openai.OpenAiChatOptions;
@@ -47,4 +48,10 @@ public class OpenAiModelFamily implements ModelFamily {
     public String getApiKeysHomepage() {
         return "https://platform.openai.com/api-keys";
     }
+
+    @Override
+    public ImageSizeLimit getImageSizeLimit() {
+        // high detail images are fit into 2048x2048 and then scaled to 768 px on the shorter side
+        return new ImageSizeLimit(2048, 768);
+    }
 }
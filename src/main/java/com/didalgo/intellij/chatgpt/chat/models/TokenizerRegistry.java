@@ -0,0 +1,126 @@
+/*
+ * Copyright (c) 2024 Mariusz Bernacki <consulting@didalgo.com>
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.didalgo.intellij.chatgpt.chat.models;
+
+import com.didalgo.gpt3.ChatFormatDescriptor;
+import com.didalgo.gpt3.GPT3Tokenizer;
+import com.intellij.openapi.diagnostic.Logger;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+
+/**
+ * Shared registry of tokenizers used to count tokens of chat models.
+ * <p>
+ * The tokenizer of a model is resolved once per model id, by asking the {@link ModelFamily#getTokenizerModel(String)
+ * model family} which tokenizer counts tokens of the model. Families with proprietary tokenizers answer with the
+ * closest approximation. Models resolved to the same tokenizer share a single instance, whose BPE tables
+ * are loaded lazily on first use, and can be loaded ahead of time in the background with {@link #warmUp}.
+ */
+public final class TokenizerRegistry {
+
+    private static final Logger LOG = Logger.getInstance(TokenizerRegistry.class);
+
+    /** The tokenizer model used for models whose tokenizer is unknown. */
+    public static final com.didalgo.gpt3.ModelType DEFAULT_TOKENIZER_MODEL = com.didalgo.gpt3.ModelType.GPT_4;
+
+    private static final TokenizerRegistry INSTANCE = new TokenizerRegistry();
+
+    private final Map<ModelKey, Tokenization> modelTokenizations = new ConcurrentHashMap<>();
+    private final Map<com.didalgo.gpt3.ModelType, Tokenization> tokenizations = new ConcurrentHashMap<>();
+
+    private record ModelKey(ModelFamily family, String id) { }
+
+    public static TokenizerRegistry getInstance() {
+        return INSTANCE;
+    }
+
+    public GPT3Tokenizer getTokenizer(ModelType model) {
+        return getTokenization(model).getTokenizer();
+    }
+
+    public ChatFormatDescriptor getChatFormatDescriptor(ModelType model) {
+        return getTokenization(model).getChatFormatDescriptor();
+    }
+
+    private Tokenization getTokenization(ModelType model) {
+        return modelTokenizations.computeIfAbsent(new ModelKey(model.getFamily(), model.id()),
+                key -> tokenizations.computeIfAbsent(resolveTokenizerModel(key), Tokenization::new));
+    }
+
+    private static com.didalgo.gpt3.ModelType resolveTokenizerModel(ModelKey key) {
+        var tokenizerModel = (key.family() == null) ? null : key.family().getTokenizerModel(key.id());
+        return (tokenizerModel != null) ? tokenizerModel : DEFAULT_TOKENIZER_MODEL;
+    }
+
+    /**
+     * Finds the OpenAI model with the given name, known to the tokenizer library.
+     *
+     * @param modelId the model name
+     * @return the tokenizer model, or empty if the model is unknown
+     */
+    public static Optional<com.didalgo.gpt3.ModelType> findOpenAiTokenizerModel(String modelId) {
+        if (modelId == null || modelId.isEmpty())
+            return Optional.empty();
+        try {
+            return com.didalgo.gpt3.ModelType.forModel(modelId);
+        } catch (IllegalArgumentException e) {
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Loads the tokenizers of the given models in the background.
+     *
+     * @param models the models to load tokenizers for
+     * @param executor the executor to load on
+     */
+    public void warmUp(Collection<? extends ModelType> models, Executor executor) {
+        for (ModelType model : models) {
+            executor.execute(() -> {
+                try {
+                    getTokenizer(model).encode("warm-up");
+                    getChatFormatDescriptor(model);
+                } catch (RuntimeException e) {
+                    LOG.warn("Unable to load tokenizer for model " + model.id(), e);
+                }
+            });
+        }
+    }
+
+    /**
+     * The lazily loaded tokenizer with chat format of a single tokenizer model.
+     */
+    private static final class Tokenization {
+        private final com.didalgo.gpt3.ModelType tokenizerModel;
+        private volatile GPT3Tokenizer tokenizer;
+        private volatile ChatFormatDescriptor chatFormatDescriptor;
+
+        Tokenization(com.didalgo.gpt3.ModelType tokenizerModel) {
+            this.tokenizerModel = tokenizerModel;
+        }
+
+        GPT3Tokenizer getTokenizer() {
+            var tokenizer = this.tokenizer;
+            if (tokenizer == null) {
+                synchronized (this) {
+                    if ((tokenizer = this.tokenizer) == null)
+                        this.tokenizer = tokenizer = tokenizerModel.getTokenizer();
+                }
+            }
+            return tokenizer;
+        }
+
+        ChatFormatDescriptor getChatFormatDescriptor() {
+            var chatFormatDescriptor = this.chatFormatDescriptor;
+            if (chatFormatDescriptor == null)
+                this.chatFormatDescriptor = chatFormatDescriptor = tokenizerModel.getChatFormatDescriptor();
+            return chatFormatDescriptor;
+        }
+    }
+}
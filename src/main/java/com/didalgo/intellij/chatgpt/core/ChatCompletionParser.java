@@ -4,6 +4,7 @@
  */
 package com.didalgo.intellij.chatgpt.core;
 
+import com.didalgo.intellij.chatgpt.text.IncrementalMarkdownFormatter;
 import com.didalgo.intellij.chatgpt.text.TextFragment;
 import org.springframework.ai.chat.messages.AssistantMessage;
 import org.springframework.ai.chat.model.Generation;
@@ -22,4 +23,13 @@ public class ChatCompletionParser {
         parseResult.toHtml(); // pre-compute and cache HTML content in the current thread
         return parseResult;
     }
+
+    public static TextFragment parseTextContent(Generation generation, IncrementalMarkdownFormatter formatter) {
+        if (formatter == null)
+            return parseTextContent(generation);
+
+        AssistantMessage assistantMessage = generation.getOutput();
+        String content = (assistantMessage == null)? "" : assistantMessage.getContent();
+        return TextFragment.of(content, formatter.format(content));
+    }
 }
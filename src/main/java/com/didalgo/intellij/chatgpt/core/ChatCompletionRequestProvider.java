@@ -5,6 +5,7 @@
 package com.didalgo.intellij.chatgpt.core;
 
 import com.didalgo.intellij.chatgpt.chat.ConversationContext;
+import com.didalgo.intellij.chatgpt.diagnostic.PromptAssemblyEvent;
 import com.intellij.openapi.components.Service;
 import org.springframework.ai.chat.messages.UserMessage;
 import org.springframework.ai.chat.prompt.Prompt;
@@ -13,7 +14,20 @@ import org.springframework.ai.chat.prompt.Prompt;
 public final class ChatCompletionRequestProvider {
 
     public Prompt chatCompletionRequest(ConversationContext ctx, UserMessage userMessage) {
+        var jfrEvent = new PromptAssemblyEvent();
+        jfrEvent.begin();
+
         ctx.addChatMessage(userMessage);
-        return new Prompt(ctx.getChatMessages(ctx.getModelType(), userMessage));
+        var model = ctx.getModelType();
+        var messages = ctx.getChatMessages(model, userMessage);
+
+        if (jfrEvent.shouldCommit()) {
+            jfrEvent.model = model.id();
+            jfrEvent.messageCount = messages.size();
+            jfrEvent.promptChars = messages.stream().mapToInt(message -> message.getContent().length()).sum();
+            jfrEvent.userMessageChars = userMessage.getContent().length();
+            jfrEvent.commit();
+        }
+        return new Prompt(messages);
     }
 }
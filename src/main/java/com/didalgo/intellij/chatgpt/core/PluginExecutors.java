@@ -0,0 +1,89 @@
+/*
+ * Copyright (c) 2024 Mariusz Bernacki <consulting@didalgo.com>
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.didalgo.intellij.chatgpt.core;
+
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.util.concurrency.AppExecutorUtil;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Plugin-wide executors for chat exchanges and other work blocking on network I/O or tokenization.
+ * <p>
+ * On Java 21+ runtimes the tasks run on virtual threads, one per task, so that many concurrent exchanges,
+ * batch actions and token estimations don't exhaust the IDE's shared thread pool. On older runtimes, or when
+ * disabled with the {@value #VIRTUAL_THREADS_PROPERTY} system property set to {@code false}, the tasks run
+ * on the application pool.
+ */
+public final class PluginExecutors {
+
+    private static final Logger LOG = Logger.getInstance(PluginExecutors.class);
+
+    public static final String VIRTUAL_THREADS_PROPERTY = "chatgpt.virtualThreads";
+
+    private static final String THREAD_NAME_PREFIX = "ChatGPT-";
+
+    private PluginExecutors() { }
+
+    /**
+     * Returns the executor for blocking tasks.
+     *
+     * @return the executor, not to be shut down
+     */
+    public static ExecutorService getExecutor() {
+        return Holder.EXECUTOR;
+    }
+
+    /**
+     * Returns the Reactor scheduler running on top of {@link #getExecutor()}.
+     *
+     * @return the scheduler, not to be disposed
+     */
+    public static Scheduler getScheduler() {
+        return Holder.SCHEDULER;
+    }
+
+    public static boolean isVirtual() {
+        return Holder.VIRTUAL;
+    }
+
+    private static final class Holder {
+        private static final ExecutorService VIRTUAL_EXECUTOR = createVirtualThreadExecutor(
+                Boolean.parseBoolean(System.getProperty(VIRTUAL_THREADS_PROPERTY, "true")), Runtime.version().feature());
+        private static final boolean VIRTUAL = (VIRTUAL_EXECUTOR != null);
+        private static final ExecutorService EXECUTOR = VIRTUAL ? VIRTUAL_EXECUTOR : AppExecutorUtil.getAppExecutorService();
+        private static final Scheduler SCHEDULER = Schedulers.fromExecutorService(EXECUTOR, "chatgpt");
+    }
+
+    /**
+     * Creates the executor running each task on a new virtual thread.
+     *
+     * @param enabled whether virtual threads are enabled
+     * @param runtimeFeature the feature release number of the Java runtime
+     * @return the executor, or {@code null} if virtual threads are disabled or unavailable
+     */
+    static ExecutorService createVirtualThreadExecutor(boolean enabled, int runtimeFeature) {
+        if (!enabled || runtimeFeature < 21)
+            return null;
+
+        try {
+            // equivalent of Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name(prefix, 0).factory()),
+            // called reflectively as the plugin is compiled for Java 17
+            var builderClass = Class.forName("java.lang.Thread$Builder");
+            var builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, THREAD_NAME_PREFIX, 0L);
+            var threadFactory = (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+            return (ExecutorService) Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class)
+                    .invoke(null, threadFactory);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            LOG.warn("Virtual threads unavailable, falling back to application pool", e);
+            return null;
+        }
+    }
+}
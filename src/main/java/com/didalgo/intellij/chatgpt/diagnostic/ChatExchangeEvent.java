@@ -0,0 +1,109 @@
+/*
+ * Copyright (c) 2024 Mariusz Bernacki <consulting@didalgo.com>
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.didalgo.intellij.chatgpt.diagnostic;
+
+import com.didalgo.intellij.chatgpt.chat.ChatExchangeAbortException;
+import com.didalgo.intellij.chatgpt.chat.ChatMessageEvent;
+import com.didalgo.intellij.chatgpt.chat.ChatMessageListener;
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+@Name("com.didalgo.chatgpt.ChatExchange")
+@Label("Chat Exchange")
+@Description("A chat exchange from pushing the user message until the response arrived, failed or was cancelled")
+@Category({ JfrEvents.CATEGORY, "Chat" })
+@StackTrace(false)
+public final class ChatExchangeEvent extends Event {
+
+    @Label("Model")
+    public String model;
+
+    @Label("Action Type")
+    public String actionType;
+
+    @Label("Prompt Characters")
+    public int promptChars;
+
+    @Label("Media Attachments")
+    public int mediaCount;
+
+    @Label("Response Characters")
+    public int responseChars;
+
+    @Label("Response Code Blocks")
+    public int responseCodeBlocks;
+
+    @Label("Outcome")
+    public String outcome;
+
+    /**
+     * Returns a listener forwarding events to the given delegate, committing this JFR event
+     * once the exchange ends.
+     *
+     * @param delegate the listener to forward events to
+     * @return the committing listener
+     */
+    public ChatMessageListener committingOnEnd(ChatMessageListener delegate) {
+        return new ChatMessageListener() {
+            private final AtomicBoolean ended = new AtomicBoolean();
+
+            @Override
+            public void exchangeStarting(ChatMessageEvent.Starting event) throws ChatExchangeAbortException {
+                delegate.exchangeStarting(event);
+            }
+
+            @Override
+            public void exchangeStarted(ChatMessageEvent.Started event) {
+                delegate.exchangeStarted(event);
+            }
+
+            @Override
+            public void responseArriving(ChatMessageEvent.ResponseArriving event) {
+                delegate.responseArriving(event);
+            }
+
+            @Override
+            public void responseArrived(ChatMessageEvent.ResponseArrived event) {
+                if (!ended.getAndSet(true) && shouldCommit()) {
+                    var generations = event.getGenerations();
+                    String content = generations.isEmpty() ? "" : generations.get(0).getOutput().getContent();
+                    if (content != null) {
+                        responseChars = content.length();
+                        responseCodeBlocks = JfrEvents.countCodeBlocks(content);
+                    }
+                    end("completed");
+                }
+                delegate.responseArrived(event);
+            }
+
+            @Override
+            public void exchangeFailed(ChatMessageEvent.Failed event) {
+                if (!ended.getAndSet(true))
+                    end("failed");
+                delegate.exchangeFailed(event);
+            }
+
+            @Override
+            public void exchangeCancelled(ChatMessageEvent.Cancelled event) {
+                if (!ended.getAndSet(true))
+                    end("cancelled");
+                delegate.exchangeCancelled(event);
+            }
+        };
+    }
+
+    private void end(String outcome) {
+        if (shouldCommit()) {
+            this.outcome = outcome;
+            commit();
+        }
+    }
+}
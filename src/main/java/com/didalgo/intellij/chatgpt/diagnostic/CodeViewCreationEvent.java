@@ -0,0 +1,31 @@
+/*
+ * Copyright (c) 2024 Mariusz Bernacki <consulting@didalgo.com>
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.didalgo.intellij.chatgpt.diagnostic;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("com.didalgo.chatgpt.CodeViewCreation")
+@Label("Code View Creation")
+@Description("Creating the syntax highlighting text area of a code block")
+@Category({ JfrEvents.CATEGORY, "Rendering" })
+public final class CodeViewCreationEvent extends Event {
+
+    @Label("Language")
+    public String language;
+
+    @Label("Characters")
+    public int chars;
+
+    @Label("Lines")
+    public int lines;
+
+    @Label("Reused")
+    @Description("Whether the component of the same code block was taken over from the previous view")
+    public boolean reused;
+}
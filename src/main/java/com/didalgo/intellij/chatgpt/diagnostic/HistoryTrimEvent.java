@@ -0,0 +1,36 @@
+/*
+ * Copyright (c) 2024 Mariusz Bernacki <consulting@didalgo.com>
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.didalgo.intellij.chatgpt.diagnostic;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("com.didalgo.chatgpt.HistoryTrim")
+@Label("History Trim")
+@Description("Dropping and truncating the oldest conversation messages to fit within the input token budget")
+@Category({ JfrEvents.CATEGORY, "Chat" })
+public final class HistoryTrimEvent extends Event {
+
+    @Label("Messages")
+    public int messageCount;
+
+    @Label("Messages Removed")
+    public int messagesRemoved;
+
+    @Label("Token Limit")
+    public int tokenLimit;
+
+    @Label("Tokens Before")
+    public long tokensBefore;
+
+    @Label("Tokens After")
+    public long tokensAfter;
+
+    @Label("Message Truncated")
+    public boolean truncated;
+}
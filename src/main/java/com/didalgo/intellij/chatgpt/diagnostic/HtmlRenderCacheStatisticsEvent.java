@@ -0,0 +1,42 @@
+/*
+ * Copyright (c) 2024 Mariusz Bernacki <consulting@didalgo.com>
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.didalgo.intellij.chatgpt.diagnostic;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Percentage;
+import jdk.jfr.Period;
+
+@Name("com.didalgo.chatgpt.HtmlRenderCacheStatistics")
+@Label("HTML Render Cache Statistics")
+@Description("Lookups, evictions and size of the cache of HTML formatted from markdown")
+@Category({ JfrEvents.CATEGORY, "Rendering" })
+@Period("60 s")
+public final class HtmlRenderCacheStatisticsEvent extends Event {
+
+    @Label("Hits")
+    public long hits;
+
+    @Label("Misses")
+    public long misses;
+
+    @Label("Hit Rate")
+    @Percentage
+    public double hitRate;
+
+    @Label("Evictions")
+    public long evictions;
+
+    @Label("Entries")
+    public int entries;
+
+    @Label("Size")
+    @DataAmount
+    public long bytes;
+}
@@ -0,0 +1,33 @@
+/*
+ * Copyright (c) 2024 Mariusz Bernacki <consulting@didalgo.com>
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.didalgo.intellij.chatgpt.diagnostic;
+
+/**
+ * Constants and helpers shared by the plugin's Java Flight Recorder events.
+ */
+public final class JfrEvents {
+
+    /** The JFR category of all plugin events. */
+    public static final String CATEGORY = "ChatGPT Plugin";
+
+    private static final String CODE_FENCE = "```";
+
+    private JfrEvents() { }
+
+    /**
+     * Counts fenced code blocks in the given markdown text, including an unclosed trailing block.
+     *
+     * @param markdown the markdown text
+     * @return the number of code blocks
+     */
+    public static int countCodeBlocks(CharSequence markdown) {
+        String text = markdown.toString();
+        int fences = 0;
+        for (int i = text.indexOf(CODE_FENCE); i >= 0; i = text.indexOf(CODE_FENCE, i + CODE_FENCE.length()))
+            if (i == 0 || text.charAt(i - 1) == '\n')
+                fences++;
+        return (fences + 1) / 2;
+    }
+}
@@ -0,0 +1,27 @@
+/*
+ * Copyright (c) 2024 Mariusz Bernacki <consulting@didalgo.com>
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.didalgo.intellij.chatgpt.diagnostic;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("com.didalgo.chatgpt.MarkdownFormat")
+@Label("Markdown Format")
+@Description("Formatting markdown text fragment to HTML")
+@Category({ JfrEvents.CATEGORY, "Rendering" })
+public final class MarkdownFormatEvent extends Event {
+
+    @Label("Markdown Characters")
+    public int markdownChars;
+
+    @Label("HTML Characters")
+    public int htmlChars;
+
+    @Label("Code Blocks")
+    public int codeBlocks;
+}
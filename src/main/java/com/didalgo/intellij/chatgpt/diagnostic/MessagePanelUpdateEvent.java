@@ -0,0 +1,34 @@
+/*
+ * Copyright (c) 2024 Mariusz Bernacki <consulting@didalgo.com>
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.didalgo.intellij.chatgpt.diagnostic;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("com.didalgo.chatgpt.MessagePanelUpdate")
+@Label("Message Panel Update")
+@Description("Updating the HTML content of a chat message panel")
+@Category({ JfrEvents.CATEGORY, "Rendering" })
+public final class MessagePanelUpdateEvent extends Event {
+
+    @Label("From User")
+    public boolean fromUser;
+
+    @Label("Markdown Characters")
+    public int markdownChars;
+
+    @Label("HTML Characters")
+    public int htmlChars;
+
+    @Label("Code Blocks")
+    public int codeBlocks;
+
+    @Label("Patched Blocks")
+    @Description("Number of top-level blocks replaced or appended in place, or -1 if the whole document was rebuilt")
+    public int patchedBlocks;
+}
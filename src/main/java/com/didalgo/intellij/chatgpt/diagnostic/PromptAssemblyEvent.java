@@ -0,0 +1,30 @@
+/*
+ * Copyright (c) 2024 Mariusz Bernacki <consulting@didalgo.com>
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.didalgo.intellij.chatgpt.diagnostic;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("com.didalgo.chatgpt.PromptAssembly")
+@Label("Prompt Assembly")
+@Description("Assembling the prompt with conversation history sent to the model")
+@Category({ JfrEvents.CATEGORY, "Chat" })
+public final class PromptAssemblyEvent extends Event {
+
+    @Label("Model")
+    public String model;
+
+    @Label("Messages")
+    public int messageCount;
+
+    @Label("Prompt Characters")
+    public int promptChars;
+
+    @Label("User Message Characters")
+    public int userMessageChars;
+}
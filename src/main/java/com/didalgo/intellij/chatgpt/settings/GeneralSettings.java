@@ -6,6 +6,7 @@ package com.didalgo.intellij.chatgpt.settings;
 
 import com.didalgo.intellij.chatgpt.chat.AssistantType;
 import com.didalgo.intellij.chatgpt.chat.AssistantConfiguration;
+import com.didalgo.intellij.chatgpt.chat.TruncationMode;
 import com.didalgo.intellij.chatgpt.chat.models.CustomModel;
 import com.didalgo.intellij.chatgpt.chat.models.ModelType;
 import com.didalgo.intellij.chatgpt.chat.models.StandardModel;
@@ -65,6 +66,12 @@ public class GeneralSettings implements PersistentStateComponent<GeneralSettings
     private volatile boolean enableAvatar = true;
     private volatile boolean enableLineWarp = true;
     private volatile Boolean enableInitialMessage = null;
+    private volatile int streamCoalescingWindowMillis = 0; // 0 - display frame period, negative - disabled
+    private volatile int streamCoalescingCharBudget = 1024;
+    private volatile boolean enableConversationCompaction = false;
+    private volatile AssistantType.System compactionAssistant = null; // null - the conversation's own assistant
+    private volatile int renderingMemoryBudgetMb = 64; // per tool window, non-positive - unlimited
+    private volatile TruncationMode truncationMode = TruncationMode.KEEP_TAIL; // of the oldest message still exceeding the input budget
 
     private volatile AssistantOptions gpt35Config;
     private volatile AssistantOptions gpt4Config;
@@ -130,6 +137,10 @@ public class GeneralSettings implements PersistentStateComponent<GeneralSettings
         this.customActionsPrefix = new CopyOnWriteArrayList<>(customActionsPrefix);
     }
 
+    public TruncationMode getTruncationMode() {
+        return defaultIfNull(truncationMode, TruncationMode.KEEP_TAIL);
+    }
+
     public Set<AssistantType.System> getEnabledInToolWindow() {
         enabledInToolWindow.removeIf(Objects::isNull);
         return enabledInToolWindow;
@@ -9,6 +9,7 @@ import com.intellij.openapi.application.ex.ApplicationManagerEx;
 import com.intellij.openapi.options.Configurable;
 import com.intellij.openapi.ui.MessageDialogBuilder;
 import com.intellij.openapi.util.text.StringUtil;
+import com.intellij.ui.SimpleListCellRenderer;
 import com.intellij.ui.TitledSeparator;
 import com.intellij.ui.components.JBTextField;
 import com.intellij.util.ui.JBUI;
@@ -21,6 +22,7 @@ import javax.swing.*;
 import java.awt.*;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Objects;
 
 public class GeneralSettingsPanel implements Configurable {
     private JPanel myMainPanel;
@@ -36,6 +38,8 @@ public class GeneralSettingsPanel implements Configurable {
     private JLabel readTimeoutHelpLabel;
     private JLabel contentOrderHelpLabel;
     private JPanel openaiAssistantTitledBorderBox;
+    private JCheckBox enableConversationCompactionCheckBox;
+    private JComboBox<AssistantType.System> compactionAssistantCombobox;
     private final String[] comboboxItemsString = {
             AssistantType.System.GPT_3_5.displayName(),
             AssistantType.System.ONLINE.displayName()};
@@ -52,6 +56,17 @@ public class GeneralSettingsPanel implements Configurable {
 
         firstCombobox.setModel(new DefaultComboBoxModel<>(comboboxItemsString));
         secondCombobox.setModel(new DefaultComboBoxModel<>(comboboxItemsString));
+
+        var compactionAssistants = new DefaultComboBoxModel<AssistantType.System>();
+        compactionAssistants.addElement(null);
+        for (AssistantType.System system : AssistantType.System.values())
+            if (system.getFamily() != null)
+                compactionAssistants.addElement(system);
+        compactionAssistantCombobox.setModel(compactionAssistants);
+        compactionAssistantCombobox.setRenderer(SimpleListCellRenderer.create(
+                ChatGptBundle.message("ui.setting.compaction.assistant.same"), AssistantType.System::displayName));
+        enableConversationCompactionCheckBox.addItemListener(e ->
+                compactionAssistantCombobox.setEnabled(enableConversationCompactionCheckBox.isSelected()));
     }
 
     @Override
@@ -63,6 +78,9 @@ public class GeneralSettingsPanel implements Configurable {
         secondCombobox.setSelectedItem(state.contentOrder.get(2));
         enableLineWarpCheckBox.setSelected(state.isEnableLineWarp());
         enableInitialMessageCheckBox.setSelected(Boolean.TRUE.equals(state.getEnableInitialMessage()));
+        enableConversationCompactionCheckBox.setSelected(state.isEnableConversationCompaction());
+        compactionAssistantCombobox.setSelectedItem(state.getCompactionAssistant());
+        compactionAssistantCombobox.setEnabled(state.isEnableConversationCompaction());
         initHelp();
     }
 
@@ -86,7 +104,9 @@ public class GeneralSettingsPanel implements Configurable {
                 || !StringUtil.equals(state.contentOrder.get(1), (String)firstCombobox.getSelectedItem())
                 || !StringUtil.equals(state.contentOrder.get(2), (String)secondCombobox.getSelectedItem())
                 || !state.isEnableLineWarp() == enableLineWarpCheckBox.isSelected()
-                || !Boolean.TRUE.equals(state.getEnableInitialMessage()) == enableInitialMessageCheckBox.isSelected();
+                || !Boolean.TRUE.equals(state.getEnableInitialMessage()) == enableInitialMessageCheckBox.isSelected()
+                || !state.isEnableConversationCompaction() == enableConversationCompactionCheckBox.isSelected()
+                || !Objects.equals(state.getCompactionAssistant(), compactionAssistantCombobox.getSelectedItem());
     }
 
     @Override
@@ -117,6 +137,8 @@ public class GeneralSettingsPanel implements Configurable {
         state.contentOrder.put(2, secondSelected);
         state.setEnableLineWarp(enableLineWarpCheckBox.isSelected());
         state.setEnableInitialMessage(enableInitialMessageCheckBox.isSelected());
+        state.setEnableConversationCompaction(enableConversationCompactionCheckBox.isSelected());
+        state.setCompactionAssistant((AssistantType.System) compactionAssistantCombobox.getSelectedItem());
 
         if (needRestart) {
             boolean yes = MessageDialogBuilder.yesNo("Content order changed!", "Changing " +
@@ -0,0 +1,88 @@
+/*
+ * Copyright (c) 2024 Mariusz Bernacki <consulting@didalgo.com>
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.didalgo.intellij.chatgpt.text;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Splits HTML rendered from markdown into its top-level blocks.
+ * <p>
+ * A block ends right after the closing tag of a top-level block element, together with the
+ * line breaks following it. Inline content at the top level stays in the block it follows.
+ * The content of {@code <code>} elements is skipped without looking for tags.
+ */
+public final class HtmlBlocks {
+
+    private static final Set<String> BLOCK_TAGS = Set.of(
+            "p", "div", "pre", "ul", "ol", "dl", "table", "blockquote", "hr",
+            "h1", "h2", "h3", "h4", "h5", "h6");
+
+    private static final Set<String> VOID_TAGS = Set.of(
+            "br", "hr", "img", "input", "meta", "link", "col", "area", "base", "wbr");
+
+    private HtmlBlocks() { }
+
+    /**
+     * Splits the given HTML into top-level blocks, which concatenated give back the original HTML.
+     *
+     * @param html the HTML to split
+     * @return the list of blocks
+     */
+    public static List<String> split(String html) {
+        var blocks = new ArrayList<String>();
+        int length = html.length();
+        int blockStart = 0, depth = 0, i = 0;
+
+        while (i < length) {
+            int tagStart = html.indexOf('<', i);
+            int tagEnd = (tagStart < 0) ? -1 : html.indexOf('>', tagStart);
+            if (tagEnd < 0)
+                break;
+
+            i = tagEnd + 1;
+            boolean closing = tagStart + 1 < tagEnd && html.charAt(tagStart + 1) == '/';
+            String name = tagName(html, closing ? tagStart + 2 : tagStart + 1, tagEnd);
+            if (name.isEmpty())
+                continue;
+
+            boolean blockEnd;
+            if (closing) {
+                depth = Math.max(0, depth - 1);
+                blockEnd = (depth == 0);
+            } else if (VOID_TAGS.contains(name) || html.charAt(tagEnd - 1) == '/') {
+                blockEnd = (depth == 0);
+            } else {
+                depth++;
+                blockEnd = false;
+                if (name.equals("code")) {
+                    int codeEnd = html.indexOf("</code>", i);
+                    if (codeEnd < 0)
+                        break;
+                    i = codeEnd;
+                }
+            }
+
+            if (blockEnd && BLOCK_TAGS.contains(name)) {
+                while (i < length && (html.charAt(i) == '\n' || html.charAt(i) == '\r'))
+                    i++;
+                blocks.add(html.substring(blockStart, i));
+                blockStart = i;
+            }
+        }
+        if (blockStart < length)
+            blocks.add(html.substring(blockStart));
+
+        return blocks;
+    }
+
+    private static String tagName(String html, int start, int end) {
+        int i = start;
+        while (i < end && Character.isLetterOrDigit(html.charAt(i)))
+            i++;
+        return html.substring(start, i).toLowerCase();
+    }
+}
@@ -0,0 +1,176 @@
+/*
+ * Copyright (c) 2024 Mariusz Bernacki <consulting@didalgo.com>
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.didalgo.intellij.chatgpt.text;
+
+import com.didalgo.intellij.chatgpt.diagnostic.HtmlRenderCacheStatisticsEvent;
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.components.Service;
+import jdk.jfr.FlightRecorder;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Caches HTML formatted from markdown, shared by all text fragments in the application.
+ * <p>
+ * Entries are keyed by the SHA-256 hash of the markdown together with the configuration version
+ * of the formatter, so the same content formatted again, be it in another panel, after the
+ * conversation is reloaded, or after its panel is rebuilt, is looked up instead. The cache is
+ * bounded by the total size of the cached HTML, evicting least recently used entries first.
+ * The {@linkplain #getStatistics() statistics} of the application cache are recorded periodically
+ * as {@link HtmlRenderCacheStatisticsEvent}s while a flight recording is running.
+ */
+@Service
+public final class HtmlRenderCache implements Disposable {
+
+    public static final long DEFAULT_MAX_BYTES = 16L * 1024 * 1024;
+
+    /** Rough size of a cache entry excluding the HTML string content. */
+    private static final int ENTRY_OVERHEAD_BYTES = 96;
+
+    private final TextFragmentFormatter formatter;
+    private final int formatterVersion;
+    private final long maxBytes;
+    private final Map<Key, String> entries = new LinkedHashMap<>(64, 0.75f, true);
+    private long bytes;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private Runnable statisticsRecorder;
+
+    /**
+     * The cache key.
+     *
+     * @param high the high-order bits of the content hash
+     * @param low the next bits of the content hash
+     * @param formatterVersion the formatter configuration version
+     */
+    record Key(long high, long low, int formatterVersion) {
+
+        static Key of(String markdown, int formatterVersion) {
+            try {
+                var digest = MessageDigest.getInstance("SHA-256").digest(markdown.getBytes(StandardCharsets.UTF_8));
+                var buffer = ByteBuffer.wrap(digest);
+                return new Key(buffer.getLong(), buffer.getLong(), formatterVersion);
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException("SHA-256 not supported", e);
+            }
+        }
+    }
+
+    /**
+     * The cache statistics.
+     *
+     * @param hits the number of lookups served from the cache
+     * @param misses the number of lookups which needed formatting
+     * @param evictions the number of entries evicted to stay within the size limit
+     * @param entries the current number of entries
+     * @param bytes the current estimated size of the entries
+     */
+    public record Statistics(long hits, long misses, long evictions, int entries, long bytes) {
+
+        public double hitRate() {
+            long lookups = hits + misses;
+            return (lookups == 0) ? 0.0 : (double) hits / lookups;
+        }
+    }
+
+    public HtmlRenderCache() {
+        this(TextFragmentToHtmlFormatter.getDefault(), TextFragmentToHtmlFormatter.CONFIGURATION_VERSION, DEFAULT_MAX_BYTES);
+        statisticsRecorder = this::recordStatistics;
+        FlightRecorder.addPeriodicEvent(HtmlRenderCacheStatisticsEvent.class, statisticsRecorder);
+    }
+
+    public HtmlRenderCache(TextFragmentFormatter formatter, int formatterVersion, long maxBytes) {
+        this.formatter = requireNonNull(formatter, "formatter");
+        this.formatterVersion = formatterVersion;
+        this.maxBytes = maxBytes;
+    }
+
+    public static HtmlRenderCache getInstance() {
+        return ApplicationManager.getApplication().getService(HtmlRenderCache.class);
+    }
+
+    /**
+     * Returns the HTML of the given fragment, formatting it only if not cached.
+     *
+     * @param fragment the text fragment
+     * @return the HTML
+     */
+    public String toHtml(TextFragment fragment) {
+        var key = Key.of(fragment.markdown(), formatterVersion);
+        synchronized (this) {
+            String html = entries.get(key);
+            if (html != null) {
+                hits.increment();
+                return html;
+            }
+        }
+        misses.increment();
+
+        String html = formatter.format(fragment);
+        put(key, html);
+        return html;
+    }
+
+    private synchronized void put(Key key, String html) {
+        long size = sizeOf(html);
+        if (size > maxBytes)
+            return;
+
+        String previous = entries.put(key, html);
+        if (previous != null)
+            bytes -= sizeOf(previous);
+        bytes += size;
+
+        for (Iterator<String> iter = entries.values().iterator(); bytes > maxBytes && iter.hasNext(); ) {
+            bytes -= sizeOf(iter.next());
+            iter.remove();
+            evictions.increment();
+        }
+    }
+
+    private static long sizeOf(String html) {
+        return ENTRY_OVERHEAD_BYTES + 2L * html.length();
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        bytes = 0;
+    }
+
+    public synchronized Statistics getStatistics() {
+        return new Statistics(hits.sum(), misses.sum(), evictions.sum(), entries.size(), bytes);
+    }
+
+    private void recordStatistics() {
+        var jfrEvent = new HtmlRenderCacheStatisticsEvent();
+        if (jfrEvent.shouldCommit()) {
+            var statistics = getStatistics();
+            jfrEvent.hits = statistics.hits();
+            jfrEvent.misses = statistics.misses();
+            jfrEvent.hitRate = statistics.hitRate();
+            jfrEvent.evictions = statistics.evictions();
+            jfrEvent.entries = statistics.entries();
+            jfrEvent.bytes = statistics.bytes();
+            jfrEvent.commit();
+        }
+    }
+
+    @Override
+    public void dispose() {
+        if (statisticsRecorder != null)
+            FlightRecorder.removePeriodicEvent(statisticsRecorder);
+    }
+}
@@ -0,0 +1,180 @@
+/*
+ * Copyright (c) 2024 Mariusz Bernacki <consulting@didalgo.com>
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.didalgo.intellij.chatgpt.text;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Formats markdown content which grows by appending, such as a streamed reply.
+ * <p>
+ * The content is split into top-level blocks as it arrives. Once a block is followed by
+ * the start of another top-level block, it can no longer change, so it is frozen: rendered
+ * to HTML exactly once and kept. Each call re-renders only the trailing open block, making
+ * the total formatting cost of a streamed reply linear in its length instead of quadratic.
+ * <p>
+ * Block boundaries are detected conservatively. A boundary is a blank line (or the end of
+ * a fenced code block) followed by a non-indented line which cannot continue a list, or
+ * the opening of a non-indented code fence. Anything else is left in the open block, which
+ * at worst costs a re-render.
+ * <p>
+ * Blocks are rendered independently, so a reference link in a frozen block stays unresolved
+ * if its link reference definition arrives in a later block. The HTML is meant for showing
+ * the content while it streams. Completed content should be formatted as a whole.
+ * <p>
+ * If the content passed to {@link #format(String)} no longer starts with the content already
+ * processed, the formatter starts over.
+ */
+public final class IncrementalMarkdownFormatter {
+
+    private final TextFragmentFormatter blockFormatter;
+    private final StringBuilder frozenHtml = new StringBuilder();
+    private String content = "";
+    private int frozenEnd;
+    private int scannedEnd;
+    private int pendingBoundary = -1;
+    private char fenceChar;
+    private int fenceLength;
+
+    public IncrementalMarkdownFormatter() {
+        this(TextFragmentToHtmlFormatter.getDefault());
+    }
+
+    public IncrementalMarkdownFormatter(TextFragmentFormatter blockFormatter) {
+        this.blockFormatter = requireNonNull(blockFormatter, "blockFormatter");
+    }
+
+    /**
+     * Formats the given markdown, which is expected to extend the markdown of the previous call.
+     *
+     * @param markdown the whole content received so far
+     * @return the HTML of the whole content
+     */
+    public synchronized String format(String markdown) {
+        if (!markdown.regionMatches(0, content, 0, scannedEnd))
+            reset();
+        content = markdown;
+
+        int lineStart = scannedEnd, lineEnd;
+        while ((lineEnd = markdown.indexOf('\n', lineStart)) >= 0) {
+            scanLine(markdown, lineStart, lineEnd);
+            lineStart = lineEnd + 1;
+        }
+        scannedEnd = lineStart;
+
+        String tail = markdown.substring(frozenEnd);
+        if (tail.isBlank())
+            return frozenHtml.toString();
+        return frozenHtml + blockFormatter.format(TextFragment.of(tail));
+    }
+
+    /**
+     * Returns the length of the content prefix already rendered and frozen.
+     *
+     * @return the frozen content length
+     */
+    public synchronized int getFrozenLength() {
+        return frozenEnd;
+    }
+
+    public synchronized void reset() {
+        frozenHtml.setLength(0);
+        content = "";
+        frozenEnd = 0;
+        scannedEnd = 0;
+        pendingBoundary = -1;
+        fenceLength = 0;
+    }
+
+    private void scanLine(String text, int start, int end) {
+        if (fenceLength > 0) {
+            if (isFenceClose(text, start, end)) {
+                fenceLength = 0;
+                pendingBoundary = end + 1;
+            }
+            return;
+        }
+        if (isBlank(text, start, end)) {
+            if (pendingBoundary < 0)
+                pendingBoundary = end + 1;
+            return;
+        }
+
+        int fence = fenceLength(text, start, end);
+        if (fence > 0) {
+            freeze(text, start);
+            fenceChar = text.charAt(start);
+            fenceLength = fence;
+        } else if (pendingBoundary >= 0 && startsTopLevelBlock(text, start, end)) {
+            freeze(text, pendingBoundary);
+        }
+        pendingBoundary = -1;
+    }
+
+    private void freeze(String text, int end) {
+        if (end <= frozenEnd)
+            return;
+
+        String block = text.substring(frozenEnd, end);
+        if (!block.isBlank())
+            frozenHtml.append(blockFormatter.format(TextFragment.of(block)));
+        frozenEnd = end;
+    }
+
+    private static boolean isBlank(String text, int start, int end) {
+        for (int i = start; i < end; i++)
+            if (!Character.isWhitespace(text.charAt(i)))
+                return false;
+        return true;
+    }
+
+    private static boolean startsTopLevelBlock(String text, int start, int end) {
+        char first = text.charAt(start);
+        if (Character.isWhitespace(first))
+            return false;
+
+        char second = (start + 1 < end) ? text.charAt(start + 1) : ' ';
+        if ((first == '-' || first == '*' || first == '+') && (second == ' ' || second == '\t'))
+            return false;
+
+        int i = start;
+        while (i < end && Character.isDigit(text.charAt(i)))
+            i++;
+        if (i > start && i < end && (text.charAt(i) == '.' || text.charAt(i) == ')'))
+            return i + 1 < end && text.charAt(i + 1) != ' ' && text.charAt(i + 1) != '\t';
+
+        return true;
+    }
+
+    /**
+     * Returns the length of the code fence opening the given line at column 0, or {@code 0} if none.
+     */
+    private static int fenceLength(String text, int start, int end) {
+        if (start == end)
+            return 0;
+
+        char c = text.charAt(start);
+        if (c != '`' && c != '~')
+            return 0;
+
+        int i = start;
+        while (i < end && text.charAt(i) == c)
+            i++;
+        int length = i - start;
+        if (length < 3 || (c == '`' && text.indexOf('`', i) >= 0 && text.indexOf('`', i) < end))
+            return 0;
+        return length;
+    }
+
+    private boolean isFenceClose(String text, int start, int end) {
+        int i = start;
+        while (i < end && i - start < 3 && text.charAt(i) == ' ')
+            i++;
+
+        int fenceStart = i;
+        while (i < end && text.charAt(i) == fenceChar)
+            i++;
+        return i - fenceStart >= fenceLength && isBlank(text, i, end);
+    }
+}
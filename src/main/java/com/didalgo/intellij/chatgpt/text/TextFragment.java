@@ -68,7 +68,7 @@ public interface TextFragment extends CharSequence, TextContent {
     }
 
     default String toHtml() {
-        return TextFragmentToHtmlFormatter.getDefault().format(this);
+        return HtmlRenderCache.getInstance().toHtml(this);
     }
 
     @Override
@@ -4,16 +4,31 @@
  */
 package com.didalgo.intellij.chatgpt.text;
 
+import com.didalgo.intellij.chatgpt.diagnostic.JfrEvents;
+import com.didalgo.intellij.chatgpt.diagnostic.MarkdownFormatEvent;
 import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.components.Service;
+import com.vladsch.flexmark.ast.HtmlEntity;
 import com.vladsch.flexmark.ext.tables.TablesExtension;
 import com.vladsch.flexmark.html.HtmlRenderer;
+import com.vladsch.flexmark.html.renderer.NodeRenderer;
+import com.vladsch.flexmark.html.renderer.NodeRenderingHandler;
 import com.vladsch.flexmark.parser.Parser;
 import com.vladsch.flexmark.util.ast.Node;
-import com.vladsch.flexmark.util.sequence.Escaping;
+import com.vladsch.flexmark.util.data.DataHolder;
+import com.vladsch.flexmark.util.data.MutableDataSet;
 
 import java.util.List;
+import java.util.Set;
 
+/**
+ * Formats markdown to HTML in a single parse and render pass.
+ * <p>
+ * Markdown is never trusted to contain HTML: HTML blocks aren't recognized at all, so they're
+ * parsed as paragraphs, and inline HTML and entity references are rendered as escaped text.
+ * Code is escaped once, by the renderer itself, so no pre-escaping of the markdown or
+ * post-processing of the HTML is needed.
+ */
 @Service
 public final class TextFragmentToHtmlFormatter implements TextFragmentFormatter {
 
@@ -21,15 +36,26 @@ public final class TextFragmentToHtmlFormatter implements TextFragmentFormatter
         return ApplicationManager.getApplication().getService(TextFragmentToHtmlFormatter.class);
     }
 
+    /**
+     * The version of the formatting configuration, to be increased whenever a change to the options
+     * or renderers below makes the HTML differ for the same markdown.
+     */
+    public static final int CONFIGURATION_VERSION = 2;
+
+    private static final DataHolder OPTIONS = new MutableDataSet()
+            .set(Parser.EXTENSIONS, List.of(TablesExtension.create()))
+            .set(Parser.HTML_BLOCK_PARSER, false)
+            .set(HtmlRenderer.ESCAPE_HTML, true)
+            .set(HtmlRenderer.SOFT_BREAK, "<br>")
+            .toImmutable();
+
     private Parser markdownParser;
     private HtmlRenderer htmlRenderer;
 
     public Parser getMarkdownParser() {
         Parser parser = markdownParser;
         if (parser == null)
-            parser = markdownParser = Parser.builder()
-                    .extensions(List.of(TablesExtension.create()))
-                    .build();
+            parser = markdownParser = Parser.builder(OPTIONS).build();
 
         return parser;
     }
@@ -37,9 +63,8 @@ public final class TextFragmentToHtmlFormatter implements TextFragmentFormatter
     public HtmlRenderer getHtmlRenderer() {
         HtmlRenderer renderer = htmlRenderer;
         if (renderer == null)
-            renderer = htmlRenderer = HtmlRenderer.builder()
-                    .softBreak("<br>")
-                    .extensions(List.of(TablesExtension.create()))
+            renderer = htmlRenderer = HtmlRenderer.builder(OPTIONS)
+                    .nodeRendererFactory(__ -> new LiteralEntityRenderer())
                     .build();
 
         return renderer;
@@ -47,35 +72,29 @@ public final class TextFragmentToHtmlFormatter implements TextFragmentFormatter
 
     @Override
     public String format(TextFragment markdown) {
-        String escaped = Escaping.escapeHtml(markdown.markdown(), false);
-        Node document = getMarkdownParser().parse(escaped);
+        var jfrEvent = new MarkdownFormatEvent();
+        jfrEvent.begin();
+
+        Node document = getMarkdownParser().parse(markdown.markdown());
         String html = getHtmlRenderer().render(document);
-        return unescapeCode(html);
-    }
 
-    private static String unescapeCode(String html) {
-        StringBuilder result = new StringBuilder();
-        int position = 0;
-        int startCode, endCode;
-
-        while ((startCode = html.indexOf("<code", position)) != -1) {
-            startCode = html.indexOf(">", startCode);
-            if (startCode == -1) {
-                break;
-            }
-
-            endCode = html.indexOf("</code>", startCode);
-            if (endCode == -1) {
-                break;
-            }
-
-            result.append(html, position, startCode + 1);
-            String codeFragment = html.substring(startCode + 1, endCode);
-            result.append(Escaping.unescapeHtml(codeFragment));
-            position = endCode;
+        if (jfrEvent.shouldCommit()) {
+            jfrEvent.markdownChars = markdown.length();
+            jfrEvent.htmlChars = html.length();
+            jfrEvent.codeBlocks = JfrEvents.countCodeBlocks(markdown.markdown());
+            jfrEvent.commit();
         }
+        return html;
+    }
 
-        result.append(html.substring(position));
-        return result.toString();
+    /**
+     * Renders entity references as they were written, like any other HTML in the markdown.
+     */
+    private static final class LiteralEntityRenderer implements NodeRenderer {
+
+        @Override
+        public Set<NodeRenderingHandler<?>> getNodeRenderingHandlers() {
+            return Set.of(new NodeRenderingHandler<>(HtmlEntity.class, (node, context, html) -> html.text(node.getChars())));
+        }
     }
 }
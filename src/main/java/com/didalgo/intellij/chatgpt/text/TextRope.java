@@ -0,0 +1,133 @@
+/*
+ * Copyright (c) 2024 Mariusz Bernacki <consulting@didalgo.com>
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.didalgo.intellij.chatgpt.text;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * An append-only sequence of text chunks.
+ * <p>
+ * Appending never copies the previously accumulated text, and {@link #snapshot() snapshots}
+ * are immutable views sharing the chunks with the rope. The full text is materialized only
+ * when requested, reusing the most recently materialized string as a prefix.
+ */
+public final class TextRope {
+
+    private final List<String> chunks = new ArrayList<>();
+    private int[] chunkEnds = new int[16];
+    private int length;
+    private Materialized materialized = new Materialized("", 0);
+
+    private record Materialized(String text, int chunkCount) { }
+
+    /**
+     * Appends the given text to the end of this rope.
+     *
+     * @param text the text to append
+     * @return the snapshot of the rope content after the append
+     */
+    public synchronized View append(CharSequence text) {
+        requireNonNull(text, "text");
+        if (!text.isEmpty()) {
+            if (chunks.size() == chunkEnds.length)
+                chunkEnds = Arrays.copyOf(chunkEnds, chunkEnds.length * 2);
+
+            chunks.add(text.toString());
+            length += text.length();
+            chunkEnds[chunks.size() - 1] = length;
+        }
+        return snapshot();
+    }
+
+    /**
+     * Returns an immutable view of the current rope content.
+     *
+     * @return the current snapshot
+     */
+    public synchronized View snapshot() {
+        return new View(chunks.size(), length);
+    }
+
+    public synchronized int length() {
+        return length;
+    }
+
+    @Override
+    public String toString() {
+        return snapshot().toString();
+    }
+
+    private synchronized String materialize(int chunkCount, int length) {
+        var prefix = materialized;
+        if (prefix.chunkCount() == chunkCount)
+            return prefix.text();
+
+        var buf = new StringBuilder(length);
+        int from = 0;
+        if (prefix.chunkCount() < chunkCount) {
+            buf.append(prefix.text());
+            from = prefix.chunkCount();
+        }
+        for (int i = from; i < chunkCount; i++)
+            buf.append(chunks.get(i));
+
+        String text = buf.toString();
+        if (chunkCount > prefix.chunkCount())
+            materialized = new Materialized(text, chunkCount);
+        return text;
+    }
+
+    private synchronized char charAt(int chunkCount, int index) {
+        int chunk = Arrays.binarySearch(chunkEnds, 0, chunkCount, index);
+        chunk = (chunk < 0) ? -chunk - 1 : chunk + 1;
+        int chunkStart = (chunk == 0) ? 0 : chunkEnds[chunk - 1];
+        return chunks.get(chunk).charAt(index - chunkStart);
+    }
+
+    /**
+     * An immutable, lazily materialized view of the rope content at some point in time.
+     */
+    public final class View implements CharSequence {
+        private final int chunkCount;
+        private final int length;
+        private volatile String text;
+
+        private View(int chunkCount, int length) {
+            this.chunkCount = chunkCount;
+            this.length = length;
+        }
+
+        @Override
+        public int length() {
+            return length;
+        }
+
+        @Override
+        public char charAt(int index) {
+            if (index < 0 || index >= length)
+                throw new IndexOutOfBoundsException("index " + index + ", length " + length);
+
+            String text = this.text;
+            return (text != null) ? text.charAt(index) : TextRope.this.charAt(chunkCount, index);
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return toString().subSequence(start, end);
+        }
+
+        @Override
+        public String toString() {
+            String text = this.text;
+            if (text == null)
+                this.text = text = materialize(chunkCount, length);
+            return text;
+        }
+    }
+}
@@ -0,0 +1,195 @@
+/*
+ * Copyright (c) 2024 Mariusz Bernacki <consulting@didalgo.com>
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.didalgo.intellij.chatgpt.text;
+
+import com.vladsch.flexmark.ast.FencedCodeBlock;
+import com.vladsch.flexmark.ast.Paragraph;
+import com.vladsch.flexmark.parser.Parser;
+import com.vladsch.flexmark.util.ast.Node;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Formats user messages to HTML.
+ * <p>
+ * User messages are displayed as they were typed, except for code snippets attached to the
+ * prompt. A snippet is a {@code [title]} line followed by one or more fenced code blocks, and
+ * is wrapped in a collapsible {@code <div>}. Snippets are located in the markdown syntax tree,
+ * and the message text is escaped in a single pass.
+ */
+public final class UserMessageHtmlFormatter implements TextFragmentFormatter {
+
+    private static final Pattern SNIPPET_TITLE_PATTERN = Pattern.compile("\\[(.*)]");
+    private static final Pattern LAST_PATH_PATTERN = Pattern.compile(".*[\\\\/](.*)$");
+
+    private final Parser markdownParser;
+
+    public UserMessageHtmlFormatter() {
+        this(TextFragmentToHtmlFormatter.getDefault().getMarkdownParser());
+    }
+
+    public UserMessageHtmlFormatter(Parser markdownParser) {
+        this.markdownParser = requireNonNull(markdownParser, "markdownParser");
+    }
+
+    /**
+     * A code snippet attached to a user message.
+     *
+     * @param start the offset of the title line in the message
+     * @param end the end offset of the closing fence of the last code block
+     * @param title the snippet title, as typed
+     */
+    public record Snippet(int start, int end, String title) {
+
+        public String text(String markdown) {
+            return markdown.substring(start, end);
+        }
+    }
+
+    @Override
+    public String format(TextFragment text) {
+        String markdown = text.markdown();
+        var buf = new StringBuilder(markdown.length() + markdown.length() / 8);
+        int position = 0;
+
+        for (Snippet snippet : findSnippets(markdown)) {
+            appendDisplayText(markdown, position, snippet.start(), buf);
+            buf.append("<div class=\"collapsible\" ai-code-snippet title=\"")
+                    .append(escapeAttribute(shortenTitle(snippet.title())))
+                    .append("\">\n");
+            appendDisplayText(markdown, snippet.start(), snippet.end(), buf);
+            buf.append("\n</div>");
+            position = skipBlankLines(markdown, snippet.end());
+        }
+        appendDisplayText(markdown, position, markdown.length(), buf);
+        return buf.toString();
+    }
+
+    /**
+     * Finds the code snippets of the given message, in the order of the collapsible blocks
+     * they are formatted to.
+     *
+     * @param markdown the message text
+     * @return the snippets
+     */
+    public List<Snippet> findSnippets(String markdown) {
+        var snippets = new ArrayList<Snippet>();
+        int position = 0;
+
+        for (Node node = markdownParser.parse(markdown).getFirstChild(); node != null; node = node.getNext()) {
+            if (!(node instanceof Paragraph paragraph) || !(node.getNext() instanceof FencedCodeBlock))
+                continue;
+
+            int titleStart = lastLineStart(markdown, paragraph.getStartOffset(), paragraph.getEndOffset());
+            Matcher title = SNIPPET_TITLE_PATTERN.matcher(markdown.substring(titleStart, paragraph.getEndOffset()).strip());
+            if (titleStart < position || !title.matches())
+                continue;
+
+            int snippetEnd = -1;
+            while (node.getNext() instanceof FencedCodeBlock codeBlock && isClosedBacktickFence(codeBlock)) {
+                snippetEnd = codeBlock.getClosingMarker().getEndOffset();
+                node = codeBlock;
+            }
+            if (snippetEnd < 0)
+                continue;
+
+            snippets.add(new Snippet(titleStart, snippetEnd, title.group(1)));
+            position = skipBlankLines(markdown, snippetEnd);
+        }
+        return snippets;
+    }
+
+    private static boolean isClosedBacktickFence(FencedCodeBlock codeBlock) {
+        return codeBlock.getOpeningMarker().startsWith("`") && codeBlock.getClosingMarker().isNotEmpty();
+    }
+
+    private static int lastLineStart(String text, int start, int end) {
+        while (end > start && Character.isWhitespace(text.charAt(end - 1)))
+            end--;
+        return Math.max(start, text.lastIndexOf('\n', end - 1) + 1);
+    }
+
+    private static int skipBlankLines(String text, int position) {
+        int lineStart = position;
+        for (int i = position; i < text.length() && Character.isWhitespace(text.charAt(i)); i++)
+            if (text.charAt(i) == '\n')
+                lineStart = i + 1;
+        return lineStart;
+    }
+
+    private static String shortenTitle(String title) {
+        String[] words = title.split("\\s+");
+        String shortenedTitle = (words.length > 2 ? words[0] + " " + words[1] + " ... " : title);
+
+        Matcher pathMatcher = LAST_PATH_PATTERN.matcher(title);
+        if (pathMatcher.matches())
+            shortenedTitle += pathMatcher.group(1);
+
+        return shortenedTitle;
+    }
+
+    private static String escapeAttribute(String text) {
+        return text.replace("&", "&amp;").replace("\"", "&quot;").replace("<", "&lt;").replace(">", "&gt;");
+    }
+
+    /**
+     * Converts the given plain text to HTML, keeping its line breaks and indentation.
+     *
+     * @param text the text
+     * @return the HTML
+     */
+    public static String toDisplayText(String text) {
+        var buf = new StringBuilder(text.length());
+        appendDisplayText(text, 0, text.length(), buf);
+        return buf.toString();
+    }
+
+    private static void appendDisplayText(String text, int start, int end, StringBuilder buf) {
+        boolean onLineStart = true;
+        for (int i = start - 1; i >= 0 && text.charAt(i) != '\n'; i--) {
+            if (!Character.isWhitespace(text.charAt(i))) {
+                onLineStart = false;
+                break;
+            }
+        }
+
+        char ch;
+        for (int i = start; i < end; i++) {
+            switch (ch = text.charAt(i)) {
+                case '\r' -> { }
+                case '\n' -> {
+                    onLineStart = true;
+                    buf.append("<br>");
+                }
+                case '<' -> {
+                    onLineStart = false;
+                    buf.append("&lt;");
+                }
+                case '>' -> {
+                    onLineStart = false;
+                    buf.append("&gt;");
+                }
+                case '&' -> {
+                    onLineStart = false;
+                    buf.append("&amp;");
+                }
+                default -> {
+                    if (onLineStart && Character.isWhitespace(ch)) {
+                        buf.append("&nbsp;");
+                        if (ch == '\t') buf.append("&nbsp;&nbsp;&nbsp;");
+                    } else {
+                        onLineStart = false;
+                        buf.append(ch);
+                    }
+                }
+            }
+        }
+    }
+}
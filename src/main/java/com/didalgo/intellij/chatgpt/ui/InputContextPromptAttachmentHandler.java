@@ -6,6 +6,7 @@ package com.didalgo.intellij.chatgpt.ui;
 
 import com.didalgo.intellij.chatgpt.ChatGptBundle;
 import com.didalgo.intellij.chatgpt.chat.InputContext;
+import com.didalgo.intellij.chatgpt.chat.messages.ImageSizeLimit;
 import com.didalgo.intellij.chatgpt.chat.messages.MediaSupport;
 import com.didalgo.intellij.chatgpt.ui.prompt.context.MediaPromptAttachment;
 import com.intellij.icons.AllIcons;
@@ -18,13 +19,20 @@ import java.awt.image.RenderedImage;
 import java.io.IOException;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.function.Supplier;
 
 public class InputContextPromptAttachmentHandler implements PromptAttachmentHandler {
 
     private final InputContext context;
+    private final Supplier<ImageSizeLimit> imageSizeLimit;
 
     public InputContextPromptAttachmentHandler(InputContext context) {
+        this(context, () -> ImageSizeLimit.NONE);
+    }
+
+    public InputContextPromptAttachmentHandler(InputContext context, Supplier<ImageSizeLimit> imageSizeLimit) {
         this.context = context;
+        this.imageSizeLimit = imageSizeLimit;
     }
 
 
@@ -41,7 +49,7 @@ public class InputContextPromptAttachmentHandler implements PromptAttachmentHand
 
     protected boolean handleImageContent(RenderedImage image) {
         var icon = AllIcons.Actions.AddFile;
-        var media = MediaSupport.fromRenderedImageAsCompressedMedia(image);
+        var media = MediaSupport.fromRenderedImageAsCompressedMedia(image, imageSizeLimit.get());
         var attachment = new MediaPromptAttachment(icon, createPastedImageName(media), media);
         context.addAttachment(attachment);
         return true;
@@ -10,11 +10,11 @@ import com.didalgo.intellij.chatgpt.chat.ChatMessageListener;
 import com.didalgo.intellij.chatgpt.chat.ConversationContext;
 import com.didalgo.intellij.chatgpt.chat.ConversationHandler;
 import com.didalgo.intellij.chatgpt.core.ChatCompletionRequestProvider;
+import com.didalgo.intellij.chatgpt.core.PluginExecutors;
 import com.didalgo.intellij.chatgpt.ui.tool.window.ChatPanel;
 import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.diagnostic.Logger;
 import reactor.core.Disposable;
-import reactor.core.scheduler.Schedulers;
 
 public class MainConversationHandler implements ConversationHandler {
 
@@ -35,7 +35,7 @@ public class MainConversationHandler implements ConversationHandler {
 
         return application.getService(ChatHandler.class)
                 .handle(ctx, event.initiating(chatCompletionRequest), listener)
-                .subscribeOn(Schedulers.boundedElastic())
+                .subscribeOn(PluginExecutors.getScheduler())
                 .subscribe();
     }
 }
@@ -4,6 +4,8 @@
  */
 package com.didalgo.intellij.chatgpt.ui;
 
+import org.jetbrains.annotations.Nullable;
+
 import javax.swing.text.EditorKit;
 
 public interface MessageRenderer {
@@ -13,4 +15,14 @@ public interface MessageRenderer {
     int getWidth();
 
     Object getClientProperty(Object key);
+
+    /**
+     * Returns the HTML of the content of a collapsible block, built from the source of the message.
+     *
+     * @param ordinal the position of the collapsible block among all collapsible blocks of the message
+     * @return the HTML, or {@code null} if not available
+     */
+    default @Nullable String getCollapsibleContentHtml(int ordinal) {
+        return null;
+    }
 }
@@ -47,6 +47,15 @@ public abstract class AbstractEditorAction extends AnAction {
 
     protected abstract void actionPerformed(Project project, Editor editor, String selectedText);
 
+    /**
+     * Returns the action type of prompts sent by this action, which the reply lengths are tracked by.
+     *
+     * @return the action type
+     */
+    protected String getActionType() {
+        return getClass().getSimpleName();
+    }
+
     @Override
     public @NotNull ActionUpdateThread getActionUpdateThread() {
         return ActionUpdateThread.EDT;
@@ -67,7 +67,7 @@ public class FixCompilationErrorsAction extends AbstractEditorAction {
 
         ChatLink.forProject(project)
                 .pushMessage(getPrompt(severity, highlights.size()),
-                        List.of(CodeFragmentFactory.create(editor, buf.toString())));
+                        List.of(CodeFragmentFactory.create(editor, buf.toString())), getActionType());
     }
 
     private void addHighlightTagsToText(StringBuilder text, List<HighlightInfo> highlights) {
@@ -31,6 +31,6 @@ public class GenericEditorAction extends AbstractEditorAction {
 
     @Override
     protected void actionPerformed(Project project, Editor editor, String selectedText) {
-        ChatLink.forProject(project).pushMessage(prompt, List.of(CodeFragmentFactory.create(editor, selectedText)));
+        ChatLink.forProject(project).pushMessage(prompt, List.of(CodeFragmentFactory.create(editor, selectedText)), getActionType());
     }
 }
@@ -5,9 +5,10 @@
 package com.didalgo.intellij.chatgpt.ui.prompt.context;
 
 import com.didalgo.intellij.chatgpt.chat.PromptAttachment;
-import com.intellij.openapi.application.ApplicationManager;
+import com.didalgo.intellij.chatgpt.chat.TokenEstimationService;
 
 import javax.swing.*;
+import java.util.concurrent.CompletableFuture;
 import java.util.function.ToIntFunction;
 
 public abstract class AbstractPromptAttachment implements PromptAttachment {
@@ -15,6 +16,7 @@ public abstract class AbstractPromptAttachment implements PromptAttachment {
     private final String name;
     private boolean pinned;
     private volatile int tokenCount = -1;
+    private volatile CompletableFuture<?> tokenCountEstimation;
 
 
     protected AbstractPromptAttachment(Icon icon, String name) {
@@ -45,12 +47,31 @@ public abstract class AbstractPromptAttachment implements PromptAttachment {
     @Override
     public int getEstimatedTokenCount(ToIntFunction<? super PromptAttachment> estimator) {
         var tokenCount = this.tokenCount;
-        if (tokenCount < 0 && estimator != null) {
-            ApplicationManager.getApplication().executeOnPooledThread(() -> setTokenCount(estimateTokenCount(estimator)));
+        if (tokenCount < 0 && estimator != null && tokenCountEstimation == null) {
+            // renderers ask on every repaint, so the estimation is requested only once
+            synchronized (this) {
+                if (tokenCountEstimation == null) {
+                    var estimation = TokenEstimationService.getInstance().submit(() -> {
+                        setTokenCount(estimateTokenCount(estimator));
+                        return null;
+                    });
+                    tokenCountEstimation = estimation;
+                    // a failed estimation is requested again on the next call
+                    estimation.whenComplete((__, error) -> {
+                        if (error != null)
+                            resetTokenCountEstimation(estimation);
+                    });
+                }
+            }
         }
         return tokenCount;
     }
 
+    private synchronized void resetTokenCountEstimation(CompletableFuture<?> estimation) {
+        if (tokenCountEstimation == estimation)
+            tokenCountEstimation = null;
+    }
+
     protected int estimateTokenCount(ToIntFunction<? super PromptAttachment> estimator) {
         return -1;
     }
@@ -0,0 +1,227 @@
+/*
+ * Copyright (c) 2024 Mariusz Bernacki <consulting@didalgo.com>
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.didalgo.intellij.chatgpt.ui.statusbar;
+
+import com.didalgo.gpt3.GPT3Tokenizer;
+import com.didalgo.intellij.chatgpt.ChatGptBundle;
+import com.didalgo.intellij.chatgpt.chat.ChatLink;
+import com.didalgo.intellij.chatgpt.chat.LineTokenCounter;
+import com.didalgo.intellij.chatgpt.chat.TokenEstimationService;
+import com.didalgo.intellij.chatgpt.chat.models.TokenizerRegistry;
+import com.intellij.openapi.application.ModalityState;
+import com.intellij.openapi.application.ReadAction;
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.editor.EditorFactory;
+import com.intellij.openapi.editor.event.DocumentEvent;
+import com.intellij.openapi.editor.event.DocumentListener;
+import com.intellij.openapi.editor.event.SelectionEvent;
+import com.intellij.openapi.editor.event.SelectionListener;
+import com.intellij.openapi.fileEditor.FileEditorManagerEvent;
+import com.intellij.openapi.progress.ProgressManager;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.TextRange;
+import com.intellij.openapi.util.text.StringUtil;
+import com.intellij.openapi.wm.StatusBar;
+import com.intellij.openapi.wm.StatusBarWidget;
+import com.intellij.openapi.wm.impl.status.EditorBasedWidget;
+import com.intellij.util.Consumer;
+import com.intellij.util.concurrency.AppExecutorUtil;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.awt.*;
+import java.awt.event.MouseEvent;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Shows the token count of the selection, or of the whole document if nothing is selected, of the
+ * selected editor, counted with the tokenizer of the active assistant.
+ * <p>
+ * Counts are debounced and run in a non-blocking read action, cancelled as soon as the document
+ * changes or a newer count is requested, with cancellation checked between lines and between
+ * chunks of long lines. The count of the document of the selected editor is cached along with its
+ * modification stamp, together with per-line counts, so after an edit only the edited lines are
+ * tokenized again. Counts of documents no longer selected are discarded.
+ */
+public class TokenCountWidget extends EditorBasedWidget implements StatusBarWidget.TextPresentation {
+
+    public static final String ID = "didalgo.chatgpt.TokenCount";
+
+    public static final long DEBOUNCE_MILLIS = 300;
+
+    private volatile String text = "";
+    private volatile String tooltipText;
+    private volatile DocumentTokenCount documentTokenCount;
+    private volatile LineTokenCounter selectionTokenCounter;
+    private ScheduledFuture<?> pendingUpdate;
+
+    private record Count(int tokenCount, int lineCount, int charCount, boolean inSelection) { }
+
+    /**
+     * The token count of a document at the given modification stamp.
+     */
+    private static final class DocumentTokenCount {
+        private final Document document;
+        private final LineTokenCounter counter;
+        private long modificationStamp = -1;
+        private int tokenCount;
+
+        DocumentTokenCount(Document document, GPT3Tokenizer tokenizer) {
+            this.document = document;
+            this.counter = LineTokenCounter.of(tokenizer);
+        }
+
+        synchronized int countTokens(CharSequence text, long modificationStamp) {
+            if (this.modificationStamp != modificationStamp) {
+                tokenCount = counter.countTokens(text, ProgressManager::checkCanceled);
+                this.modificationStamp = modificationStamp;
+            }
+            return tokenCount;
+        }
+    }
+
+    public TokenCountWidget(@NotNull Project project) {
+        super(project);
+    }
+
+    @Override
+    public @NotNull String ID() {
+        return ID;
+    }
+
+    @Override
+    public @Nullable WidgetPresentation getPresentation() {
+        return this;
+    }
+
+    @Override
+    public void install(@NotNull StatusBar statusBar) {
+        super.install(statusBar);
+        var multicaster = EditorFactory.getInstance().getEventMulticaster();
+        multicaster.addDocumentListener(new DocumentListener() {
+            @Override
+            public void documentChanged(@NotNull DocumentEvent event) {
+                var editor = getEditor();
+                if (editor != null && editor.getDocument() == event.getDocument())
+                    requestUpdate();
+            }
+        }, this);
+        multicaster.addSelectionListener(new SelectionListener() {
+            @Override
+            public void selectionChanged(@NotNull SelectionEvent event) {
+                if (isOurEditor(event.getEditor()))
+                    requestUpdate();
+            }
+        }, this);
+        requestUpdate();
+    }
+
+    @Override
+    public void selectionChanged(@NotNull FileEditorManagerEvent event) {
+        requestUpdate();
+    }
+
+    /**
+     * Requests counting tokens of the selected editor again, once no other request follows for
+     * {@value #DEBOUNCE_MILLIS} milliseconds. Must be called on the EDT.
+     */
+    public void requestUpdate() {
+        var pendingUpdate = this.pendingUpdate;
+        if (pendingUpdate != null)
+            pendingUpdate.cancel(false);
+
+        var editor = getEditor();
+        if (editor == null) {
+            this.pendingUpdate = null;
+            showCount(null, null);
+            return;
+        }
+        var document = editor.getDocument();
+        var selectionModel = editor.getSelectionModel();
+        var selection = selectionModel.hasSelection()
+                ? TextRange.create(selectionModel.getSelectionStart(), selectionModel.getSelectionEnd()) : null;
+        var modelName = getModelName();
+        var tokenizer = getTokenizer();
+
+        this.pendingUpdate = AppExecutorUtil.getAppScheduledExecutorService().schedule(() ->
+                ReadAction.nonBlocking(() -> count(document, selection, tokenizer))
+                        .coalesceBy(this)
+                        .expireWith(this)
+                        .finishOnUiThread(ModalityState.any(), count -> showCount(count, modelName))
+                        .submit(TokenEstimationService.getInstance().getExecutor()),
+                DEBOUNCE_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    private @Nullable String getModelName() {
+        var chatLink = myProject.getUserData(ChatLink.KEY);
+        return (chatLink == null) ? null : chatLink.getConversationContext().getModelType().id();
+    }
+
+    private GPT3Tokenizer getTokenizer() {
+        var chatLink = myProject.getUserData(ChatLink.KEY);
+        return (chatLink == null)
+                ? TokenizerRegistry.DEFAULT_TOKENIZER_MODEL.getTokenizer()
+                : chatLink.getConversationContext().getModelType().getTokenizer();
+    }
+
+    private Count count(Document document, @Nullable TextRange selection, GPT3Tokenizer tokenizer) {
+        var text = document.getImmutableCharSequence();
+        if (selection != null && selection.getEndOffset() <= text.length()) {
+            var selectedText = selection.subSequence(text);
+            var selectionTokenCounter = this.selectionTokenCounter;
+            if (selectionTokenCounter == null || selectionTokenCounter.getTokenizer() != tokenizer)
+                this.selectionTokenCounter = selectionTokenCounter = LineTokenCounter.of(tokenizer);
+
+            int tokenCount = selectionTokenCounter.countTokens(selectedText, ProgressManager::checkCanceled);
+            return new Count(tokenCount, 1 + StringUtil.countNewLines(selectedText), selectedText.length(), true);
+        }
+
+        var documentTokenCount = this.documentTokenCount;
+        if (documentTokenCount == null || documentTokenCount.document != document || documentTokenCount.counter.getTokenizer() != tokenizer)
+            this.documentTokenCount = documentTokenCount = new DocumentTokenCount(document, tokenizer);
+
+        int tokenCount = documentTokenCount.countTokens(text, document.getModificationStamp());
+        return new Count(tokenCount, document.getLineCount(), text.length(), false);
+    }
+
+    private void showCount(@Nullable Count count, @Nullable String modelName) {
+        if (count == null) {
+            text = "";
+            tooltipText = null;
+        } else {
+            text = ChatGptBundle.message(count.inSelection() ? "statusbar.tokens.selection" : "statusbar.tokens",
+                    count.tokenCount());
+            tooltipText = String.format("<html>%s</html>", ChatGptBundle.message(
+                    (modelName == null) ? "statusbar.tokens.tooltip.default" : "statusbar.tokens.tooltip",
+                    count.lineCount(),
+                    count.charCount(),
+                    modelName));
+        }
+        if (myStatusBar != null)
+            myStatusBar.updateWidget(ID);
+    }
+
+    @Override
+    public @NotNull String getText() {
+        return text;
+    }
+
+    @Override
+    public float getAlignment() {
+        return Component.CENTER_ALIGNMENT;
+    }
+
+    @Override
+    public @Nullable String getTooltipText() {
+        return tooltipText;
+    }
+
+    @Override
+    public @Nullable Consumer<MouseEvent> getClickConsumer() {
+        // the active assistant may have changed since the last count
+        return event -> requestUpdate();
+    }
+}
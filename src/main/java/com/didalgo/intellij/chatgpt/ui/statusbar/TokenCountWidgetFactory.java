@@ -0,0 +1,35 @@
+/*
+ * Copyright (c) 2024 Mariusz Bernacki <consulting@didalgo.com>
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.didalgo.intellij.chatgpt.ui.statusbar;
+
+import com.didalgo.intellij.chatgpt.ChatGptBundle;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.wm.StatusBarWidget;
+import com.intellij.openapi.wm.impl.status.widget.StatusBarEditorBasedWidgetFactory;
+import org.jetbrains.annotations.NotNull;
+
+public class TokenCountWidgetFactory extends StatusBarEditorBasedWidgetFactory {
+
+    @Override
+    public @NotNull String getId() {
+        return TokenCountWidget.ID;
+    }
+
+    @Override
+    public @NotNull String getDisplayName() {
+        return ChatGptBundle.message("statusbar.tokens.name");
+    }
+
+    @Override
+    public boolean isEnabledByDefault() {
+        // opt-in, as counting keeps tokenizing the selected editor while typing
+        return false;
+    }
+
+    @Override
+    public @NotNull StatusBarWidget createWidget(@NotNull Project project) {
+        return new TokenCountWidget(project);
+    }
+}
@@ -6,9 +6,11 @@ package com.didalgo.intellij.chatgpt.ui.tool.window;
 
 import com.didalgo.intellij.chatgpt.Errors;
 import com.didalgo.intellij.chatgpt.chat.*;
+import com.didalgo.intellij.chatgpt.chat.metadata.ExchangeTimings;
 import com.didalgo.intellij.chatgpt.chat.models.ModelFamily;
 import com.didalgo.intellij.chatgpt.chat.models.ModelType;
 import com.didalgo.intellij.chatgpt.core.ChatCompletionParser;
+import com.didalgo.intellij.chatgpt.text.IncrementalMarkdownFormatter;
 import com.didalgo.intellij.chatgpt.text.TextContent;
 import com.didalgo.intellij.chatgpt.ui.ContextAwareSnippetizer;
 import com.didalgo.intellij.chatgpt.ui.text.ExpandableTextFieldExt;
@@ -31,6 +33,7 @@ import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.project.Project;
 import com.intellij.ui.OnePixelSplitter;
 import com.didalgo.intellij.chatgpt.ChatGptBundle;
+import com.intellij.util.concurrency.AppExecutorUtil;
 import com.intellij.util.ui.JBUI;
 import lombok.Getter;
 import org.jetbrains.annotations.NotNull;
@@ -49,6 +52,8 @@ import java.awt.*;
 import java.awt.event.KeyEvent;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
 import static java.awt.event.InputEvent.*;
 import static org.apache.commons.lang3.StringUtils.isEmpty;
@@ -67,6 +72,9 @@ public class ChatPanel implements ChatMessageListener, ChatLinkProvider {
     private final MainConversationHandler conversationHandler;
     private ListStack contextStack;
     private final ChatLink chatLink;
+    private final PromptTokenMeter promptTokenMeter;
+
+    private static final long CONTENT_REFRESH_MILLIS = 20;
 
     public static final KeyStroke SUBMIT_KEYSTROKE = KeyStroke.getKeyStroke(KeyEvent.VK_ENTER, CTRL_DOWN_MASK);
 
@@ -82,7 +90,8 @@ public class ChatPanel implements ChatMessageListener, ChatLinkProvider {
         splitter.setDividerWidth(1);
         splitter.putClientProperty(HyperlinkListener.class, submitAction);
 
-        userMessageTextField = new ExpandableTextFieldExt(project, new InputContextPromptAttachmentHandler(chatLink.getInputContext()));
+        userMessageTextField = new ExpandableTextFieldExt(project, new InputContextPromptAttachmentHandler(chatLink.getInputContext(),
+                () -> getModelType().getFamily().getImageSizeLimit()));
         var searchTextDocument = (AbstractDocument) userMessageTextField.getDocument();
         searchTextDocument.setDocumentFilter(new NewlineFilter());
         searchTextDocument.putProperty("filterNewlines", Boolean.FALSE);
@@ -114,6 +123,9 @@ public class ChatPanel implements ChatMessageListener, ChatLinkProvider {
         contentPanel = new ConversationPanel(chatLink, project);
         contentPanel.add(progressBar, BorderLayout.SOUTH);
         contentPanel.onChatMemoryCleared(userMessageTextField::requestFocusInWindow);
+        promptTokenMeter = new PromptTokenMeter(searchTextDocument, chatLink);
+        contentPanel.addUsageComponent(promptTokenMeter);
+        contentPanel.onChatMemoryCleared(promptTokenMeter::requestUpdate);
 
         splitter.setFirstComponent(contentPanel);
         splitter.setSecondComponent(actionPanel);
@@ -146,18 +158,21 @@ public class ChatPanel implements ChatMessageListener, ChatLinkProvider {
     private int computeTokenCount(PromptAttachment info) {
         var tokenCount = 0;
         if (info.getTextContentIfPresent().isPresent())
-            tokenCount = getModelType().getTokenizer().encode(TextContent.toString(info.getTextContentIfPresent().get())).size();
+            tokenCount = TokenEstimationService.getInstance().countTokens(
+                    TextContent.toString(info.getTextContentIfPresent().get()), getModelType().getTokenizer());
         if (info instanceof AbstractPromptAttachment aInfo)
             aInfo.setTokenCount(tokenCount);
 
-        SwingUtilities.invokeLater(() -> {
-            contextStack.getListModel().syncModel();
-
-            actionPanel.revalidate();
-        });
+        // counts finished within the same frame update the list together
+        getContentPanel().getRenderScheduler().requestRender(contextStackUpdater);
         return tokenCount;
     }
 
+    private final RenderScheduler.Renderable contextStackUpdater = () -> {
+        contextStack.getListModel().syncModel();
+        actionPanel.revalidate();
+    };
+
     private class ContextStackHandler implements ListDataListener {
 
         protected void onContentsChange() {
@@ -198,19 +213,21 @@ public class ChatPanel implements ChatMessageListener, ChatLinkProvider {
         }
 
         ApplicationManager.getApplication().invokeAndWait(() -> {
-            answer = new ConversationTurnPanel(new AssistantMessage("Thinking..."), getModelType());
+            answer = new ConversationTurnPanel(new AssistantMessage("Thinking..."), getModelType(), contentPanel.getRenderScheduler());
         });
+        streamingContent = new StreamingContentMaterializer();
         SwingUtilities.invokeLater(() -> {
             setSearchText("");
             aroundRequest(true);
 
             ConversationPanel contentPanel = getContentPanel();
-            contentPanel.add(new ConversationTurnPanel(event.getUserMessage(), null));
+            contentPanel.add(new ConversationTurnPanel(event.getUserMessage(), null, contentPanel.getRenderScheduler()));
             contentPanel.add(answer);
         });
     }
 
     private volatile ConversationTurnPanel answer;
+    private volatile StreamingContentMaterializer streamingContent;
 
     @Override
     public void exchangeStarted(ChatMessageEvent.Started event) {
@@ -268,29 +285,77 @@ public class ChatPanel implements ChatMessageListener, ChatLinkProvider {
 
     @Override
     public void responseArriving(ChatMessageEvent.ResponseArriving event) {
-        setContent(event.getPartialResponseChoices());
+        var streamingContent = this.streamingContent;
+        if (event instanceof ChatMessageEvent.ResponseDeltaArriving delta && streamingContent != null)
+            streamingContent.contentArriving(delta.getContent());
+        else
+            setContent(event.getPartialResponseChoices());
     }
 
     @Override
     public void responseArrived(ChatMessageEvent.ResponseArrived event) {
+        finishStreamingContent();
+        // the completed reply is formatted as a whole, since frozen blocks may refer to link
+        // reference definitions which arrived after them
         setContent(event.getGenerations());
 
-        Usage usage = event.getResponse().getMetadata().getUsage();
+        var metadata = event.getResponse().getMetadata();
+        Usage usage = metadata.getUsage();
+        ExchangeTimings timings = ExchangeTimings.from(metadata).orElse(null);
         SwingUtilities.invokeLater(() -> {
             aroundRequest(false);
-            contentPanel.updateUsage(usage, getChatLink().getConversationContext().getModelType());
+            contentPanel.updateUsage(usage, getChatLink().getConversationContext().getTokenBudget(), timings);
+            promptTokenMeter.requestUpdate();
         });
     }
 
     public void setContent(List<Generation> content) {
+        setContent(content, null);
+    }
+
+    private void setContent(List<Generation> content, IncrementalMarkdownFormatter formatter) {
         if (!content.isEmpty()) {
             var generation = content.get(0);
-            answer.setContent(generation.getOutput(), ChatCompletionParser.parseTextContent(generation));
+            answer.setContent(generation.getOutput(), ChatCompletionParser.parseTextContent(generation, formatter));
+        }
+    }
+
+    private void finishStreamingContent() {
+        var streamingContent = this.streamingContent;
+        if (streamingContent != null)
+            streamingContent.finish();
+    }
+
+    /**
+     * Materializes the streamed reply content off the EDT, at most once per UI refresh period,
+     * no matter how many response chunks arrived in the meantime. Blocks of the reply already
+     * complete are formatted once and reused by subsequent refreshes.
+     */
+    private class StreamingContentMaterializer {
+        private final AtomicReference<CharSequence> pendingContent = new AtomicReference<>();
+        private final IncrementalMarkdownFormatter formatter = new IncrementalMarkdownFormatter();
+        private boolean finished;
+
+        void contentArriving(CharSequence content) {
+            if (pendingContent.getAndSet(content) == null)
+                AppExecutorUtil.getAppScheduledExecutorService().schedule(this::materialize, CONTENT_REFRESH_MILLIS, TimeUnit.MILLISECONDS);
+        }
+
+        private synchronized void materialize() {
+            var content = pendingContent.getAndSet(null);
+            if (content != null && !finished)
+                setContent(List.of(new Generation(content.toString())), formatter);
+        }
+
+        synchronized void finish() {
+            finished = true;
+            pendingContent.set(null);
         }
     }
 
     @Override
     public void exchangeFailed(ChatMessageEvent.Failed event) {
+        finishStreamingContent();
         if (answer != null) {
             answer.setErrorContent(Errors.getWebClientErrorMessage(event.getCause()));
         }
@@ -7,30 +7,32 @@ package com.didalgo.intellij.chatgpt.ui.tool.window;
 import static com.intellij.util.ui.JBUI.Panels.simplePanel;
 
 import com.didalgo.intellij.chatgpt.ChatGptBundle;
-import com.didalgo.intellij.chatgpt.chat.messages.MediaSupport;
 import com.intellij.icons.AllIcons.General;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.ui.AnimatedIcon;
 import com.intellij.ui.components.JBLabel;
 import com.intellij.util.ui.JBUI;
 import org.springframework.ai.model.Media;
 
 import java.awt.BorderLayout;
 import java.awt.event.ItemEvent;
-import java.awt.image.BufferedImage;
-import java.io.ByteArrayInputStream;
-import java.io.IOException;
-import java.io.UncheckedIOException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
-import javax.imageio.ImageIO;
 import javax.swing.BoxLayout;
 import javax.swing.ImageIcon;
 import javax.swing.JPanel;
 import javax.swing.JToggleButton;
 import javax.swing.SwingConstants;
+import javax.swing.SwingUtilities;
 
 public class CollapsibleImagePanel extends JPanel {
 
+    private static final Logger LOG = Logger.getInstance(CollapsibleImagePanel.class);
+
+    private static final int MAX_WIDTH = 360;
+    private static final int MAX_HEIGHT = 120;
+
     public CollapsibleImagePanel(List<Media> images) {
         super(new BorderLayout());
         setOpaque(false);
@@ -52,22 +54,33 @@ public class CollapsibleImagePanel extends JPanel {
         panel.setVisible(true);
         panel.setLayout(new BoxLayout(panel, BoxLayout.Y_AXIS));
         panel.setBorder(JBUI.Borders.empty(4, 0));
-        try {
-            ByteArrayInputStream inputStream = new ByteArrayInputStream(imageData);
-            BufferedImage originalImage = ImageIO.read(inputStream);
-            int MAX_WIDTH = 360;
-            int MAX_HEIGHT = 120;
-            BufferedImage resizedImage = MediaSupport.resizeImage(originalImage, MAX_WIDTH, MAX_HEIGHT);
-            panel.add(simplePanel()
-                    .andTransparent()
-                    .addToTop(
-                            new JBLabel("<html><small><strong>%s</strong></small></html>".formatted(fileName))
-                                    .withBorder(JBUI.Borders.emptyBottom(4)))
-                    .addToLeft(new JBLabel(new ImageIcon(resizedImage))), BorderLayout.LINE_START);
-        } catch (IOException e) {
-            panel.add(new JBLabel("ERROR: Something went wrong while reading the image"));
-            throw new UncheckedIOException(e);
-        }
+
+        var thumbnailCache = ImageThumbnailCache.getInstance();
+        var imageLabel = new JBLabel();
+        thumbnailCache.getIfPresent(imageData, MAX_WIDTH, MAX_HEIGHT).ifPresentOrElse(
+                thumbnail -> imageLabel.setIcon(new ImageIcon(thumbnail)),
+                () -> {
+                    imageLabel.setIcon(AnimatedIcon.Default.INSTANCE);
+                    thumbnailCache.getThumbnail(imageData, MAX_WIDTH, MAX_HEIGHT)
+                            .whenComplete((thumbnail, error) -> SwingUtilities.invokeLater(() -> {
+                                if (error != null) {
+                                    LOG.warn("Unable to read attached image", error);
+                                    imageLabel.setIcon(null);
+                                    imageLabel.setText("ERROR: Something went wrong while reading the image");
+                                } else {
+                                    imageLabel.setIcon(new ImageIcon(thumbnail));
+                                }
+                                imageLabel.revalidate();
+                                imageLabel.repaint();
+                            }));
+                });
+
+        panel.add(simplePanel()
+                .andTransparent()
+                .addToTop(
+                        new JBLabel("<html><small><strong>%s</strong></small></html>".formatted(fileName))
+                                .withBorder(JBUI.Borders.emptyBottom(4)))
+                .addToLeft(imageLabel), BorderLayout.LINE_START);
         return panel;
     }
 
@@ -0,0 +1,190 @@
+/*
+ * Copyright (c) 2024 Mariusz Bernacki <consulting@didalgo.com>
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.didalgo.intellij.chatgpt.ui.tool.window;
+
+import com.didalgo.intellij.chatgpt.settings.GeneralSettings;
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.components.Service;
+import com.intellij.openapi.project.Project;
+
+import javax.swing.*;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Caps the memory held by the rendering state of conversation turns in the tool window.
+ * <p>
+ * Turns scrolled out of view are dehydrated: their documents, views and code block components
+ * are released, and only the message content is kept, to be rendered again when the turn
+ * scrolls back into view. A turn is dehydrated once it has been out of view for a while, or
+ * earlier, in least-recently-viewed order, when the estimated size of the rendering state of
+ * all turns exceeds the {@linkplain GeneralSettings#getRenderingMemoryBudgetMb() memory budget}.
+ * Turns in view are never dehydrated. The size of a turn is estimated whenever it comes into or
+ * goes out of view, and the sizes of hydrated turns are kept as a running total.
+ * <p>
+ * The methods of this class are expected to be called on the EDT.
+ */
+@Service(Service.Level.PROJECT)
+public final class ConversationMemoryManager implements Disposable {
+
+    private static final long IDLE_TIMEOUT_NANOS = TimeUnit.MINUTES.toNanos(5);
+    private static final int SWEEP_PERIOD_MILLIS = 30_000;
+
+    /**
+     * A component whose rendering state can be released and rebuilt on demand.
+     */
+    public interface Dehydratable {
+
+        /**
+         * Returns the estimated size of the rendering state which would be released by dehydration.
+         *
+         * @return the estimated size in bytes, or {@code 0} if already dehydrated
+         */
+        long getRetainedSize();
+
+        boolean isDehydrated();
+
+        void dehydrate();
+
+        void rehydrate();
+    }
+
+    private static final class Entry {
+        boolean visible;
+        long hiddenSince;
+        long retainedSize;
+    }
+
+    /** Hydrated components, in least-recently-viewed order. */
+    private final Map<Dehydratable, Entry> hydrated = new LinkedHashMap<>();
+    private final Timer sweepTimer = new Timer(SWEEP_PERIOD_MILLIS, __ -> dehydrateIdle());
+    private final LongSupplier budget;
+    /** The sum of the last estimated sizes of hydrated components. */
+    private long retainedSize;
+
+    public ConversationMemoryManager() {
+        this(() -> GeneralSettings.getInstance().getRenderingMemoryBudgetMb() * 1024L * 1024L);
+    }
+
+    ConversationMemoryManager(LongSupplier budget) {
+        this.budget = budget;
+    }
+
+    public static ConversationMemoryManager getInstance(Project project) {
+        return project.getService(ConversationMemoryManager.class);
+    }
+
+    /**
+     * Notifies that the given component came into view, rehydrating it if needed.
+     *
+     * @param component the component
+     */
+    public void shown(Dehydratable component) {
+        if (component.isDehydrated())
+            component.rehydrate();
+
+        var entry = hydrated.remove(component);
+        if (entry == null)
+            entry = new Entry();
+        entry.visible = true;
+        hydrated.put(component, entry);
+        updateRetainedSize(component, entry);
+        enforceBudget();
+    }
+
+    /**
+     * Notifies that the given component went out of view.
+     *
+     * @param component the component
+     */
+    public void hidden(Dehydratable component) {
+        var entry = hydrated.get(component);
+        if (entry != null) {
+            entry.visible = false;
+            entry.hiddenSince = System.nanoTime();
+            updateRetainedSize(component, entry);
+            if (!sweepTimer.isRunning())
+                sweepTimer.start();
+        }
+        enforceBudget();
+    }
+
+    /**
+     * Forgets the given component, removed from the conversation.
+     *
+     * @param component the component
+     */
+    public void removed(Dehydratable component) {
+        var entry = hydrated.remove(component);
+        if (entry != null)
+            retainedSize -= entry.retainedSize;
+        if (hydrated.isEmpty())
+            sweepTimer.stop();
+    }
+
+    /**
+     * Returns the estimated size of the rendering state of all hydrated components, as last
+     * estimated when each of them came into or went out of view.
+     *
+     * @return the estimated size in bytes
+     */
+    public long getRetainedSize() {
+        return retainedSize;
+    }
+
+    private void updateRetainedSize(Dehydratable component, Entry entry) {
+        long size = component.getRetainedSize();
+        retainedSize += size - entry.retainedSize;
+        entry.retainedSize = size;
+    }
+
+    private void enforceBudget() {
+        long budget = this.budget.getAsLong();
+        if (budget <= 0)
+            return;
+
+        for (Iterator<Map.Entry<Dehydratable, Entry>> iter = hydrated.entrySet().iterator(); retainedSize > budget && iter.hasNext(); ) {
+            var next = iter.next();
+            if (!next.getValue().visible) {
+                dehydrate(next.getKey(), next.getValue());
+                iter.remove();
+            }
+        }
+    }
+
+    private void dehydrate(Dehydratable component, Entry entry) {
+        component.dehydrate();
+        retainedSize -= entry.retainedSize;
+    }
+
+    private void dehydrateIdle() {
+        long now = System.nanoTime();
+        boolean hiddenLeft = false;
+        for (Iterator<Map.Entry<Dehydratable, Entry>> iter = hydrated.entrySet().iterator(); iter.hasNext(); ) {
+            var next = iter.next();
+            var entry = next.getValue();
+            if (entry.visible)
+                continue;
+            if (now - entry.hiddenSince >= IDLE_TIMEOUT_NANOS) {
+                dehydrate(next.getKey(), entry);
+                iter.remove();
+            } else {
+                hiddenLeft = true;
+            }
+        }
+        if (!hiddenLeft)
+            sweepTimer.stop();
+    }
+
+    @Override
+    public void dispose() {
+        sweepTimer.stop();
+        hydrated.clear();
+        retainedSize = 0;
+    }
+}
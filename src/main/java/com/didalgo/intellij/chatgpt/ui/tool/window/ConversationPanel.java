@@ -6,6 +6,8 @@ package com.didalgo.intellij.chatgpt.ui.tool.window;
 
 import com.didalgo.intellij.chatgpt.SystemMessageHolder;
 import com.didalgo.intellij.chatgpt.chat.ChatLink;
+import com.didalgo.intellij.chatgpt.chat.TokenBudget;
+import com.didalgo.intellij.chatgpt.chat.metadata.ExchangeTimings;
 import com.didalgo.intellij.chatgpt.chat.metadata.ImmutableUsage;
 import com.didalgo.intellij.chatgpt.chat.models.ModelType;
 import com.didalgo.intellij.chatgpt.event.ListenerList;
@@ -29,7 +31,6 @@ import com.intellij.ui.components.JBScrollPane;
 import com.intellij.ui.components.JBTextField;
 import com.intellij.ui.components.labels.LinkLabel;
 import com.intellij.ui.components.panels.NonOpaquePanel;
-import com.intellij.ui.components.panels.VerticalLayout;
 import com.intellij.util.ui.JBFont;
 import com.intellij.util.ui.JBUI;
 import com.intellij.util.ui.UIUtil;
@@ -45,19 +46,23 @@ import java.awt.event.*;
 import static com.didalgo.intellij.chatgpt.settings.GeneralSettings.BASE_PROMPT;
 
 public class ConversationPanel extends JBPanel<ConversationPanel> implements NullableComponent, SystemMessageHolder {
-    private final JPanel myList = new JPanel(new VerticalLayout(0));
+    private final VirtualConversationList myList = new VirtualConversationList();
     private final JBScrollPane myScrollPane = new JBScrollPane(myList, ScrollPaneConstants.VERTICAL_SCROLLBAR_AS_NEEDED,
                                       ScrollPaneConstants.HORIZONTAL_SCROLLBAR_NEVER);
     private int myScrollValue = 0;
     private UsagePanel usagePanel;
+    private JPanel usageBar;
     private JBTextField systemRole;
     private final Project project;
+    private final RenderScheduler renderScheduler;
     private final ChatLink chatLink;
     private final ListenerList<Runnable> onChatMemoryCleared = ListenerList.of(Runnable.class);
 
     public ConversationPanel(ChatLink chatLink, @NotNull Project project) {
         this.chatLink = chatLink;
         this.project = project;
+        this.renderScheduler = RenderScheduler.getInstance(project);
+        myList.setListener(new DehydratingListener(ConversationMemoryManager.getInstance(project)));
         setBorder(JBUI.Borders.empty());
         setLayout(new BorderLayout());
         setBackground(UIUtil.getListBackground());
@@ -120,19 +125,21 @@ public class ConversationPanel extends JBPanel<ConversationPanel> implements Nul
         newChat.addMouseListener(new MouseAdapter() {
             @Override
             public void mouseClicked(MouseEvent e) {
-                myList.removeAll();
+                myList.removeAllItems();
                 addAssistantTipsIfEnabled(false);
-                myList.updateUI();
                 chatLink.getConversationContext().clear();
                 onChatMemoryCleared.fire().run();
-                usagePanel.updateUsage(ImmutableUsage.empty(), chatLink.getConversationContext().getModelType());
+                usagePanel.updateUsage(ImmutableUsage.empty(), chatLink.getConversationContext().getTokenBudget());
             }
         });
 
         newChat.setFont(JBFont.label());
         newChat.setBorder(JBUI.Borders.emptyRight(20));
         panel.add(newChat, BorderLayout.EAST);
-        panel.add(usagePanel, BorderLayout.WEST);
+        usageBar = new JPanel(new FlowLayout(FlowLayout.LEFT, 0, 0));
+        usageBar.setOpaque(false);
+        usageBar.add(usagePanel);
+        panel.add(usageBar, BorderLayout.WEST);
         mainPanel.add(panel, BorderLayout.NORTH);
 
         myList.setOpaque(true);
@@ -149,26 +156,20 @@ public class ConversationPanel extends JBPanel<ConversationPanel> implements Nul
         addAssistantTipsIfEnabled(true);
     }
 
-    public void addSeparator(JComponent comp) {
-        SwingUtilities.invokeLater(() -> {
-            JSeparator separator = new JSeparator();
-            separator.setForeground(JBColor.border());
-            comp.add(separator);
-            updateLayout();
-            invalidate();
-            validate();
-            repaint();
-        });
+    public void addSeparator() {
+        JSeparator separator = new JSeparator();
+        separator.setForeground(JBColor.border());
+        myList.addItem(separator);
     }
 
     protected void addAssistantTipsIfEnabled(boolean firstUse) {
-        addSeparator(myList);
+        addSeparator();
 
         var introEnabled = GeneralSettings.getInstance().getEnableInitialMessage();
         if (!firstUse && introEnabled == null)
             GeneralSettings.getInstance().setEnableInitialMessage(introEnabled = false);
         if (!Boolean.FALSE.equals(introEnabled))
-            myList.add(createAssistantTips());
+            myList.addItem(createAssistantTips());
     }
 
     protected ConversationTurnPanel createAssistantTips() {
@@ -182,18 +183,43 @@ public class ConversationPanel extends JBPanel<ConversationPanel> implements Nul
                 [✦ What for can I use atomics in Java?](assistant://?prompt=What+for+can+I+use+atomics+in+Java%3F)
                 [✦ Explain the LazyHolder pattern in Java](assistant://?prompt=Explain+the+LazyHolder+pattern+in+Java)
                 [✦ Suggest Java library's method for doing OCR](assistant://?prompt=Suggest+Java+library%27s+method+for+doing+OCR)
-                """), modelType);
+                """), modelType, renderScheduler);
     }
 
     public void add(ConversationTurnPanel conversationTurnPanel) {
-        SwingUtilities.invokeLater(() -> {
-            myList.add(conversationTurnPanel);
-            updateLayout();
+        renderScheduler.invokeInFrame(() -> {
+            myList.addItem(conversationTurnPanel);
             scrollToBottom();
-            invalidate();
-            validate();
-            repaint();
         });
+        renderScheduler.requestLayout(this);
+    }
+
+    /**
+     * Releases the rendering state of conversation turns scrolled out of view, as decided by the memory manager.
+     */
+    private record DehydratingListener(ConversationMemoryManager memoryManager) implements VirtualConversationList.Listener {
+
+        @Override
+        public void itemShown(JComponent item) {
+            if (item instanceof ConversationMemoryManager.Dehydratable dehydratable)
+                memoryManager.shown(dehydratable);
+        }
+
+        @Override
+        public void itemHidden(JComponent item) {
+            if (item instanceof ConversationMemoryManager.Dehydratable dehydratable)
+                memoryManager.hidden(dehydratable);
+        }
+
+        @Override
+        public void itemRemoved(JComponent item) {
+            if (item instanceof ConversationMemoryManager.Dehydratable dehydratable)
+                memoryManager.removed(dehydratable);
+        }
+    }
+
+    public RenderScheduler getRenderScheduler() {
+        return renderScheduler;
     }
 
     public Subscription onChatMemoryCleared(Runnable action) {
@@ -202,9 +228,9 @@ public class ConversationPanel extends JBPanel<ConversationPanel> implements Nul
 
     public ConversationTurnPanel getConversationTurnPanel(int n) {
         if (n >= 0)
-            return (ConversationTurnPanel) myList.getComponent(n);
+            return (ConversationTurnPanel) myList.getItem(n);
         else
-            return (ConversationTurnPanel) myList.getComponent(myList.getComponentCount() + n);
+            return (ConversationTurnPanel) myList.getItem(myList.getItemCount() + n);
     }
 
     public void scrollToBottom() {
@@ -212,12 +238,8 @@ public class ConversationPanel extends JBPanel<ConversationPanel> implements Nul
     }
 
     public void updateLayout() {
-        LayoutManager layout = myList.getLayout();
-        int componentCount = myList.getComponentCount();
-        for (int i = 0; i < componentCount; i++) {
-            layout.removeLayoutComponent(myList.getComponent(i));
-            layout.addLayoutComponent(null, myList.getComponent(i));
-        }
+        myList.revalidate();
+        myList.repaint();
     }
 
     @Override
@@ -233,9 +255,9 @@ public class ConversationPanel extends JBPanel<ConversationPanel> implements Nul
     @Override
     public boolean isVisible() {
         if (super.isVisible()) {
-            int count = myList.getComponentCount();
+            int count = myList.getItemCount();
             for (int i = 0 ; i < count ; i++) {
-                if (myList.getComponent(i).isVisible()) {
+                if (myList.getItem(i).isVisible()) {
                     return true;
                 }
             }
@@ -253,7 +275,11 @@ public class ConversationPanel extends JBPanel<ConversationPanel> implements Nul
         return systemRole.getText();
     }
 
-    public void updateUsage(Usage usage, ModelType model) {
-        usagePanel.updateUsage(usage, model);
+    public void addUsageComponent(JComponent component) {
+        usageBar.add(component);
+    }
+
+    public void updateUsage(Usage usage, TokenBudget budget, ExchangeTimings timings) {
+        usagePanel.updateUsage(usage, budget, timings);
     }
 }
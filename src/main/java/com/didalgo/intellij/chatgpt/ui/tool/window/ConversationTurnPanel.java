@@ -6,8 +6,8 @@ package com.didalgo.intellij.chatgpt.ui.tool.window;
 
 import com.didalgo.intellij.chatgpt.ChatGptBundle;
 import com.didalgo.intellij.chatgpt.chat.models.ModelType;
-import com.didalgo.intellij.chatgpt.text.CodeSnippetManipulator;
 import com.didalgo.intellij.chatgpt.text.TextFragment;
+import com.didalgo.intellij.chatgpt.text.UserMessageHtmlFormatter;
 import com.intellij.icons.AllIcons;
 import com.intellij.notification.Notification;
 import com.intellij.notification.NotificationType;
@@ -31,27 +31,28 @@ import javax.swing.Icon;
 import javax.swing.JEditorPane;
 import javax.swing.JLabel;
 import javax.swing.JPanel;
-import javax.swing.Timer;
 import java.awt.BorderLayout;
 import java.awt.Cursor;
 import java.awt.datatransfer.StringSelection;
 import java.awt.datatransfer.Transferable;
-import java.awt.event.ActionEvent;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
 import java.util.concurrent.atomic.AtomicReference;
 
-public class ConversationTurnPanel extends JBPanel<ConversationTurnPanel> {
+public class ConversationTurnPanel extends JBPanel<ConversationTurnPanel> implements RenderScheduler.Renderable, ConversationMemoryManager.Dehydratable {
 
     private static final Logger LOG = Logger.getInstance(ConversationTurnPanel.class);
 
     private final MessagePanel messagePanel;
 
+    private final RenderScheduler renderScheduler;
+
     private volatile Message message;
 
 
-    public ConversationTurnPanel(Message message, ModelType model) {
+    public ConversationTurnPanel(Message message, ModelType model, RenderScheduler renderScheduler) {
         this.message = message;
+        this.renderScheduler = renderScheduler;
         var fromUser = (model == null);
         setDoubleBuffered(true);
         setOpaque(true);
@@ -107,41 +108,7 @@ public class ConversationTurnPanel extends JBPanel<ConversationTurnPanel> {
         if (!fromUser)
             return text.toHtml();
 
-        String markdown = text.markdown();
-        StringBuilder buf = new StringBuilder(markdown.length());
-        char ch;
-        boolean onLineStart = true;
-        for (int i = 0; i < markdown.length(); i++) {
-            switch (ch = markdown.charAt(i)) {
-                case '\r' -> { }
-                case '\n' -> {
-                    onLineStart = true;
-                    buf.append("<br>");
-                }
-                case '<' -> {
-                    onLineStart = false;
-                    buf.append("&lt;");
-                }
-                case '>' -> {
-                    onLineStart = false;
-                    buf.append("&gt;");
-                }
-                case '&' -> {
-                    onLineStart = false;
-                    buf.append("&amp;");
-                }
-                default -> {
-                    if (onLineStart && Character.isWhitespace(ch)) {
-                        buf.append("&nbsp;");
-                        if (ch == '\t') buf.append("&nbsp;&nbsp;&nbsp;");
-                    } else {
-                        onLineStart = false;
-                        buf.append(ch);
-                    }
-                }
-            }
-        }
-        return buf.toString();
+        return UserMessageHtmlFormatter.toDisplayText(text.markdown());
     }
 
     public MessagePanel createMessagePanel(Message message, boolean fromUser) {
@@ -153,7 +120,7 @@ public class ConversationTurnPanel extends JBPanel<ConversationTurnPanel> {
         messagePanel.setOpaque(false);
         messagePanel.setBorder(null);
         messagePanel.putClientProperty(AccessibleContext.ACCESSIBLE_NAME_PROPERTY, getMessageText().markdown());
-        messagePanel.updateMessage(fromUser? TextFragment.of(content.markdown(), CodeSnippetManipulator.makeCodeSnippetBlocksCollapsible(toDisplayText(content, true))) : content);
+        messagePanel.updateMessage(fromUser? TextFragment.of(content.markdown(), new UserMessageHtmlFormatter().format(content)) : content);
         messagePanel.setEditable(false);
         if (messagePanel.getCaret() != null) {
             messagePanel.setCaretPosition(0);
@@ -166,22 +133,19 @@ public class ConversationTurnPanel extends JBPanel<ConversationTurnPanel> {
     }
 
     private final AtomicReference<TextFragment> pendingTextContent = new AtomicReference<>();
-    private final Timer updateContentTimer = new Timer(20, this::updateContentIncrementally);
 
     public void setContent(AssistantMessage message, TextFragment textContent) {
         this.message = message;
         this.pendingTextContent.set(textContent);
-        if (!updateContentTimer.isRunning()) {
-            updateContentTimer.setRepeats(false);
-            updateContentTimer.start();
-        }
+        renderScheduler.requestRender(this);
     }
 
     public void setErrorContent(String errorMessage) {
         setContent(new AssistantMessage(errorMessage), TextFragment.of(errorMessage));
     }
 
-    protected void updateContentIncrementally(ActionEvent event) {
+    @Override
+    public void renderPending() {
         TextFragment pending = null;
         try {
             pending = pendingTextContent.get();
@@ -193,4 +157,24 @@ public class ConversationTurnPanel extends JBPanel<ConversationTurnPanel> {
             LOG.error("ChatGPT Exception in processing response: response: {}, error: {}", e, String.valueOf(pending), e.getMessage());
         }
     }
+
+    @Override
+    public long getRetainedSize() {
+        return messagePanel.getTextPanel().getRetainedSize();
+    }
+
+    @Override
+    public boolean isDehydrated() {
+        return messagePanel.getTextPanel().isDehydrated();
+    }
+
+    @Override
+    public void dehydrate() {
+        messagePanel.getTextPanel().dehydrate();
+    }
+
+    @Override
+    public void rehydrate() {
+        messagePanel.getTextPanel().rehydrate();
+    }
 }
@@ -0,0 +1,175 @@
+/*
+ * Copyright (c) 2024 Mariusz Bernacki <consulting@didalgo.com>
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.didalgo.intellij.chatgpt.ui.tool.window;
+
+import com.didalgo.intellij.chatgpt.chat.messages.MediaSupport;
+import com.didalgo.intellij.chatgpt.core.PluginExecutors;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.components.Service;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * Creates thumbnails of attached images in the background and caches them.
+ * <p>
+ * Images are decoded with source subsampling and scaled down in steps, so the full resolution
+ * image is never decoded, and the decoded image is dropped once scaled. Thumbnails are cached
+ * by the hash of the image content, in least recently used order, within a limit on their total
+ * size. Requests for a thumbnail already being created share the same task.
+ */
+@Service
+public final class ImageThumbnailCache {
+
+    public static final long DEFAULT_MAX_BYTES = 32L * 1024 * 1024;
+
+    private final long maxBytes;
+    private final Executor executor;
+    private final Map<Key, BufferedImage> thumbnails = new LinkedHashMap<>(32, 0.75f, true);
+    private final Map<Key, CompletableFuture<BufferedImage>> pending = new HashMap<>();
+    /** The content hashes of image data already seen, so the same data isn't hashed again. */
+    private final Map<byte[], ContentHash> contentHashes = new WeakHashMap<>();
+    private long bytes;
+
+    private record ContentHash(long high, long low) {
+
+        static ContentHash of(byte[] data) {
+            try {
+                var buffer = ByteBuffer.wrap(MessageDigest.getInstance("SHA-256").digest(data));
+                return new ContentHash(buffer.getLong(), buffer.getLong());
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException("SHA-256 not supported", e);
+            }
+        }
+    }
+
+    private record Key(ContentHash contentHash, int maxWidth, int maxHeight) { }
+
+    public ImageThumbnailCache() {
+        this(DEFAULT_MAX_BYTES);
+    }
+
+    public ImageThumbnailCache(long maxBytes) {
+        this(maxBytes, task -> PluginExecutors.getExecutor().execute(task));
+    }
+
+    ImageThumbnailCache(long maxBytes, Executor executor) {
+        this.maxBytes = maxBytes;
+        this.executor = executor;
+    }
+
+    public static ImageThumbnailCache getInstance() {
+        return ApplicationManager.getApplication().getService(ImageThumbnailCache.class);
+    }
+
+    /**
+     * Returns the cached thumbnail of the given image, if the image data was seen before.
+     *
+     * @param imageData the encoded image
+     * @param maxWidth the maximum thumbnail width
+     * @param maxHeight the maximum thumbnail height
+     * @return the thumbnail, or empty if not available at once
+     */
+    public synchronized Optional<BufferedImage> getIfPresent(byte[] imageData, int maxWidth, int maxHeight) {
+        var contentHash = contentHashes.get(imageData);
+        return (contentHash == null) ? Optional.empty() : Optional.ofNullable(thumbnails.get(new Key(contentHash, maxWidth, maxHeight)));
+    }
+
+    /**
+     * Returns the thumbnail of the given image, creating it in the background if not cached.
+     *
+     * @param imageData the encoded image
+     * @param maxWidth the maximum thumbnail width
+     * @param maxHeight the maximum thumbnail height
+     * @return the future thumbnail, completed exceptionally if the image cannot be decoded
+     */
+    public CompletableFuture<BufferedImage> getThumbnail(byte[] imageData, int maxWidth, int maxHeight) {
+        var cached = getIfPresent(imageData, maxWidth, maxHeight);
+        if (cached.isPresent())
+            return CompletableFuture.completedFuture(cached.get());
+
+        return CompletableFuture.supplyAsync(() -> contentHashOf(imageData), executor)
+                .thenCompose(contentHash -> getThumbnail(new Key(contentHash, maxWidth, maxHeight), imageData));
+    }
+
+    private ContentHash contentHashOf(byte[] imageData) {
+        synchronized (this) {
+            var contentHash = contentHashes.get(imageData);
+            if (contentHash != null)
+                return contentHash;
+        }
+        var contentHash = ContentHash.of(imageData);
+        synchronized (this) {
+            contentHashes.put(imageData, contentHash);
+        }
+        return contentHash;
+    }
+
+    private CompletableFuture<BufferedImage> getThumbnail(Key key, byte[] imageData) {
+        CompletableFuture<BufferedImage> task;
+        synchronized (this) {
+            var thumbnail = thumbnails.get(key);
+            if (thumbnail != null)
+                return CompletableFuture.completedFuture(thumbnail);
+
+            task = pending.get(key);
+            if (task != null)
+                return task;
+
+            task = new CompletableFuture<>();
+            pending.put(key, task);
+        }
+
+        try {
+            var thumbnail = createThumbnail(imageData, key.maxWidth(), key.maxHeight());
+            put(key, thumbnail);
+            task.complete(thumbnail);
+        } catch (Throwable e) {
+            // complete the shared task whatever happens, so no request waits for it forever
+            task.completeExceptionally(e);
+            throw e;
+        } finally {
+            synchronized (this) {
+                pending.remove(key);
+            }
+        }
+        return task;
+    }
+
+    private static BufferedImage createThumbnail(byte[] imageData, int maxWidth, int maxHeight) {
+        try {
+            return MediaSupport.resizeImage(MediaSupport.readImageSubsampled(imageData, maxWidth, maxHeight), maxWidth, maxHeight);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private synchronized void put(Key key, BufferedImage thumbnail) {
+        long size = sizeOf(thumbnail);
+        if (size > maxBytes)
+            return;
+
+        var previous = thumbnails.put(key, thumbnail);
+        if (previous != null)
+            bytes -= sizeOf(previous);
+        bytes += size;
+
+        for (Iterator<BufferedImage> iter = thumbnails.values().iterator(); bytes > maxBytes && iter.hasNext(); ) {
+            bytes -= sizeOf(iter.next());
+            iter.remove();
+        }
+    }
+
+    private static long sizeOf(BufferedImage image) {
+        return 4L * image.getWidth() * image.getHeight();
+    }
+}
@@ -37,6 +37,10 @@ public class MessagePanel extends JBPanel<MessagePanel> {
         return images.isEmpty() ? Optional.empty() : Optional.of(new CollapsibleImagePanel(images));
     }
 
+    public MessageTextPanel getTextPanel() {
+        return textPanel;
+    }
+
     public void updateTextContent(TextFragment newContent) {
         textPanel.updateMessage(newContent);
     }
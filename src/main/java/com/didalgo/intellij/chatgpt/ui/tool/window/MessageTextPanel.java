@@ -5,7 +5,11 @@
 package com.didalgo.intellij.chatgpt.ui.tool.window;
 
 import com.didalgo.intellij.chatgpt.compat.LegacyHtmlPanel;
+import com.didalgo.intellij.chatgpt.diagnostic.JfrEvents;
+import com.didalgo.intellij.chatgpt.diagnostic.MessagePanelUpdateEvent;
+import com.didalgo.intellij.chatgpt.text.HtmlBlocks;
 import com.didalgo.intellij.chatgpt.text.TextFragment;
+import com.didalgo.intellij.chatgpt.text.UserMessageHtmlFormatter;
 import com.didalgo.intellij.chatgpt.ui.MessageRenderer;
 import com.didalgo.intellij.chatgpt.ui.view.*;
 import com.didalgo.intellij.chatgpt.util.StandardLanguage;
@@ -16,17 +20,31 @@ import com.intellij.util.ui.JBUI;
 import com.intellij.util.ui.UIUtil;
 import org.jetbrains.annotations.Nls;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import javax.swing.event.HyperlinkEvent;
 import javax.swing.text.*;
 import javax.swing.text.html.HTML;
+import javax.swing.text.html.HTMLDocument;
 import javax.swing.text.html.HTMLEditorKit;
 import java.awt.*;
+import java.io.IOException;
+import java.util.List;
 
 public class MessageTextPanel extends LegacyHtmlPanel implements MessageRenderer {
 
+    /** Rough size of the document element and view trees per character of text. */
+    private static final long DOCUMENT_BYTES_PER_CHAR = 48;
+    /** Rough size of a code block text area with its syntax tokens and action components. */
+    private static final long CODE_BLOCK_BYTES = 64 * 1024;
+
     private final boolean fromUser;
     private volatile TextFragment text;
+    /** The top-level HTML blocks currently in the document, each wrapped in its own element. */
+    private List<String> renderedBlocks = List.of();
+    private final CodeBlockRegistry codeBlocks = new CodeBlockRegistry();
+    private final CollapsibleContentCache collapsibleContents = new CollapsibleContentCache();
+    private boolean dehydrated;
 
     public MessageTextPanel(boolean fromUser) {
         setEditorKit(new HTMLEditorKitBuilder()
@@ -46,9 +64,9 @@ public class MessageTextPanel extends LegacyHtmlPanel implements MessageRenderer
     protected View createView(Element elem, View view) {
         AttributeSet attrs = elem.getAttributes();
         if (attrs.getAttribute(StyleConstants.NameAttribute) == HTML.Tag.DIV && supportsCollapsibility(attrs))
-            return CollapsiblePanelFactory.createPanel(fromUser, this, elem, attrs);
-        if (attrs.getAttribute(StyleConstants.NameAttribute) == HTML.Tag.PRE)
-            return new RSyntaxTextAreaView(elem, LanguageDetector.getLanguage(elem).orElse(StandardLanguage.NONE));
+            return CollapsiblePanelFactory.createPanel(fromUser, this, elem, attrs, collapsibleContents);
+        if (CodeBlockRegistry.isCodeBlock(attrs))
+            return new RSyntaxTextAreaView(elem, LanguageDetector.getLanguage(elem).orElse(StandardLanguage.NONE), codeBlocks);
 
         return view;
     }
@@ -59,7 +77,35 @@ public class MessageTextPanel extends LegacyHtmlPanel implements MessageRenderer
 
     @Override
     protected @NotNull @Nls String getBody() {
-        return (text == null)? "" : text.toHtml();
+        var text = this.text;
+        if (text == null)
+            return "";
+        if (fromUser)
+            return text.toHtml();
+
+        var body = new StringBuilder();
+        for (int i = 0; i < renderedBlocks.size(); i++)
+            body.append(wrapBlock(i, renderedBlocks.get(i)));
+        return body.toString();
+    }
+
+    private static String wrapBlock(int index, String block) {
+        return "<div id=\"" + blockId(index) + "\">" + block + "</div>";
+    }
+
+    private static String blockId(int index) {
+        return "block-" + index;
+    }
+
+    @Override
+    public @Nullable String getCollapsibleContentHtml(int ordinal) {
+        var text = this.text;
+        if (text == null || !fromUser)
+            return null;
+
+        String markdown = text.markdown();
+        var snippets = new UserMessageHtmlFormatter().findSnippets(markdown);
+        return (ordinal < snippets.size()) ? UserMessageHtmlFormatter.toDisplayText(snippets.get(ordinal).text(markdown)) : null;
     }
 
     @Override
@@ -73,11 +119,148 @@ public class MessageTextPanel extends LegacyHtmlPanel implements MessageRenderer
             HyperlinkHandler.handleOrElse(e, super::hyperlinkUpdate);
     }
 
+    @Override
+    public void updateUI() {
+        // the look and feel, fonts or editor scheme changed, so nothing rendered before can be reused;
+        // the fields are still unset when called from the constructor
+        renderedBlocks = List.of();
+        if (codeBlocks != null)
+            codeBlocks.clear();
+        if (collapsibleContents != null)
+            collapsibleContents.clear();
+        super.updateUI();
+    }
+
     public void updateMessage(TextFragment updateMessage) {
         this.text = updateMessage;
         update();
     }
 
+    @Override
+    public void update() {
+        if (dehydrated)
+            return;
+
+        var jfrEvent = new MessagePanelUpdateEvent();
+        jfrEvent.begin();
+
+        var text = this.text;
+        int patchedBlocks = -1;
+        if (fromUser || text == null) {
+            renderedBlocks = List.of();
+            super.update();
+        } else {
+            var blocks = HtmlBlocks.split(text.toHtml());
+            patchedBlocks = patchDocument(renderedBlocks, blocks);
+            renderedBlocks = blocks;
+            if (patchedBlocks < 0) {
+                super.update();
+            } else {
+                revalidate();
+                repaint();
+            }
+        }
+        // the components of code blocks gone from the message would otherwise be kept until the next rebuild
+        codeBlocks.retainBelow(codeBlocks.countCodeBlocks(getDocument()));
+
+        if (jfrEvent.shouldCommit()) {
+            jfrEvent.fromUser = fromUser;
+            jfrEvent.patchedBlocks = patchedBlocks;
+            if (text != null) {
+                jfrEvent.markdownChars = text.length();
+                jfrEvent.htmlChars = text.toHtml().length();
+                jfrEvent.codeBlocks = JfrEvents.countCodeBlocks(text);
+            }
+            jfrEvent.commit();
+        }
+    }
+
+    public boolean isDehydrated() {
+        return dehydrated;
+    }
+
+    /**
+     * Releases the document, its views and code block components, keeping only the message content.
+     * Updates of the message are not rendered until the panel is {@linkplain #rehydrate() rehydrated}.
+     */
+    public void dehydrate() {
+        if (dehydrated)
+            return;
+
+        // the HTML is dropped together with the fragment; completed replies are formatted through the
+        // HtmlRenderCache, so it is looked up there on rehydration instead of being formatted again
+        var text = this.text;
+        if (text != null && !fromUser)
+            this.text = TextFragment.of(text.markdown());
+        dehydrated = true;
+        renderedBlocks = List.of();
+        codeBlocks.clear();
+        collapsibleContents.clear();
+        setDocument(getEditorKit().createDefaultDocument());
+    }
+
+    public void rehydrate() {
+        if (dehydrated) {
+            dehydrated = false;
+            update();
+        }
+    }
+
+    /**
+     * Returns the estimated size of the rendering state of this panel.
+     *
+     * @return the estimated size in bytes, or {@code 0} if dehydrated
+     */
+    public long getRetainedSize() {
+        if (dehydrated)
+            return 0;
+
+        long htmlChars = 0;
+        for (String block : renderedBlocks)
+            htmlChars += block.length();
+        return 2 * htmlChars + DOCUMENT_BYTES_PER_CHAR * getDocument().getLength() + CODE_BLOCK_BYTES * codeBlocks.size();
+    }
+
+    /**
+     * Brings the document up to date with the given blocks in place, when the previously rendered
+     * blocks are unchanged except possibly the last one. The last block is replaced and the new
+     * blocks are appended, so the views of the remaining content are kept, together with the
+     * selection and scroll position.
+     *
+     * @param rendered the blocks currently in the document
+     * @param blocks the new blocks
+     * @return the number of blocks replaced or appended, or {@code -1} if the document needs to be rebuilt
+     */
+    private int patchDocument(List<String> rendered, List<String> blocks) {
+        if (rendered.isEmpty() || blocks.size() < rendered.size() || !(getDocument() instanceof HTMLDocument document))
+            return -1;
+
+        int common = 0;
+        while (common < rendered.size() && rendered.get(common).equals(blocks.get(common)))
+            common++;
+        if (common < rendered.size() - 1)
+            return -1;
+
+        try {
+            if (common < rendered.size()) {
+                Element last = document.getElement(blockId(common));
+                if (last == null)
+                    return -1;
+                document.setOuterHTML(last, wrapBlock(common, blocks.get(common)));
+            }
+            if (rendered.size() < blocks.size()) {
+                Element body = document.getElement(document.getDefaultRootElement(), StyleConstants.NameAttribute, HTML.Tag.BODY);
+                if (body == null)
+                    return -1;
+                for (int i = rendered.size(); i < blocks.size(); i++)
+                    document.insertBeforeEnd(body, wrapBlock(i, blocks.get(i)));
+            }
+        } catch (BadLocationException | IOException e) {
+            return -1;
+        }
+        return blocks.size() - common;
+    }
+
     private static Color linkColor() {
         return JBUI.CurrentTheme.Link.Foreground.ENABLED;
     }
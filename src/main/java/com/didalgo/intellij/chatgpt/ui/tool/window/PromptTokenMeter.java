@@ -0,0 +1,176 @@
+/*
+ * Copyright (c) 2024 Mariusz Bernacki <consulting@didalgo.com>
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.didalgo.intellij.chatgpt.ui.tool.window;
+
+import com.didalgo.gpt3.GPT3Tokenizer;
+import com.didalgo.intellij.chatgpt.ChatGptBundle;
+import com.didalgo.intellij.chatgpt.chat.*;
+import com.didalgo.intellij.chatgpt.text.TextContent;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.ui.components.JBLabel;
+import com.intellij.util.concurrency.AppExecutorUtil;
+import com.intellij.util.ui.JBUI;
+import com.intellij.util.ui.UIUtil;
+
+import javax.swing.*;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Document;
+import java.util.ArrayList;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Shows the estimated token count of the next request while the prompt is being typed: the prompt,
+ * the attachments and the conversation history as trimmed to the token budget of the model.
+ * <p>
+ * Estimations are debounced and run off the EDT. Only the lines of the prompt changed since the
+ * previous estimation are tokenized again, and attachment and history counts are cached, so
+ * estimating the prompt of a large request after an edit takes a fraction of tokenizing it.
+ */
+public class PromptTokenMeter extends JBLabel {
+
+    private static final Logger LOG = Logger.getInstance(PromptTokenMeter.class);
+
+    public static final long DEBOUNCE_MILLIS = 300;
+
+    private final Document prompt;
+    private final ChatLink chatLink;
+    private final AtomicInteger generation = new AtomicInteger();
+    private ScheduledFuture<?> pendingUpdate;
+    private volatile LineTokenCounter promptCounter;
+
+    /**
+     * The estimated token counts of the next request.
+     *
+     * @param promptTokens the prompt token count
+     * @param attachmentTokens the token count of text attachments
+     * @param historyTokens the token count of the conversation history before trimming
+     * @param budget the token budget of the model
+     */
+    public record Estimate(int promptTokens, int attachmentTokens, int historyTokens, TokenBudget budget) {
+
+        public int trimmedHistoryTokens() {
+            if (budget.isUnlimited())
+                return historyTokens;
+            return Math.min(historyTokens, Math.max(0, budget.inputTokens() - promptTokens - attachmentTokens));
+        }
+
+        public long totalTokens() {
+            return (long) promptTokens + attachmentTokens + trimmedHistoryTokens();
+        }
+
+        public boolean isOverBudget() {
+            return !budget.isUnlimited() && totalTokens() > budget.inputTokens();
+        }
+    }
+
+    public PromptTokenMeter(Document prompt, ChatLink chatLink) {
+        this.prompt = prompt;
+        this.chatLink = chatLink;
+        setBorder(JBUI.Borders.emptyLeft(10));
+        setVisible(false);
+        prompt.addDocumentListener(new DocumentListener() {
+            @Override
+            public void insertUpdate(DocumentEvent e) {
+                requestUpdate();
+            }
+
+            @Override
+            public void removeUpdate(DocumentEvent e) {
+                requestUpdate();
+            }
+
+            @Override
+            public void changedUpdate(DocumentEvent e) { }
+        });
+        chatLink.getInputContext().addListener(event -> requestUpdate());
+    }
+
+    /**
+     * Requests estimating the next request again, once no other request follows for
+     * {@value #DEBOUNCE_MILLIS} milliseconds. Must be called on the EDT.
+     */
+    public void requestUpdate() {
+        int updateGeneration = generation.incrementAndGet();
+        var pendingUpdate = this.pendingUpdate;
+        if (pendingUpdate != null)
+            pendingUpdate.cancel(false);
+
+        this.pendingUpdate = AppExecutorUtil.getAppScheduledExecutorService().schedule(() ->
+                TokenEstimationService.getInstance().submit(this::estimate).whenComplete((estimate, error) -> {
+                    if (error != null)
+                        LOG.warn("Unable to estimate prompt token count", error);
+                    else
+                        SwingUtilities.invokeLater(() -> {
+                            if (generation.get() == updateGeneration)
+                                showEstimate(estimate);
+                        });
+                }), DEBOUNCE_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    protected Estimate estimate() {
+        var conversation = chatLink.getConversationContext();
+        var model = conversation.getModelType();
+        var tokenizer = model.getTokenizer();
+
+        int promptTokens = getPromptCounter(tokenizer).countTokens(getPromptText());
+        int attachmentTokens = 0;
+        for (var attachment : new ArrayList<>(chatLink.getInputContext().getAttachments()))
+            attachmentTokens += countTokens(attachment, tokenizer);
+
+        int historyTokens = conversation.countHistoryTokens(model);
+        return new Estimate(promptTokens, attachmentTokens, historyTokens, conversation.getTokenBudget());
+    }
+
+    private LineTokenCounter getPromptCounter(GPT3Tokenizer tokenizer) {
+        var promptCounter = this.promptCounter;
+        if (promptCounter == null || promptCounter.getTokenizer() != tokenizer)
+            this.promptCounter = promptCounter = LineTokenCounter.of(tokenizer);
+        return promptCounter;
+    }
+
+    private String getPromptText() {
+        var text = new String[1];
+        prompt.render(() -> {
+            try {
+                text[0] = prompt.getText(0, prompt.getLength());
+            } catch (BadLocationException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        return text[0];
+    }
+
+    private static int countTokens(PromptAttachment attachment, GPT3Tokenizer tokenizer) {
+        int tokenCount = attachment.getEstimatedTokenCount(null);
+        if (tokenCount >= 0)
+            return tokenCount;
+
+        return attachment.getTextContentIfPresent()
+                .map(content -> TokenEstimationService.getInstance().countTokens(TextContent.toString(content), tokenizer))
+                .orElse(0);
+    }
+
+    protected void showEstimate(Estimate estimate) {
+        var budget = estimate.budget();
+        setText(String.format("<html><small>%s</small></html>", ChatGptBundle.message(
+                budget.isUnlimited() ? "prompt.tokens" : "prompt.tokens.max",
+                estimate.totalTokens(),
+                budget.inputTokens())));
+        setToolTipText(String.format("<html>%s</html>", ChatGptBundle.message("prompt.tokens.tooltip",
+                estimate.promptTokens(),
+                estimate.attachmentTokens(),
+                estimate.trimmedHistoryTokens(),
+                estimate.historyTokens())));
+        setForeground(estimate.isOverBudget() ? UIUtil.getErrorForeground() : JBUI.CurrentTheme.Label.foreground());
+
+        boolean notEmpty = estimate.promptTokens() > 0 || estimate.attachmentTokens() > 0;
+        if (isVisible() != notEmpty)
+            setVisible(notEmpty);
+    }
+}
@@ -0,0 +1,230 @@
+/*
+ * Copyright (c) 2024 Mariusz Bernacki <consulting@didalgo.com>
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.didalgo.intellij.chatgpt.ui.tool.window;
+
+import com.didalgo.intellij.chatgpt.chat.client.ChunkCoalescer;
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.components.Service;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.project.Project;
+import org.jetbrains.annotations.Nullable;
+
+import javax.swing.*;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongConsumer;
+import java.util.function.LongSupplier;
+
+/**
+ * Paces UI updates of all conversation panels of the tool window to the display frame rate.
+ * <p>
+ * Instead of every panel scheduling its own timers and {@code invokeLater} passes, panels
+ * report themselves dirty, and once per frame the scheduler applies the pending updates in a
+ * single EDT pass. The pass runs within a time budget; whatever doesn't fit is carried over to
+ * the next frame. When the EDT is lagging behind, or the passes exceed their budget, the frame
+ * period is stretched, and it shrinks back to the display frame period once the EDT recovers.
+ * This way many concurrent streams, or a busy IDE, slow down the refresh rate instead of
+ * flooding the event queue.
+ * <p>
+ * The methods of this class may be called from any thread.
+ */
+@Service(Service.Level.PROJECT)
+public final class RenderScheduler implements Disposable {
+
+    private static final Logger LOG = Logger.getInstance(RenderScheduler.class);
+
+    /** The longest frame period the scheduler slows down to under load. */
+    static final long MAX_FRAME_PERIOD_NANOS = TimeUnit.MILLISECONDS.toNanos(250);
+
+    /**
+     * A component whose pending updates are applied by the scheduler.
+     */
+    @FunctionalInterface
+    public interface Renderable {
+
+        /**
+         * Applies the pending updates of the component. Called on the EDT.
+         */
+        void renderPending();
+    }
+
+    private final long baseFramePeriod;
+    private final long frameBudget;
+    private final LongSupplier nanoClock;
+    private final Timer timer;
+    private final LongConsumer frameTrigger;
+    private final Queue<Runnable> tasks = new ArrayDeque<>();
+    private final Set<Renderable> dirty = new LinkedHashSet<>();
+    private final Set<JComponent> invalid = new LinkedHashSet<>();
+    private long framePeriod;
+    private long frameScheduledAt;
+    private boolean frameScheduled;
+    private boolean disposed;
+
+    public RenderScheduler() {
+        this(ChunkCoalescer.getDisplayFramePeriod().toNanos(), System::nanoTime, null);
+    }
+
+    /**
+     * Creates the scheduler with the given clock and frame trigger.
+     *
+     * @param baseFramePeriod the display frame period in nanoseconds
+     * @param nanoClock the clock measuring frame times
+     * @param frameTrigger the action scheduling {@link #renderFrame()} after the given number of
+     *                     nanoseconds, or {@code null} to schedule frames with a Swing timer
+     */
+    RenderScheduler(long baseFramePeriod, LongSupplier nanoClock, @Nullable LongConsumer frameTrigger) {
+        this.baseFramePeriod = baseFramePeriod;
+        this.frameBudget = baseFramePeriod / 2;
+        this.framePeriod = baseFramePeriod;
+        this.nanoClock = nanoClock;
+        this.timer = new Timer(toMillis(framePeriod), __ -> renderFrame());
+        this.timer.setRepeats(false);
+        this.frameTrigger = (frameTrigger != null) ? frameTrigger : delay -> {
+            timer.setInitialDelay(toMillis(delay));
+            timer.restart();
+        };
+    }
+
+    public static RenderScheduler getInstance(Project project) {
+        return project.getService(RenderScheduler.class);
+    }
+
+    /**
+     * Marks the given component as having pending updates, to be applied in the next frame.
+     *
+     * @param target the component
+     */
+    public void requestRender(Renderable target) {
+        synchronized (this) {
+            if (disposed || !dirty.add(target))
+                return;
+        }
+        scheduleFrame();
+    }
+
+    /**
+     * Runs the given task on the EDT in the next frame, before pending updates are applied.
+     *
+     * @param task the task, typically changing the component hierarchy
+     */
+    public void invokeInFrame(Runnable task) {
+        synchronized (this) {
+            if (disposed)
+                return;
+            tasks.add(task);
+        }
+        scheduleFrame();
+    }
+
+    /**
+     * Revalidates and repaints the given component at the end of the next frame,
+     * once per frame no matter how many times requested.
+     *
+     * @param component the component
+     */
+    public void requestLayout(JComponent component) {
+        synchronized (this) {
+            if (disposed || !invalid.add(component))
+                return;
+        }
+        scheduleFrame();
+    }
+
+    public synchronized long getFramePeriodNanos() {
+        return framePeriod;
+    }
+
+    private void scheduleFrame() {
+        synchronized (this) {
+            if (disposed || frameScheduled)
+                return;
+            frameScheduled = true;
+            frameScheduledAt = nanoClock.getAsLong();
+            frameTrigger.accept(framePeriod);
+        }
+    }
+
+    void renderFrame() {
+        long frameStart = nanoClock.getAsLong();
+        long lag;
+        Runnable[] pendingTasks;
+        synchronized (this) {
+            if (disposed)
+                return;
+            frameScheduled = false;
+            lag = frameStart - frameScheduledAt - framePeriod;
+            pendingTasks = tasks.toArray(Runnable[]::new);
+            tasks.clear();
+        }
+
+        for (Runnable task : pendingTasks)
+            run(task);
+
+        while (nanoClock.getAsLong() - frameStart < frameBudget) {
+            Renderable target;
+            synchronized (this) {
+                Iterator<Renderable> iter = dirty.iterator();
+                if (!iter.hasNext())
+                    break;
+                target = iter.next();
+                iter.remove();
+            }
+            run(target::renderPending);
+        }
+
+        JComponent[] invalidComponents;
+        synchronized (this) {
+            invalidComponents = invalid.toArray(JComponent[]::new);
+            invalid.clear();
+        }
+        for (JComponent component : invalidComponents) {
+            component.revalidate();
+            component.repaint();
+        }
+
+        long frameTime = nanoClock.getAsLong() - frameStart;
+        synchronized (this) {
+            adjustFramePeriod(lag, frameTime);
+            if (!frameScheduled && (!dirty.isEmpty() || !tasks.isEmpty() || !invalid.isEmpty())) {
+                frameScheduled = true;
+                frameScheduledAt = nanoClock.getAsLong();
+                frameTrigger.accept(framePeriod);
+            }
+        }
+    }
+
+    private void adjustFramePeriod(long lag, long frameTime) {
+        if (lag > framePeriod || frameTime > frameBudget)
+            framePeriod = Math.min(MAX_FRAME_PERIOD_NANOS, framePeriod * 2);
+        else if (lag < framePeriod / 4 && frameTime < frameBudget / 2)
+            framePeriod = Math.max(baseFramePeriod, framePeriod * 3 / 4);
+    }
+
+    private static void run(Runnable task) {
+        try {
+            task.run();
+        } catch (Exception e) {
+            LOG.error("Unable to render conversation update due to " + e, e);
+        }
+    }
+
+    private static int toMillis(long nanos) {
+        return (int) Math.max(1, TimeUnit.NANOSECONDS.toMillis(nanos));
+    }
+
+    @Override
+    public synchronized void dispose() {
+        disposed = true;
+        timer.stop();
+        tasks.clear();
+        dirty.clear();
+        invalid.clear();
+    }
+}
@@ -5,14 +5,17 @@
 package com.didalgo.intellij.chatgpt.ui.tool.window;
 
 import com.didalgo.intellij.chatgpt.ChatGptBundle;
+import com.didalgo.intellij.chatgpt.chat.TokenBudget;
+import com.didalgo.intellij.chatgpt.chat.metadata.ExchangeLatencyTracker;
+import com.didalgo.intellij.chatgpt.chat.metadata.ExchangeTimings;
 import com.didalgo.intellij.chatgpt.chat.metadata.ImmutableUsage;
-import com.didalgo.intellij.chatgpt.chat.models.ModelType;
 import com.intellij.icons.AllIcons;
 import com.intellij.ui.components.JBLabel;
 import org.springframework.ai.chat.metadata.Usage;
 
 import javax.swing.*;
 import java.awt.*;
+import java.util.ArrayList;
 
 public class UsagePanel extends JPanel {
 
@@ -31,11 +34,16 @@ public class UsagePanel extends JPanel {
         add(label, BorderLayout.CENTER);
     }
 
-    public void updateUsage(Usage usage, ModelType model) {
+    public void updateUsage(Usage usage, TokenBudget budget) {
+        updateUsage(usage, budget, null);
+    }
+
+    public void updateUsage(Usage usage, TokenBudget budget, ExchangeTimings timings) {
         if (usage == null) {
             usage = ImmutableUsage.empty();
         }
-        label.setText(createLabelText(usage, model));
+        label.setText(createLabelText(usage, budget, timings));
+        label.setToolTipText(createToolTipText(budget, timings));
 
         boolean notEmpty = usage.getTotalTokens() != null && !Long.valueOf(0L).equals(usage.getTotalTokens());
         if (isVisible() != notEmpty) {
@@ -48,18 +56,54 @@ public class UsagePanel extends JPanel {
     }
 
     private JBLabel createLabel() {
-        return new JBLabel(createLabelText(ImmutableUsage.empty(), null));
+        return new JBLabel(createLabelText(ImmutableUsage.empty(), null, null));
     }
 
-    protected String createLabelText(Usage usage, ModelType model) {
-        int inputTokenLimit = (model == null) ? Integer.MAX_VALUE : model.getInputTokenLimit();
-        return String.format("<html><small>%s</small></html>",
-                ChatGptBundle.message(
-                        (inputTokenLimit == Integer.MAX_VALUE) ? "usage.in.out" : "usage.in.out.max",
-                        usage.getPromptTokens(),
-                        usage.getGenerationTokens(),
-                        inputTokenLimit
-                )
+    protected String createLabelText(Usage usage, TokenBudget budget, ExchangeTimings timings) {
+        int inputTokenLimit = (budget == null || budget.isUnlimited()) ? Integer.MAX_VALUE : budget.inputTokens();
+        String text = ChatGptBundle.message(
+                (inputTokenLimit == Integer.MAX_VALUE) ? "usage.in.out" : "usage.in.out.max",
+                usage.getPromptTokens(),
+                usage.getGenerationTokens(),
+                inputTokenLimit
         );
+        if (timings != null) {
+            text += ChatGptBundle.message("usage.timings",
+                    String.format("%.1f", timings.timeToFirstToken().toMillis() / 1000.0),
+                    Math.round(timings.tokensPerSecond()));
+        }
+        return String.format("<html><small>%s</small></html>", text);
+    }
+
+    protected String createToolTipText(TokenBudget budget, ExchangeTimings timings) {
+        var lines = new ArrayList<String>();
+        if (budget != null && !budget.isUnlimited()) {
+            lines.add(ChatGptBundle.message(
+                    budget.isObserved() ? "usage.budget.observed" : "usage.budget.default",
+                    budget.contextTokens(),
+                    budget.inputTokens(),
+                    budget.outputTokens(),
+                    budget.observedReplies()
+            ));
+        }
+        if (timings != null) {
+            lines.add(ChatGptBundle.message("usage.timings.tooltip",
+                    timings.timeToFirstToken().toMillis(),
+                    timings.totalTime().toMillis(),
+                    timings.chunkCount(),
+                    timings.meanChunkGap().toMillis(),
+                    timings.maxChunkGap().toMillis(),
+                    Math.round(timings.tokensPerSecond())
+            ));
+            ExchangeLatencyTracker.getInstance().getModelLatency(timings.modelId()).ifPresent(latency ->
+                    lines.add(ChatGptBundle.message("usage.timings.model.tooltip",
+                            latency.timeToFirstTokenMillis().size(),
+                            timings.modelId(),
+                            latency.timeToFirstTokenMillis().percentile(0.5),
+                            latency.timeToFirstTokenMillis().percentile(0.9),
+                            latency.maxChunkGapMillis().percentile(0.9)
+                    )));
+        }
+        return lines.isEmpty() ? null : String.format("<html>%s</html>", String.join("<br><br>", lines));
     }
 }
@@ -0,0 +1,267 @@
+/*
+ * Copyright (c) 2024 Mariusz Bernacki <consulting@didalgo.com>
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.didalgo.intellij.chatgpt.ui.tool.window;
+
+import com.intellij.util.ui.JBUI;
+
+import javax.swing.*;
+import javax.swing.event.ChangeListener;
+import java.awt.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * A vertical list of conversation items, which realizes only the items in the visible part of
+ * the enclosing viewport, plus a margin above and below.
+ * <p>
+ * Items outside that window are not part of the component hierarchy at all: they're represented
+ * only by their height, cached from the last time they were laid out, or estimated from the average
+ * height of other items if they've never been. Appending an item takes constant time, and layout
+ * and painting cost depends on the number of visible items rather than on the length of the chat.
+ */
+public class VirtualConversationList extends JPanel implements Scrollable {
+
+    static final int DEFAULT_ITEM_HEIGHT = 120;
+
+    private final List<Item> items = new ArrayList<>();
+    /** The {@code [i]} element is the top offset of the i-th item; valid up to {@link #validOffsets} inclusive. */
+    private int[] offsets = new int[16];
+    private int validOffsets;
+    private int realizedFrom, realizedTo;
+    private long measuredHeightSum;
+    private int measuredCount;
+    private final ChangeListener viewportListener = __ -> viewportChanged();
+    private Listener listener = new Listener() { };
+
+    /**
+     * Receives notifications about items entering and leaving the component hierarchy.
+     */
+    public interface Listener {
+
+        /** Called when the item is about to be laid out, after entering the realized window. */
+        default void itemShown(JComponent item) { }
+
+        /** Called when the item leaves the realized window. */
+        default void itemHidden(JComponent item) { }
+
+        /** Called when the item is removed from the list. */
+        default void itemRemoved(JComponent item) { }
+    }
+
+    private static final class Item {
+        final JComponent component;
+        int height;
+        boolean measured;
+
+        Item(JComponent component, int height) {
+            this.component = component;
+            this.height = height;
+        }
+    }
+
+    public VirtualConversationList() {
+        super(null);
+    }
+
+    public void setListener(Listener listener) {
+        this.listener = requireNonNull(listener, "listener");
+    }
+
+    public void addItem(JComponent component) {
+        int index = items.size();
+        items.add(new Item(component, estimateItemHeight()));
+        if (offsets.length < items.size() + 1)
+            offsets = Arrays.copyOf(offsets, offsets.length * 2);
+        if (validOffsets == index) {
+            offsets[index + 1] = offsets[index] + items.get(index).height;
+            validOffsets = index + 1;
+        }
+
+        revalidate();
+        repaint();
+    }
+
+    public void removeAllItems() {
+        removeAll();
+        for (Item item : items)
+            listener.itemRemoved(item.component);
+        items.clear();
+        validOffsets = 0;
+        realizedFrom = realizedTo = 0;
+        measuredHeightSum = 0;
+        measuredCount = 0;
+        revalidate();
+        repaint();
+    }
+
+    public int getItemCount() {
+        return items.size();
+    }
+
+    public JComponent getItem(int index) {
+        return items.get(index).component;
+    }
+
+    private int estimateItemHeight() {
+        return (measuredCount > 0) ? (int) (measuredHeightSum / measuredCount) : JBUI.scale(DEFAULT_ITEM_HEIGHT);
+    }
+
+    private int offsetOf(int index) {
+        for (int i = validOffsets; i < index; i++)
+            offsets[i + 1] = offsets[i] + items.get(i).height;
+        validOffsets = Math.max(validOffsets, index);
+        return offsets[index];
+    }
+
+    private int getTotalHeight() {
+        return offsetOf(items.size());
+    }
+
+    /**
+     * Returns the index of the item at the given vertical position, clamped to the valid index range.
+     */
+    private int indexAt(int y) {
+        int size = items.size();
+        offsetOf(size);
+        int low = 0, high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (offsets[mid + 1] <= y)
+                low = mid + 1;
+            else
+                high = mid;
+        }
+        return Math.min(low, Math.max(0, size - 1));
+    }
+
+    private void setItemHeight(int index, int height) {
+        Item item = items.get(index);
+        if (!item.measured) {
+            item.measured = true;
+            measuredHeightSum += height;
+            measuredCount++;
+        } else {
+            measuredHeightSum += height - item.height;
+        }
+        if (item.height != height) {
+            item.height = height;
+            validOffsets = Math.min(validOffsets, index);
+        }
+    }
+
+    private int getOverscan() {
+        return Math.max(getVisibleRect().height, JBUI.scale(DEFAULT_ITEM_HEIGHT));
+    }
+
+    private boolean isRealized(int from, int to) {
+        return from >= realizedFrom && to <= realizedTo;
+    }
+
+    @Override
+    public void doLayout() {
+        if (items.isEmpty())
+            return;
+
+        Rectangle visible = getVisibleRect();
+        int overscan = getOverscan();
+        int from = indexAt(visible.y - overscan);
+        int to = indexAt(visible.y + visible.height + overscan) + 1;
+
+        for (int i = realizedFrom; i < realizedTo; i++) {
+            if (i < from || i >= to) {
+                remove(items.get(i).component);
+                listener.itemHidden(items.get(i).component);
+            }
+        }
+        for (int i = from; i < to; i++) {
+            if (i < realizedFrom || i >= realizedTo) {
+                add(items.get(i).component);
+                listener.itemShown(items.get(i).component);
+            }
+        }
+        realizedFrom = from;
+        realizedTo = to;
+
+        int totalHeight = getTotalHeight();
+        int width = getWidth();
+        int y = offsetOf(from);
+        for (int i = from; i < to; i++) {
+            JComponent component = items.get(i).component;
+            if (component.getWidth() != width)
+                component.setSize(width, component.getHeight());
+
+            int height = component.isVisible() ? component.getPreferredSize().height : 0;
+            setItemHeight(i, height);
+            component.setBounds(0, y, width, height);
+            y += height;
+        }
+        if (getTotalHeight() != totalHeight)
+            revalidate();
+    }
+
+    private void viewportChanged() {
+        if (items.isEmpty())
+            return;
+
+        Rectangle visible = getVisibleRect();
+        int margin = getOverscan() / 2;
+        if (!isRealized(indexAt(visible.y - margin), indexAt(visible.y + visible.height + margin) + 1)) {
+            invalidate();
+            validate();
+            repaint();
+        }
+    }
+
+    @Override
+    public void addNotify() {
+        super.addNotify();
+        if (getParent() instanceof JViewport viewport)
+            viewport.addChangeListener(viewportListener);
+    }
+
+    @Override
+    public void removeNotify() {
+        if (getParent() instanceof JViewport viewport)
+            viewport.removeChangeListener(viewportListener);
+        super.removeNotify();
+    }
+
+    @Override
+    public Dimension getPreferredSize() {
+        if (isPreferredSizeSet())
+            return super.getPreferredSize();
+
+        Insets insets = getInsets();
+        return new Dimension(insets.left + insets.right, getTotalHeight() + insets.top + insets.bottom);
+    }
+
+    @Override
+    public Dimension getPreferredScrollableViewportSize() {
+        return getPreferredSize();
+    }
+
+    @Override
+    public int getScrollableUnitIncrement(Rectangle visibleRect, int orientation, int direction) {
+        return JBUI.scale(16);
+    }
+
+    @Override
+    public int getScrollableBlockIncrement(Rectangle visibleRect, int orientation, int direction) {
+        return (orientation == SwingConstants.VERTICAL) ? visibleRect.height : visibleRect.width;
+    }
+
+    @Override
+    public boolean getScrollableTracksViewportWidth() {
+        return true;
+    }
+
+    @Override
+    public boolean getScrollableTracksViewportHeight() {
+        return getParent() instanceof JViewport viewport && viewport.getHeight() > getPreferredSize().height;
+    }
+}
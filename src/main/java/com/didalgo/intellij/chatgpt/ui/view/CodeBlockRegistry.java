@@ -0,0 +1,167 @@
+/*
+ * Copyright (c) 2024 Mariusz Bernacki <consulting@didalgo.com>
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.didalgo.intellij.chatgpt.ui.view;
+
+import com.didalgo.intellij.chatgpt.util.Language;
+
+import javax.swing.text.AttributeSet;
+import javax.swing.text.Document;
+import javax.swing.text.Element;
+import javax.swing.text.StyleConstants;
+import javax.swing.text.html.HTML;
+import java.awt.*;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.WeakHashMap;
+
+/**
+ * Keeps the components of code blocks of a single message, keyed by the block index.
+ * <p>
+ * Whenever the message document is updated, Swing recreates the views of the changed elements.
+ * The registry lets a recreated code block view pick up the component of its predecessor, instead
+ * of building a new text area, action panel and syntax tokens from scratch. Accessed on the EDT only.
+ * <p>
+ * The number of code blocks within each top-level element of the document body is cached, so
+ * finding the index of a code block walks only the top-level element containing it.
+ */
+public final class CodeBlockRegistry {
+
+    private record Entry(Language language, Component component) { }
+
+    /** The number of code blocks of a top-level element, valid while the element has the given length. */
+    private record BlockCount(int length, int codeBlocks) { }
+
+    private final Map<Integer, Entry> components = new HashMap<>();
+    private final Map<Element, BlockCount> blockCounts = new WeakHashMap<>();
+
+    /**
+     * Returns the component registered for the given code block, if created for the same language.
+     *
+     * @param blockIndex the code block index
+     * @param language the code block language
+     * @return the component, or {@code null} if none
+     */
+    public Component get(int blockIndex, Language language) {
+        var entry = components.get(blockIndex);
+        return (entry != null && Objects.equals(entry.language().mimeType(), language.mimeType())) ? entry.component() : null;
+    }
+
+    public void put(int blockIndex, Language language, Component component) {
+        components.put(blockIndex, new Entry(language, component));
+    }
+
+    /**
+     * Drops the components of code blocks with index {@code count} or higher, which are no longer
+     * part of the message.
+     *
+     * @param count the number of code blocks of the message
+     */
+    public void retainBelow(int count) {
+        components.keySet().removeIf(blockIndex -> blockIndex >= count);
+    }
+
+    public int size() {
+        return components.size();
+    }
+
+    public void clear() {
+        components.clear();
+        blockCounts.clear();
+    }
+
+    /**
+     * Returns the index of the given code block element among all code blocks of its document,
+     * in document order.
+     *
+     * @param element the {@code <pre>} element
+     * @return the code block index
+     */
+    public int indexOf(Element element) {
+        Element block = element, parent;
+        while ((parent = block.getParentElement()) != null && !isBody(parent.getAttributes()))
+            block = parent;
+        if (parent == null)
+            return indexWithin(element.getDocument().getDefaultRootElement(), element);
+
+        int index = 0;
+        for (int i = 0, count = parent.getElementCount(); i < count; i++) {
+            Element child = parent.getElement(i);
+            if (child == block)
+                return index + indexWithin(block, element);
+            index += countCodeBlocksCached(child);
+        }
+        return index;
+    }
+
+    /**
+     * Returns the number of code blocks of the given document.
+     *
+     * @param document the document
+     * @return the code block count
+     */
+    public int countCodeBlocks(Document document) {
+        Element root = document.getDefaultRootElement();
+        for (int i = 0; i < root.getElementCount(); i++) {
+            Element body = root.getElement(i);
+            if (isBody(body.getAttributes())) {
+                int count = 0;
+                for (int k = 0; k < body.getElementCount(); k++)
+                    count += countCodeBlocksCached(body.getElement(k));
+                return count;
+            }
+        }
+        return countCodeBlocksWithin(root);
+    }
+
+    private int countCodeBlocksCached(Element block) {
+        int length = block.getEndOffset() - block.getStartOffset();
+        var blockCount = blockCounts.get(block);
+        if (blockCount == null || blockCount.length() != length)
+            blockCounts.put(block, blockCount = new BlockCount(length, countCodeBlocksWithin(block)));
+        return blockCount.codeBlocks();
+    }
+
+    private static int countCodeBlocksWithin(Element element) {
+        if (isCodeBlock(element.getAttributes()))
+            return 1;
+        int count = 0;
+        for (int i = 0; i < element.getElementCount(); i++)
+            count += countCodeBlocksWithin(element.getElement(i));
+        return count;
+    }
+
+    /**
+     * Returns the number of code blocks preceding the given code block element within the subtree.
+     */
+    private static int indexWithin(Element root, Element element) {
+        int offset = element.getStartOffset();
+        int index = 0;
+        var pending = new ArrayDeque<Element>();
+        pending.push(root);
+        while (!pending.isEmpty()) {
+            Element elem = pending.pop();
+            if (elem == element || elem.getStartOffset() > offset)
+                continue;
+            if (isCodeBlock(elem.getAttributes())) {
+                if (elem.getStartOffset() < offset)
+                    index++;
+                continue;
+            }
+            for (int i = elem.getElementCount() - 1; i >= 0; i--)
+                pending.push(elem.getElement(i));
+        }
+        return index;
+    }
+
+    private static boolean isBody(AttributeSet attrs) {
+        return attrs.getAttribute(StyleConstants.NameAttribute) == HTML.Tag.BODY;
+    }
+
+    public static boolean isCodeBlock(AttributeSet attrs) {
+        return attrs.getAttribute(StyleConstants.NameAttribute) == HTML.Tag.PRE;
+    }
+}
@@ -0,0 +1,46 @@
+/*
+ * Copyright (c) 2024 Mariusz Bernacki <consulting@didalgo.com>
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.didalgo.intellij.chatgpt.ui.view;
+
+import javax.swing.*;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Keeps the content panes of collapsible panels of a single message, once built.
+ * <p>
+ * The content of a collapsible panel is built only when the panel is expanded for the first time.
+ * Whenever the message document is rebuilt, the recreated panel picks up the content pane built
+ * for the collapsible block at the same position in the message and with the same title, if any,
+ * even if the content before it changed. Accessed on the EDT only.
+ */
+public final class CollapsibleContentCache {
+
+    /**
+     * Identifies the content of a collapsible panel.
+     *
+     * @param ordinal the position of the panel among all collapsible panels of the message
+     * @param title the panel title
+     */
+    public record Key(int ordinal, String title) { }
+
+    private final Map<Key, JEditorPane> contentPanes = new HashMap<>();
+
+    public JEditorPane get(Key key) {
+        return contentPanes.get(key);
+    }
+
+    public void put(Key key, JEditorPane contentPane) {
+        contentPanes.put(key, contentPane);
+    }
+
+    public int size() {
+        return contentPanes.size();
+    }
+
+    public void clear() {
+        contentPanes.clear();
+    }
+}
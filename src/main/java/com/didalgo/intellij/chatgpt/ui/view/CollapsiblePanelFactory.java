@@ -4,10 +4,12 @@
  */
 package com.didalgo.intellij.chatgpt.ui.view;
 
+import com.didalgo.intellij.chatgpt.text.TextFragment;
 import com.didalgo.intellij.chatgpt.ui.tool.window.MessageTextPanel;
 import com.didalgo.intellij.chatgpt.ui.MessageRenderer;
 import org.jdesktop.swingx.JXCollapsiblePane;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import javax.swing.*;
 import javax.swing.text.AttributeSet;
@@ -29,35 +31,45 @@ public class CollapsiblePanelFactory {
 
     @NotNull
     public static JComponentView createPanel(boolean fromUser, MessageRenderer renderer, Element elem, AttributeSet attrs) {
+        return createPanel(fromUser, renderer, elem, attrs, null);
+    }
+
+    /**
+     * Creates a collapsed panel for the given element. The content of the panel is built from the
+     * element only when the panel is expanded for the first time, and is kept in the given cache
+     * for the panels recreated for the same element on subsequent document rebuilds.
+     *
+     * @param fromUser whether the message comes from the user
+     * @param renderer the message renderer
+     * @param elem the collapsible element
+     * @param attrs the element attributes
+     * @param contentCache the cache of built content panes, or {@code null} if none
+     * @return the panel view
+     */
+    @NotNull
+    public static JComponentView createPanel(boolean fromUser, MessageRenderer renderer, Element elem, AttributeSet attrs,
+                                             @Nullable CollapsibleContentCache contentCache) {
         JXCollapsiblePane collapsiblePane = new JXCollapsiblePane();
         collapsiblePane.setCollapsed(true);
 
-        JEditorPane contentPane = new MessageTextPanel(fromUser);
-        contentPane.putClientProperty(HONOR_COLLAPSIBLE_PANELS, Boolean.FALSE);
-        // Get the content of the Element object
-        StringWriter out = new StringWriter();
-        try {
-            int startOffset = elem.getStartOffset();
-            int length = elem.getEndOffset() - startOffset;
-            renderer.getEditorKit().write(out, elem.getDocument(), elem.getStartOffset(), length);
-        } catch (IOException | BadLocationException ignore) {
-
-        }
-
-        // Set the content of the JTextPane in HTML format
-        contentPane.setContentType("text/html; charset=UTF-8");
-        contentPane.setText(out.toString());
-        contentPane.setOpaque(false);
-        contentPane.setBorder(null);
-        contentPane.setEditable(false);
+        String title = String.valueOf(attrs.getAttribute(HTML.Attribute.TITLE));
+        int ordinal = ordinalOf(elem);
+        var contentKey = new CollapsibleContentCache.Key(ordinal, title);
 
         JButton toggleButton = new JButton(collapsiblePane.getActionMap().get(JXCollapsiblePane.TOGGLE_ACTION));
-        toggleButton.setText("" + attrs.getAttribute(HTML.Attribute.TITLE));
+        toggleButton.setText(title);
         toggleButton.setOpaque(false);
         toggleButton.setEnabled(true);
         toggleButton.setFocusable(false);
+        // listeners are notified in reverse order, so the content is in place before the toggle action expands the pane
         toggleButton.addActionListener(event -> {
-            if (contentPane.getParent() == null)
+            JEditorPane contentPane = (contentCache == null) ? null : contentCache.get(contentKey);
+            if (contentPane == null) {
+                contentPane = createContentPane(fromUser, renderer, elem, ordinal);
+                if (contentCache != null)
+                    contentCache.put(contentKey, contentPane);
+            }
+            if (!SwingUtilities.isDescendingFrom(contentPane, collapsiblePane))
                 collapsiblePane.add(contentPane);
         });
 
@@ -76,4 +88,49 @@ public class CollapsiblePanelFactory {
         viewPanel.add(collapsiblePane, BorderLayout.CENTER);
         return new JComponentView(elem, viewPanel);
     }
+
+    /**
+     * Returns the position of the given collapsible element among the collapsible elements of
+     * its parent, which is the body of the message.
+     */
+    private static int ordinalOf(Element elem) {
+        Element parent = elem.getParentElement();
+        int ordinal = 0;
+        for (int i = 0, count = (parent == null) ? 0 : parent.getElementCount(); i < count; i++) {
+            Element sibling = parent.getElement(i);
+            if (sibling == elem)
+                break;
+            if ("collapsible".equals(sibling.getAttributes().getAttribute(HTML.Attribute.CLASS)))
+                ordinal++;
+        }
+        return ordinal;
+    }
+
+    /**
+     * Creates the content pane of a collapsible panel, from the source of the message if the
+     * renderer provides it, or else by writing the element back to HTML.
+     */
+    private static JEditorPane createContentPane(boolean fromUser, MessageRenderer renderer, Element elem, int ordinal) {
+        MessageTextPanel contentPane = new MessageTextPanel(fromUser);
+        contentPane.putClientProperty(HONOR_COLLAPSIBLE_PANELS, Boolean.FALSE);
+        String html = renderer.getCollapsibleContentHtml(ordinal);
+        if (html != null) {
+            contentPane.updateMessage(TextFragment.of("", html));
+        } else {
+            StringWriter out = new StringWriter();
+            try {
+                int startOffset = elem.getStartOffset();
+                int length = elem.getEndOffset() - startOffset;
+                renderer.getEditorKit().write(out, elem.getDocument(), startOffset, length);
+            } catch (IOException | BadLocationException ignore) {
+
+            }
+            contentPane.setContentType("text/html; charset=UTF-8");
+            contentPane.setText(out.toString());
+        }
+        contentPane.setOpaque(false);
+        contentPane.setBorder(null);
+        contentPane.setEditable(false);
+        return contentPane;
+    }
 }
@@ -9,8 +9,10 @@ import javax.swing.event.DocumentEvent;
 import javax.swing.text.*;
 
 import com.didalgo.intellij.chatgpt.ChatGptBundle;
+import com.didalgo.intellij.chatgpt.diagnostic.CodeViewCreationEvent;
 import com.didalgo.intellij.chatgpt.ui.action.editor.SelectedTextEditorTargetedAction;
 import com.didalgo.intellij.chatgpt.ui.action.editor.DiffAction;
+import com.didalgo.intellij.chatgpt.ui.view.rsyntaxtextarea.BackgroundSyntaxHighlighter;
 import com.didalgo.intellij.chatgpt.ui.view.rsyntaxtextarea.RSyntaxTextAreaUIEx;
 import com.didalgo.intellij.chatgpt.util.Language;
 import com.intellij.icons.AllIcons.Actions;
@@ -55,10 +57,16 @@ public class RSyntaxTextAreaView extends ComponentView {
     private static Theme defaultTheme;
 
     private Language language;
+    private final CodeBlockRegistry codeBlocks;
 
     public RSyntaxTextAreaView(Element element, Language language) {
+        this(element, language, null);
+    }
+
+    public RSyntaxTextAreaView(Element element, Language language, CodeBlockRegistry codeBlocks) {
         super(element);
         this.language = language;
+        this.codeBlocks = codeBlocks;
     }
 
     @Override
@@ -87,7 +95,17 @@ public class RSyntaxTextAreaView extends ComponentView {
 
     protected void updateText(RTextScrollPane scrollPane, RSyntaxTextArea textArea) {
         try {
-            textArea.setText(getText());
+            String text = getText();
+            String currentText = textArea.getText();
+            if (text.equals(currentText))
+                return;
+
+            BackgroundSyntaxHighlighter.configureFor(textArea, text);
+            // a growing code block gets only the appended text, keeping the syntax tokens of the previous lines
+            if (!currentText.isEmpty() && text.startsWith(currentText))
+                textArea.append(text.substring(currentText.length()));
+            else
+                BackgroundSyntaxHighlighter.setText(textArea, text);
         } catch (BadLocationException e) {
             e.printStackTrace();
         }
@@ -105,13 +123,73 @@ public class RSyntaxTextAreaView extends ComponentView {
 
     @Override
     protected Component createComponent() {
+        var jfrEvent = new CodeViewCreationEvent();
+        jfrEvent.begin();
         try {
-            return createComponent0();
+            int blockIndex = (codeBlocks == null) ? -1 : codeBlocks.indexOf(getElement());
+            Component component = reuseComponent(blockIndex);
+            boolean reused = (component != null);
+            if (!reused) {
+                component = createComponent0();
+                if (codeBlocks != null)
+                    codeBlocks.put(blockIndex, language, component);
+            }
+            if (jfrEvent.shouldCommit() && component instanceof RTextScrollPane scrollPane) {
+                jfrEvent.reused = reused;
+                jfrEvent.language = language.mimeType();
+                jfrEvent.chars = scrollPane.getTextArea().getDocument().getLength();
+                jfrEvent.lines = scrollPane.getTextArea().getLineCount();
+                jfrEvent.commit();
+            }
+            return component;
         } catch (RuntimeException | Error e) {
             throw e;
         }
     }
 
+    /**
+     * Takes over the component of the same code block from the view of the previous document
+     * content, bringing its text up to date.
+     *
+     * @param blockIndex the index of this code block in the document
+     * @return the reused component, or {@code null} if there's none
+     */
+    protected Component reuseComponent(int blockIndex) {
+        if (codeBlocks == null)
+            return null;
+
+        Component component = codeBlocks.get(blockIndex, language);
+        if (component instanceof CodeBlockScrollPane scrollPane && scrollPane.getTextArea() instanceof RSyntaxTextArea textArea) {
+            scrollPane.owner = this;
+            updateText(scrollPane, textArea);
+            return scrollPane;
+        }
+        return null;
+    }
+
+    /**
+     * The scroll pane of a code block, sized to the width of the view currently owning it.
+     */
+    protected static class CodeBlockScrollPane extends RTextScrollPane {
+        private RSyntaxTextAreaView owner;
+
+        protected CodeBlockScrollPane(RSyntaxTextAreaView owner, RSyntaxTextArea textArea) {
+            super(textArea);
+            this.owner = owner;
+        }
+
+        @Override
+        public Dimension getPreferredSize() {
+            Container cont = owner.getContainer();
+            if (cont != null && (getWidth() == 0 || getWidth() > cont.getWidth())) {
+                setSize(cont.getWidth(), Integer.MAX_VALUE / 2);
+                doLayout();
+                getViewport().doLayout();
+            }
+            return super.getPreferredSize();
+        }
+    }
+
     protected static class MyRSyntaxTextArea extends RSyntaxTextArea implements DataProvider {
 
         @Override
@@ -138,18 +216,7 @@ public class RSyntaxTextAreaView extends ComponentView {
         if (theme != null)
             theme.apply(textArea);
 
-        RTextScrollPane scrollPane = new RTextScrollPane(textArea) {
-            @Override
-            public Dimension getPreferredSize() {
-                Container cont = RSyntaxTextAreaView.this.getContainer();
-                if (cont != null && (getWidth() == 0 || getWidth() > cont.getWidth())) {
-                    setSize(RSyntaxTextAreaView.this.getContainer().getWidth(), Integer.MAX_VALUE / 2);
-                    doLayout();
-                    getViewport().doLayout();
-                }
-                return super.getPreferredSize();
-            }
-        };
+        RTextScrollPane scrollPane = new CodeBlockScrollPane(this, textArea);
         scrollPane.setLineNumbersEnabled(false);
         scrollPane.setVerticalScrollBarPolicy(ScrollPaneConstants.VERTICAL_SCROLLBAR_NEVER);
         scrollPane.setBorder(BorderFactory.createEmptyBorder(6, 0, 5, 0));
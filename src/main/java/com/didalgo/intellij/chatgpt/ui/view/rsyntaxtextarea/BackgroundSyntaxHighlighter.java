@@ -0,0 +1,164 @@
+/*
+ * Copyright (c) 2024 Mariusz Bernacki <consulting@didalgo.com>
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.didalgo.intellij.chatgpt.ui.view.rsyntaxtextarea;
+
+import com.didalgo.intellij.chatgpt.core.PluginExecutors;
+import com.intellij.openapi.diagnostic.Logger;
+import org.fife.ui.rsyntaxtextarea.RSyntaxDocument;
+import org.fife.ui.rsyntaxtextarea.RSyntaxTextArea;
+import org.fife.ui.rsyntaxtextarea.TokenMaker;
+import org.fife.ui.rsyntaxtextarea.TokenMakerFactory;
+import org.fife.ui.rsyntaxtextarea.modes.PlainTextTokenMaker;
+
+import javax.swing.*;
+import javax.swing.text.BadLocationException;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Sets the text of large code blocks without tokenizing it on the EDT.
+ * <p>
+ * Setting the text of an {@link RSyntaxTextArea} tokenizes every line of it synchronously, to find
+ * the state each line ends in. For code blocks of thousands of lines that freezes the UI. Instead,
+ * the text is shown at once in a document which keeps the syntax style of the text area but splits
+ * the text into plain tokens only, while a document with the actual tokenizer is filled in the
+ * background. Once ready, it replaces the plain one, together with any text appended in the meantime.
+ * <p>
+ * Read-only text areas showing large text also have code folding and occurrence marking disabled,
+ * as both parse the entire text again.
+ */
+public final class BackgroundSyntaxHighlighter {
+
+    private static final Logger LOG = Logger.getInstance(BackgroundSyntaxHighlighter.class);
+
+    /** The text length from which text is tokenized in the background. */
+    public static final int LARGE_TEXT_CHARS = 32 * 1024;
+
+    private static final String PENDING_TASK_KEY = "BackgroundSyntaxHighlighter.pendingTask";
+
+    private BackgroundSyntaxHighlighter() { }
+
+    public static boolean isLarge(CharSequence text) {
+        return text.length() >= LARGE_TEXT_CHARS;
+    }
+
+    /**
+     * Tells whether the document of the text area is still waiting for its syntax tokens.
+     *
+     * @param textArea the text area
+     * @return {@code true} if tokenization is pending
+     */
+    public static boolean isPending(RSyntaxTextArea textArea) {
+        return textArea.getDocument() instanceof PlainTokenDocument;
+    }
+
+    /**
+     * Enables code folding and occurrence marking of the text area unless it is read-only and
+     * shows large text.
+     *
+     * @param textArea the text area
+     * @param text the text shown
+     */
+    public static void configureFor(RSyntaxTextArea textArea, CharSequence text) {
+        boolean fullFeatured = textArea.isEditable() || !isLarge(text);
+        if (textArea.isCodeFoldingEnabled() != fullFeatured)
+            textArea.setCodeFoldingEnabled(fullFeatured);
+        if (textArea.getMarkOccurrences() != fullFeatured)
+            textArea.setMarkOccurrences(fullFeatured);
+    }
+
+    /**
+     * Replaces the text of the text area, tokenizing it in the background if large.
+     *
+     * @param textArea the text area
+     * @param text the new text
+     */
+    public static void setText(RSyntaxTextArea textArea, String text) {
+        setText(textArea, text, PluginExecutors.getExecutor());
+    }
+
+    static void setText(RSyntaxTextArea textArea, String text, Executor executor) {
+        cancelPending(textArea);
+        String syntaxStyle = textArea.getSyntaxEditingStyle();
+        if (!isLarge(text)) {
+            if (isPending(textArea))
+                textArea.setDocument(new RSyntaxDocument(syntaxStyle));
+            textArea.setText(text);
+            return;
+        }
+
+        var plainDocument = new PlainTokenDocument(syntaxStyle);
+        try {
+            plainDocument.insertString(0, text, null);
+        } catch (BadLocationException e) {
+            throw new IllegalStateException(e);
+        }
+        textArea.setDocument(plainDocument);
+
+        var task = new FutureTask<Void>(() -> {
+            var document = new RSyntaxDocument(syntaxStyle);
+            try {
+                document.insertString(0, text, null);
+            } catch (BadLocationException e) {
+                LOG.warn("Unable to tokenize code block", e);
+                return;
+            }
+            if (!Thread.currentThread().isInterrupted())
+                SwingUtilities.invokeLater(() -> install(textArea, plainDocument, document, text));
+        }, null);
+        textArea.putClientProperty(PENDING_TASK_KEY, task);
+        executor.execute(task);
+    }
+
+    private static void install(RSyntaxTextArea textArea, PlainTokenDocument plainDocument, RSyntaxDocument document, String text) {
+        if (textArea.getDocument() != plainDocument)
+            return;
+
+        textArea.putClientProperty(PENDING_TASK_KEY, null);
+        try {
+            // appending to a growing block may have continued meanwhile
+            int length = plainDocument.getLength();
+            if (length > text.length())
+                document.insertString(text.length(), plainDocument.getText(text.length(), length - text.length()), null);
+        } catch (BadLocationException e) {
+            LOG.warn("Unable to tokenize code block", e);
+            return;
+        }
+        textArea.setDocument(document);
+    }
+
+    private static void cancelPending(RSyntaxTextArea textArea) {
+        if (textArea.getClientProperty(PENDING_TASK_KEY) instanceof Future<?> task) {
+            task.cancel(true);
+            textArea.putClientProperty(PENDING_TASK_KEY, null);
+        }
+    }
+
+    /**
+     * A document reporting the syntax style of the text area, so installing it doesn't change the
+     * style of the text area, but only splitting the text into plain tokens.
+     */
+    private static final class PlainTokenDocument extends RSyntaxDocument {
+
+        PlainTokenDocument(String syntaxStyle) {
+            super(new PlainTokenMakerFactory(), syntaxStyle);
+        }
+    }
+
+    private static final class PlainTokenMakerFactory extends TokenMakerFactory {
+
+        @Override
+        protected TokenMaker getTokenMakerImpl(String key) {
+            return new PlainTextTokenMaker();
+        }
+
+        @Override
+        public Set<String> keySet() {
+            return Set.of();
+        }
+    }
+}
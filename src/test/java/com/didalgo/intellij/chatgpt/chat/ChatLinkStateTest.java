@@ -0,0 +1,156 @@
+/*
+ * Copyright (c) 2024 Mariusz Bernacki <consulting@didalgo.com>
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.didalgo.intellij.chatgpt.chat;
+
+import com.didalgo.gpt3.ChatFormatDescriptor;
+import com.didalgo.gpt3.GPT3Tokenizer;
+import com.didalgo.gpt3.ModelType;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.SystemMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ChatLinkStateTest {
+
+    private final ChatLinkState state = new ChatLinkState(null);
+    private final GPT3Tokenizer tokenizer = ModelType.GPT_4.getTokenizer();
+    private final ChatFormatDescriptor formatDescriptor = ModelType.GPT_4.getChatFormatDescriptor();
+
+    @Test
+    void dropOldestMessages_keeps_conversation_within_limit_untouched() {
+        var messages = conversation(5);
+        var original = List.copyOf(messages);
+
+        int removed = state.dropOldestMessagesToStayWithinTokenLimit(messages, 100_000, tokenizer, formatDescriptor);
+
+        assertEquals(0, removed);
+        assertEquals(original, messages);
+    }
+
+    @Test
+    void dropOldestMessages_removes_minimal_number_of_oldest_messages() {
+        var messages = conversation(40);
+        int tokenLimit = 400;
+
+        int removed = state.dropOldestMessagesToStayWithinTokenLimit(messages, tokenLimit, tokenizer, formatDescriptor);
+
+        assertTrue(removed > 0);
+        assertInstanceOf(SystemMessage.class, messages.get(0));
+        assertTrue(countTokens(messages) <= tokenLimit, "Conversation exceeds token limit");
+
+        var withOneMoreMessage = conversation(40);
+        withOneMoreMessage.subList(1, 1 + removed - 1).clear();
+        assertTrue(countTokens(withOneMoreMessage) > tokenLimit, "Too many messages dropped");
+    }
+
+    @Test
+    void dropOldestMessages_keeps_system_prompt_sent_as_user_message() {
+        var history = conversation(40).subList(1, 81);
+        var prompt = new UserMessage("You are a helpful assistant.");
+        var messages = new ArrayList<Message>();
+        messages.add(prompt);
+        messages.addAll(history);
+        int tokenLimit = 400;
+
+        int removed = state.dropOldestMessagesToStayWithinTokenLimit(messages, 1, tokenLimit, tokenizer, formatDescriptor);
+
+        assertTrue(removed > 0);
+        assertSame(prompt, messages.get(0));
+        assertEquals(history.subList(removed, history.size()), messages.subList(1, messages.size()));
+        assertTrue(countTokens(messages) <= tokenLimit, "Conversation exceeds token limit");
+    }
+
+    @Test
+    void dropOldestMessages_truncates_oversized_last_message_by_tokens() {
+        var messages = new ArrayList<Message>(List.of(new UserMessage(largePastedFile())));
+        int tokenLimit = 200;
+
+        state.dropOldestMessagesToStayWithinTokenLimit(messages, tokenLimit, tokenizer, formatDescriptor);
+
+        int tokenCount = countTokens(messages);
+        assertTrue(tokenCount <= tokenLimit, "Conversation exceeds token limit: " + tokenCount);
+        assertTrue(tokenCount >= tokenLimit - 5, "Too much content dropped: " + tokenCount);
+        assertTrue(messages.get(0).getContent().endsWith("line 999"));
+    }
+
+    @Test
+    void dropOldestMessages_truncates_with_configured_truncation_mode() {
+        var messages = new ArrayList<Message>(List.of(new UserMessage(largePastedFile())));
+        var mode = new TruncationMode[] { TruncationMode.KEEP_HEAD };
+        state.setTruncationMode(() -> mode[0]);
+
+        state.dropOldestMessagesToStayWithinTokenLimit(messages, 200, tokenizer, formatDescriptor);
+
+        assertTrue(messages.get(0).getContent().startsWith("line 0\n"));
+        assertFalse(messages.get(0).getContent().endsWith("line 999"));
+
+        mode[0] = TruncationMode.KEEP_BOTH_ENDS;
+        messages = new ArrayList<>(List.of(new UserMessage(largePastedFile())));
+        state.dropOldestMessagesToStayWithinTokenLimit(messages, 200, tokenizer, formatDescriptor);
+
+        assertTrue(messages.get(0).getContent().startsWith("line 0\n"));
+        assertTrue(messages.get(0).getContent().endsWith("line 999"));
+    }
+
+    @Test
+    void truncate_keeps_both_ends_of_message() {
+        var counter = MessageTokenCounter.of(tokenizer, formatDescriptor);
+        var message = new UserMessage(largePastedFile());
+
+        var truncated = counter.truncate(message, 100, TruncationMode.KEEP_BOTH_ENDS);
+
+        assertTrue(counter.countTokens(truncated) <= 100);
+        assertTrue(truncated.getContent().startsWith("line 0\n"));
+        assertTrue(truncated.getContent().endsWith("line 999"));
+        assertTrue(truncated.getContent().contains("[...]"));
+    }
+
+    @Test
+    void truncate_keeps_head_of_message() {
+        var counter = MessageTokenCounter.of(tokenizer, formatDescriptor);
+        var message = new UserMessage(largePastedFile());
+
+        var truncated = counter.truncate(message, 50, TruncationMode.KEEP_HEAD);
+
+        assertTrue(counter.countTokens(truncated) <= 50);
+        assertTrue(truncated.getContent().startsWith("line 0\n"));
+        assertTrue(truncated.getContent().endsWith("[...]"));
+    }
+
+    @Test
+    void message_token_counts_sum_up_to_conversation_token_count() {
+        var messages = conversation(10);
+        var counter = MessageTokenCounter.of(tokenizer, formatDescriptor);
+
+        assertEquals(countTokens(messages), counter.countTokens(messages));
+    }
+
+    private int countTokens(List<Message> messages) {
+        return ChatMessageUtils.countTokens(messages, tokenizer, formatDescriptor);
+    }
+
+    private static String largePastedFile() {
+        var buf = new StringBuilder();
+        for (int i = 0; i < 1000; i++)
+            buf.append("line ").append(i).append(i < 999 ? "\n" : "");
+        return buf.toString();
+    }
+
+    private static List<Message> conversation(int turns) {
+        var messages = new ArrayList<Message>();
+        messages.add(new SystemMessage("You are a helpful assistant."));
+        for (int i = 0; i < turns; i++) {
+            messages.add(new UserMessage("Question number " + i + " about atomics in Java?"));
+            messages.add(new AssistantMessage("Answer number " + i + ": use AtomicInteger for lock-free counters."));
+        }
+        return messages;
+    }
+}
@@ -0,0 +1,160 @@
+/*
+ * Copyright (c) 2024 Mariusz Bernacki <consulting@didalgo.com>
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.didalgo.intellij.chatgpt.chat;
+
+import com.didalgo.gpt3.ModelType;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import org.springframework.ai.chat.prompt.Prompt;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConversationCompactorTest {
+
+    private final List<Prompt> prompts = new ArrayList<>();
+
+    private final ChatModel stubChatModel = new ChatModel() {
+        @Override
+        public ChatResponse call(Prompt prompt) {
+            prompts.add(prompt);
+            return new ChatResponse(List.of(new Generation(" The user asked about atomics. ")));
+        }
+    };
+
+    private final ConversationCompactor compactor = new ConversationCompactor(() -> ChatClient.create(stubChatModel), () -> null, Runnable::run);
+
+    private final MessageTokenCounter tokenCounter = MessageTokenCounter.of(ModelType.GPT_4.getTokenizer(), ModelType.GPT_4.getChatFormatDescriptor());
+
+    @Test
+    void compact_summarizes_messages_with_chat_model() {
+        var messages = conversation(3);
+
+        var compaction = compactor.compact(messages.subList(0, 4));
+
+        assertEquals(1, prompts.size());
+        assertTrue(prompts.get(0).getContents().contains("User: Question 0"));
+        assertTrue(prompts.get(0).getContents().contains("Assistant: Answer 1"));
+        assertEquals(messages.subList(0, 4), compaction.summarized());
+        assertEquals(ConversationCompactor.SUMMARY_PREFIX + "The user asked about atomics.", compaction.summary().getContent());
+    }
+
+    @Test
+    void compactAsync_does_not_summarize_same_messages_twice() {
+        var messages = conversation(3);
+        var result = new AtomicReference<ConversationCompactor.Compaction>();
+
+        assertTrue(compactor.compactAsync(messages.subList(0, 2), result::set));
+        assertFalse(compactor.compactAsync(messages.subList(0, 2), result::set));
+        assertEquals(1, prompts.size());
+        assertNotNull(result.get());
+    }
+
+    @Test
+    void compact_summarizes_only_oldest_messages_fitting_input_budget() {
+        var messages = conversation(20);
+        int inputTokens = tokenCounter.countTokens(List.of(new UserMessage(ConversationCompactor.SUMMARIZE_INSTRUCTIONS)))
+                + tokenCounter.countTokens(messages.subList(0, 8));
+        var budgeted = new ConversationCompactor(() -> ChatClient.create(stubChatModel),
+                () -> new ConversationCompactor.InputBudget(inputTokens, tokenCounter), Runnable::run);
+
+        var compaction = budgeted.compact(messages.subList(0, 36));
+
+        int cut = compaction.summarized().size();
+        assertTrue(cut > 2 && cut < 36, "Unexpected cut: " + cut);
+        assertEquals(messages.subList(0, cut), compaction.summarized());
+        assertInstanceOf(AssistantMessage.class, messages.get(cut));
+        assertTrue(tokenCounter.countTokens(prompts.get(0).getInstructions()) <= inputTokens);
+        assertFalse(prompts.get(0).getContents().contains("Assistant: Answer " + (cut / 2) + "\n"));
+    }
+
+    @Test
+    void compact_truncates_messages_when_no_prefix_fits_input_budget() {
+        var messages = new ArrayList<Message>(List.of(
+                new UserMessage("line\n".repeat(5000)),
+                new AssistantMessage("Answer 0"),
+                new UserMessage("Question 1"),
+                new AssistantMessage("Answer 1")));
+        int inputTokens = 1000;
+        var budgeted = new ConversationCompactor(() -> ChatClient.create(stubChatModel),
+                () -> new ConversationCompactor.InputBudget(inputTokens, tokenCounter), Runnable::run);
+
+        var compaction = budgeted.compact(messages);
+
+        assertEquals(messages.subList(0, 3), compaction.summarized());
+        assertTrue(tokenCounter.countTokens(prompts.get(0).getInstructions()) <= inputTokens);
+        assertTrue(prompts.get(0).getContents().contains("Question 1"));
+    }
+
+    @Test
+    void compactAsync_backs_off_after_failed_summarization() {
+        var calls = new int[1];
+        var failing = new ChatModel() {
+            @Override
+            public ChatResponse call(Prompt prompt) {
+                calls[0]++;
+                throw new IllegalStateException("Rate limited");
+            }
+        };
+        var nanoTime = new long[1];
+        var backingOff = new ConversationCompactor(() -> ChatClient.create(failing), () -> null, Runnable::run, () -> nanoTime[0]);
+        var messages = conversation(3);
+
+        assertTrue(backingOff.compactAsync(messages.subList(0, 2), __ -> fail()));
+        assertEquals(1, backingOff.getFailureCount());
+        assertFalse(backingOff.compactAsync(messages.subList(0, 4), __ -> fail()));
+
+        nanoTime[0] += ConversationCompactor.INITIAL_RETRY_DELAY_NANOS;
+        assertTrue(backingOff.compactAsync(messages.subList(0, 4), __ -> fail()));
+        assertEquals(2, backingOff.getFailureCount());
+
+        nanoTime[0] += ConversationCompactor.INITIAL_RETRY_DELAY_NANOS;
+        assertFalse(backingOff.compactAsync(messages.subList(0, 4), __ -> fail()));
+        nanoTime[0] += ConversationCompactor.INITIAL_RETRY_DELAY_NANOS;
+        assertTrue(backingOff.compactAsync(messages.subList(0, 4), __ -> fail()));
+        assertEquals(3, calls[0]);
+    }
+
+    @Test
+    void findCompactionCut_leaves_history_starting_with_assistant_message() {
+        var messages = conversation(5);
+
+        int cut = ConversationCompactor.findCompactionCut(messages, 4);
+
+        assertEquals(5, cut);
+        assertInstanceOf(AssistantMessage.class, messages.get(cut));
+        assertEquals(0, ConversationCompactor.findCompactionCut(conversation(1), 4));
+    }
+
+    @Test
+    void applyCompaction_swaps_summary_into_history() {
+        var state = new ChatLinkState(null);
+        var messages = conversation(3);
+        messages.forEach(state::addChatMessage);
+
+        var compaction = compactor.compact(messages.subList(0, 3));
+
+        assertTrue(state.applyCompaction(compaction));
+        assertFalse(state.applyCompaction(compaction));
+    }
+
+    private static List<Message> conversation(int turns) {
+        var messages = new ArrayList<Message>();
+        for (int i = 0; i < turns; i++) {
+            messages.add(new UserMessage("Question " + i));
+            messages.add(new AssistantMessage("Answer " + i));
+        }
+        return messages;
+    }
+}
@@ -0,0 +1,90 @@
+package com.didalgo.intellij.chatgpt.chat;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.function.ToIntFunction;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LineTokenCounterTest {
+
+    final List<String> encodedLines = new ArrayList<>();
+    final ToIntFunction<String> encoder = line -> {
+        encodedLines.add(line);
+        return line.isBlank() ? 1 : line.strip().split(" ").length + 1;
+    };
+
+    @Test
+    void countTokens_sums_line_counts() {
+        var counter = new LineTokenCounter(null, encoder);
+
+        assertEquals(0, counter.countTokens(""));
+        assertEquals(3 + 1 + 5, counter.countTokens("Explain this:\n\nint x = 1;"));
+        assertEquals(List.of("Explain this:\n", "\n", "int x = 1;"), encodedLines);
+        assertEquals(9, counter.getTokenCount());
+    }
+
+    @Test
+    void countTokens_tokenizes_only_edited_lines() {
+        var counter = new LineTokenCounter(null, encoder);
+        counter.countTokens("first line\nsecond line\nthird line");
+        encodedLines.clear();
+
+        assertEquals(3 + 4 + 3, counter.countTokens("first line\nsecond edited line\nthird line"));
+        assertEquals(List.of("second edited line\n"), encodedLines);
+    }
+
+    @Test
+    void countTokens_retains_lines_counted_before_cancellation() {
+        var counter = new LineTokenCounter(null, encoder);
+        int[] remainingLines = { 2 };
+        Runnable checkCanceled = () -> {
+            if (remainingLines[0]-- == 0)
+                throw new CancellationException();
+        };
+        assertThrows(CancellationException.class, () -> counter.countTokens("one\ntwo\nthree", checkCanceled));
+        encodedLines.clear();
+
+        assertEquals(6, counter.countTokens("one\ntwo\nthree"));
+        assertEquals(List.of("three"), encodedLines);
+    }
+
+    @Test
+    void countTokens_tokenizes_long_line_in_cancellable_chunks() {
+        var counter = new LineTokenCounter(null, encoder);
+        String longLine = "word ".repeat(LineTokenCounter.MAX_CHUNK_LENGTH);
+        int[] checks = { 0 };
+
+        int tokenCount = counter.countTokens(longLine, () -> checks[0]++);
+
+        assertTrue(encodedLines.size() >= 5, "Long line not chunked: " + encodedLines.size());
+        assertEquals(encodedLines.size(), checks[0]);
+        assertEquals(longLine, String.join("", encodedLines));
+        assertEquals(LineTokenCounter.MAX_CHUNK_LENGTH + encodedLines.size(), tokenCount);
+    }
+
+    @Test
+    void countTokens_drops_lines_retained_from_cancelled_counts_beyond_limit() {
+        var counter = new LineTokenCounter(null, encoder);
+        var text = new StringBuilder();
+        for (int i = 0; i < LineTokenCounter.MAX_RETAINED_LINES; i++)
+            text.append("line ").append(i).append('\n');
+        counter.countTokens(text);
+        int[] remainingLines = { 2 };
+        Runnable checkCanceled = () -> {
+            if (remainingLines[0]-- == 0)
+                throw new CancellationException();
+        };
+
+        assertThrows(CancellationException.class, () -> counter.countTokens("new 0\nnew 1\nnew 2", checkCanceled));
+        encodedLines.clear();
+
+        counter.countTokens("new 1\nline 0\n");
+        assertEquals(List.of("line 0\n"), encodedLines);
+    }
+}
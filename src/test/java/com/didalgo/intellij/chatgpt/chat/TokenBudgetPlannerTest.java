@@ -0,0 +1,91 @@
+/*
+ * Copyright (c) 2024 Mariusz Bernacki <consulting@didalgo.com>
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.didalgo.intellij.chatgpt.chat;
+
+import com.didalgo.intellij.chatgpt.chat.models.AnthropicModelFamily;
+import com.didalgo.intellij.chatgpt.chat.models.StandardModel;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.messages.UserMessage;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TokenBudgetPlannerTest {
+
+    private final TokenBudgetPlanner planner = new TokenBudgetPlanner();
+
+    @Test
+    void getBudget_reserves_default_output_without_observations() {
+        var large = planner.getBudget(StandardModel.CLAUDE_3_5_SONNET, TokenBudgetPlanner.CHAT_ACTION);
+        var small = planner.getBudget(StandardModel.GPT_4, TokenBudgetPlanner.CHAT_ACTION);
+
+        assertEquals(TokenBudgetPlanner.DEFAULT_OUTPUT_TOKENS, large.outputTokens());
+        assertEquals(128000 - TokenBudgetPlanner.DEFAULT_OUTPUT_TOKENS, planner.getBudget(StandardModel.GPT_4_O, TokenBudgetPlanner.CHAT_ACTION).inputTokens());
+        assertEquals(8192 / 3, small.outputTokens());
+        assertFalse(small.isObserved());
+    }
+
+    @Test
+    void getBudget_reserves_percentile_of_observed_replies() {
+        for (int i = 1; i <= 20; i++)
+            planner.recordGeneration(StandardModel.GPT_4, TokenBudgetPlanner.CHAT_ACTION, i * 50);
+
+        var budget = planner.getBudget(StandardModel.GPT_4, TokenBudgetPlanner.CHAT_ACTION);
+
+        assertEquals(20, budget.observedReplies());
+        assertEquals((int) Math.ceil(950 * TokenBudgetPlanner.OUTPUT_HEADROOM), budget.outputTokens());
+        assertEquals(8192 - budget.outputTokens(), budget.inputTokens());
+    }
+
+    @Test
+    void getBudget_tracks_action_types_separately() {
+        for (int i = 0; i < 10; i++) {
+            planner.recordGeneration(StandardModel.GPT_4_O, "ExplainAction", 2000);
+            planner.recordGeneration(StandardModel.GPT_4_O, "FindBugAction", 400);
+        }
+
+        assertEquals(2500, planner.getBudget(StandardModel.GPT_4_O, "ExplainAction").outputTokens());
+        assertEquals(500, planner.getBudget(StandardModel.GPT_4_O, "FindBugAction").outputTokens());
+        assertEquals(2500, planner.getBudget(StandardModel.GPT_4_O, "OptimizeAction").outputTokens(),
+                "Unseen action type should fall back to model-wide statistics");
+    }
+
+    @Test
+    void getBudget_keeps_minimal_output_reservation() {
+        for (int i = 0; i < 10; i++)
+            planner.recordGeneration(StandardModel.GPT_4, TokenBudgetPlanner.CHAT_ACTION, 10);
+
+        assertEquals(TokenBudgetPlanner.MIN_OUTPUT_TOKENS, planner.getBudget(StandardModel.GPT_4, TokenBudgetPlanner.CHAT_ACTION).outputTokens());
+    }
+
+    @Test
+    void getBudget_reserves_at_least_max_tokens_sent_with_requests() {
+        for (int i = 0; i < 10; i++)
+            planner.recordGeneration(StandardModel.CLAUDE_3_5_SONNET, TokenBudgetPlanner.CHAT_ACTION, 100);
+
+        var budget = planner.getBudget(StandardModel.CLAUDE_3_5_SONNET, TokenBudgetPlanner.CHAT_ACTION);
+
+        assertTrue(budget.isObserved());
+        assertEquals(AnthropicModelFamily.MAX_OUTPUT_TOKENS, budget.outputTokens());
+        assertTrue(budget.inputTokens() + budget.outputTokens() <= budget.contextTokens());
+    }
+
+    @Test
+    void getBudget_keeps_safety_margin_for_approximate_token_counts() {
+        var claude = planner.getBudget(StandardModel.CLAUDE_3_5_SONNET, TokenBudgetPlanner.CHAT_ACTION);
+        var gemini = planner.getBudget(StandardModel.GEMINI_1_5_FLASH_LATEST, TokenBudgetPlanner.CHAT_ACTION);
+
+        assertEquals((int) ((200000 - 4096) / (1 + TokenBudgetPlanner.APPROXIMATE_TOKENIZER_MARGIN)), claude.inputTokens());
+        assertEquals((int) ((1048576 - 4096) / (1 + TokenBudgetPlanner.APPROXIMATE_TOKENIZER_MARGIN)), gemini.inputTokens());
+    }
+
+    @Test
+    void withActionType_tags_user_message() {
+        var message = TokenBudgetPlanner.withActionType(new UserMessage("Explain this code"), "ExplainAction");
+
+        assertEquals("Explain this code", message.getContent());
+        assertEquals("ExplainAction", TokenBudgetPlanner.getActionType(message));
+        assertEquals(TokenBudgetPlanner.CHAT_ACTION, TokenBudgetPlanner.getActionType(new UserMessage("Hello")));
+    }
+}
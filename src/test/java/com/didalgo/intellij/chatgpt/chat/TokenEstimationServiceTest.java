@@ -0,0 +1,91 @@
+package com.didalgo.intellij.chatgpt.chat;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import java.util.function.ToIntFunction;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.fail;
+
+class TokenEstimationServiceTest {
+
+    final Object tokenizer = new Object();
+    final AtomicInteger encodeCount = new AtomicInteger();
+    final ToIntFunction<String> encoder = text -> {
+        encodeCount.incrementAndGet();
+        return text.split(" ").length;
+    };
+
+    @Test
+    void countTokens_encodes_same_text_once() {
+        var service = new TokenEstimationService(Runnable::run);
+        String text = "public class Foo { int bar; }";
+
+        assertEquals(7, service.countTokens(text, tokenizer, encoder));
+        assertEquals(7, service.countTokens(new String(text), tokenizer, encoder));
+        assertEquals(1, encodeCount.get());
+
+        service.countTokens(text, new Object(), encoder);
+        assertEquals(2, encodeCount.get());
+    }
+
+    @Test
+    void countTokens_shares_counts_in_progress_between_concurrent_requests() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            var service = new TokenEstimationService(executor);
+            var started = new CountDownLatch(1);
+            var release = new CountDownLatch(1);
+            ToIntFunction<String> slowEncoder = text -> {
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return encoder.applyAsInt(text);
+            };
+
+            var waiterThreads = new CopyOnWriteArrayList<Thread>();
+            Supplier<Integer> waiter = () -> {
+                waiterThreads.add(Thread.currentThread());
+                return service.countTokens("a b c", tokenizer, slowEncoder);
+            };
+
+            var first = service.submit(() -> service.countTokens("a b c", tokenizer, slowEncoder));
+            started.await();
+            var others = List.of(service.submit(waiter), service.submit(waiter));
+            // both requests wait for the count in progress, rather than finding it in the cache later
+            awaitWaiting(waiterThreads, 2);
+            release.countDown();
+            CompletableFuture.allOf(first, others.get(0), others.get(1)).get();
+
+            assertEquals(1, encodeCount.get());
+            assertEquals(3, (int) others.get(1).get());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Waits until the given number of threads is parked, which for the requests sharing a count
+     * in progress means waiting for its result, as the encoder is blocked in another thread.
+     */
+    static void awaitWaiting(List<Thread> threads, int count) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (threads.size() < count || !threads.stream().allMatch(thread -> thread.getState() == Thread.State.WAITING)) {
+            if (System.nanoTime() - deadline > 0)
+                fail("Requests not waiting for the count in progress: " + threads);
+            Thread.sleep(1);
+        }
+    }
+}
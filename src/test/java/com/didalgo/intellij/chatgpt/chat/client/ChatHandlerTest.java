@@ -0,0 +1,111 @@
+package com.didalgo.intellij.chatgpt.chat.client;
+
+import com.didalgo.gpt3.GPT3Tokenizer;
+import com.didalgo.intellij.chatgpt.chat.ChatLink;
+import com.didalgo.intellij.chatgpt.chat.ChatMessageEvent;
+import com.didalgo.intellij.chatgpt.chat.ChatMessageListener;
+import com.didalgo.intellij.chatgpt.chat.ConversationContext;
+import com.didalgo.intellij.chatgpt.chat.TokenBudgetPlanner;
+import com.didalgo.intellij.chatgpt.chat.metadata.ExchangeLatencyTracker;
+import com.didalgo.intellij.chatgpt.chat.metadata.ExchangeTimings;
+import com.didalgo.intellij.chatgpt.chat.models.ModelType;
+import com.intellij.openapi.application.Application;
+import com.intellij.openapi.application.ApplicationManager;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.MockedStatic;
+import org.reactivestreams.Subscription;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import org.springframework.ai.chat.prompt.Prompt;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.*;
+
+class ChatHandlerTest {
+
+    final ChatMessageListener listener = mock(ChatMessageListener.class);
+    final ConversationContext ctx = mock(ConversationContext.class);
+    final ExchangeLatencyTracker latencyTracker = new ExchangeLatencyTracker();
+    MockedStatic<ApplicationManager> applicationManager;
+
+    @BeforeEach
+    void setUp() {
+        var application = mock(Application.class);
+        when(application.getService(TokenBudgetPlanner.class)).thenReturn(new TokenBudgetPlanner());
+        when(application.getService(ExchangeLatencyTracker.class)).thenReturn(latencyTracker);
+        applicationManager = mockStatic(ApplicationManager.class);
+        applicationManager.when(ApplicationManager::getApplication).thenReturn(application);
+
+        var tokenizer = mock(GPT3Tokenizer.class);
+        when(tokenizer.encode(anyString())).thenReturn(List.of(1, 2, 3));
+        var modelType = mock(ModelType.class);
+        when(modelType.id()).thenReturn("o1");
+        when(modelType.getTokenizer()).thenReturn(tokenizer);
+        when(ctx.getModelType()).thenReturn(modelType);
+    }
+
+    @AfterEach
+    void tearDown() {
+        applicationManager.close();
+    }
+
+    ChatHandler.ChatCompletionHandler startExchange() {
+        var handler = new ChatHandler.ChatCompletionHandler(listener, new ChunkCoalescer.Options(Duration.ofMinutes(1), 1024));
+        var initiating = ChatMessageEvent.starting(mock(ChatLink.class), new UserMessage("Write code"))
+                .initiating(new Prompt("Write code"));
+        handler.onSubscribe(initiating).accept(mock(Subscription.class));
+        return handler;
+    }
+
+    @Test
+    void onNext_accepts_non_streamed_reply_with_code_fence() {
+        var handler = startExchange();
+        var reply = "Here you go:\n```java\nint x = 1;\n```\n";
+
+        handler.onNext().accept(new ChatResponse(List.of(new Generation(reply))));
+        handler.onComplete(ctx).run();
+
+        verify(listener, never()).responseArriving(any());
+        var arrived = ArgumentCaptor.forClass(ChatMessageEvent.ResponseArrived.class);
+        verify(listener, times(1)).responseArrived(arrived.capture());
+        assertEquals(reply, arrived.getValue().getGenerations().get(0).getOutput().getContent());
+        verify(ctx).addChatMessage(any());
+    }
+
+    @Test
+    void onComplete_records_timings_of_non_streamed_reply() {
+        var handler = startExchange();
+
+        handler.onNext().accept(new ChatResponse(List.of(new Generation("Done."))));
+        handler.onComplete(ctx).run();
+
+        var arrived = ArgumentCaptor.forClass(ChatMessageEvent.ResponseArrived.class);
+        verify(listener).responseArrived(arrived.capture());
+        var timings = ExchangeTimings.from(arrived.getValue().getResponse().getMetadata()).orElseThrow();
+        assertEquals(1, timings.chunkCount());
+        assertEquals(3, timings.generationTokens());
+        assertTrue(latencyTracker.getModelLatency("o1").isPresent());
+    }
+
+    @Test
+    void onComplete_records_timings_of_empty_streamed_reply() {
+        var handler = startExchange();
+
+        handler.onNextChunk().accept(new ChatResponse(List.of(new Generation(""))));
+        handler.onComplete(ctx).run();
+
+        var arrived = ArgumentCaptor.forClass(ChatMessageEvent.ResponseArrived.class);
+        verify(listener).responseArrived(arrived.capture());
+        assertTrue(ExchangeTimings.from(arrived.getValue().getResponse().getMetadata()).isPresent());
+        assertTrue(latencyTracker.getModelLatency("o1").isPresent());
+        verify(ctx, never()).addChatMessage(any());
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright (c) 2024 Mariusz Bernacki <consulting@didalgo.com>
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.didalgo.intellij.chatgpt.chat.client;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ChunkCoalescerTest {
+
+    private static final Duration LONG_WINDOW = Duration.ofMinutes(1);
+
+    private final List<String> flushed = new CopyOnWriteArrayList<>();
+
+    @Test
+    void pass_through_flushes_every_chunk() {
+        var coalescer = new ChunkCoalescer(ChunkCoalescer.Options.PASS_THROUGH, this::record);
+        coalescer.append("a");
+        coalescer.append("b");
+
+        assertEquals(List.of("a@0:a", "b@1:ab"), flushed);
+    }
+
+    @Test
+    void flushes_when_char_budget_exhausted() {
+        var coalescer = new ChunkCoalescer(new ChunkCoalescer.Options(LONG_WINDOW, 4), this::record);
+        coalescer.append("ab");
+        coalescer.append("cd");
+        coalescer.append("e");
+
+        assertEquals(List.of("abcd@0:abcd"), flushed);
+        assertEquals("abcde", coalescer.complete().toString());
+    }
+
+    @Test
+    void flushes_on_code_fence_split_across_chunks() {
+        var coalescer = new ChunkCoalescer(new ChunkCoalescer.Options(LONG_WINDOW, 1000), this::record);
+        coalescer.append("text `");
+        coalescer.append("``java");
+
+        assertEquals(List.of("text ```java@0:text ```java"), flushed);
+    }
+
+    @Test
+    void flushes_when_time_window_elapses() throws InterruptedException {
+        var latch = new CountDownLatch(1);
+        var coalescer = new ChunkCoalescer(new ChunkCoalescer.Options(Duration.ofMillis(10), 1000), (delta, offset, content) -> {
+            record(delta, offset, content);
+            latch.countDown();
+        });
+        coalescer.append("x");
+        coalescer.append("y");
+
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        assertEquals(List.of("xy@0:xy"), flushed);
+    }
+
+    @Test
+    void complete_drops_pending_chunks() {
+        var coalescer = new ChunkCoalescer(new ChunkCoalescer.Options(LONG_WINDOW, 1000), this::record);
+        coalescer.append("pending");
+
+        assertEquals("pending", coalescer.complete().toString());
+        coalescer.append("ignored");
+        assertTrue(flushed.isEmpty());
+    }
+
+    private void record(String delta, int offset, CharSequence content) {
+        flushed.add(delta + "@" + offset + ":" + content);
+    }
+}
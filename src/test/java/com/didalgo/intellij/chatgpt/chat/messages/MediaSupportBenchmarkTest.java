@@ -0,0 +1,103 @@
+package com.didalgo.intellij.chatgpt.chat.messages;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static com.didalgo.intellij.chatgpt.chat.messages.MediaSupportTest.OPEN_AI_LIMIT;
+import static com.didalgo.intellij.chatgpt.chat.messages.MediaSupportTest.photo;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Compares the encoding pipeline with encoding the original image both as PNG and JPEG, as done
+ * before, over a set of generated screenshots and photos of common display resolutions.
+ * Run with {@code ./gradlew benchmark}.
+ */
+@Tag("benchmark")
+class MediaSupportBenchmarkTest {
+
+    @Test
+    void benchmark_against_encoding_both_formats_at_original_resolution() throws IOException {
+        Map<String, BufferedImage> corpus = new LinkedHashMap<>();
+        for (int seed = 1; seed <= 3; seed++) {
+            corpus.put("screenshot-1920x1080-" + seed, screenshot(1920, 1080, seed));
+            corpus.put("screenshot-2880x1800-" + seed, screenshot(2880, 1800, seed));
+            corpus.put("photo-1920x1080-" + seed, photo(1920, 1080, seed));
+        }
+        // warm up writers and scaling code paths
+        for (var image : corpus.values()) {
+            legacyEncode(image);
+            MediaSupport.fromRenderedImageAsCompressedMedia(image, OPEN_AI_LIMIT);
+        }
+
+        long legacyBytes = 0, pipelineBytes = 0, legacyNanos = 0, pipelineNanos = 0;
+        var sizes = new StringBuilder();
+        for (var entry : corpus.entrySet()) {
+            long start = System.nanoTime();
+            int legacySize = legacyEncode(entry.getValue());
+            legacyNanos += System.nanoTime() - start;
+
+            start = System.nanoTime();
+            var media = MediaSupport.fromRenderedImageAsCompressedMedia(entry.getValue(), OPEN_AI_LIMIT);
+            pipelineNanos += System.nanoTime() - start;
+            int pipelineSize = ((byte[]) media.getData()).length;
+
+            sizes.append(String.format("%n%s: %d -> %d bytes", entry.getKey(), legacySize, pipelineSize));
+            legacyBytes += legacySize;
+            pipelineBytes += pipelineSize;
+        }
+        String report = String.format("Encoded %d images: %d KB in %d ms before, %d KB in %d ms now%s", corpus.size(),
+                legacyBytes / 1024, legacyNanos / 1_000_000, pipelineBytes / 1024, pipelineNanos / 1_000_000, sizes);
+        assertTrue(pipelineBytes * 2 < legacyBytes, report);
+        assertTrue(pipelineNanos < legacyNanos, report);
+    }
+
+    static int legacyEncode(BufferedImage image) throws IOException {
+        var png = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", png);
+        var jpeg = new ByteArrayOutputStream();
+        var jpegWriter = ImageIO.getImageWritersByFormatName("jpg").next();
+        var jpegWriteParam = jpegWriter.getDefaultWriteParam();
+        jpegWriteParam.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+        jpegWriteParam.setCompressionQuality(0.9f);
+        jpegWriter.setOutput(new MemoryCacheImageOutputStream(jpeg));
+        jpegWriter.write(null, new IIOImage(MediaSupport.removeAlphaChannel(image), null, null), jpegWriteParam);
+        jpegWriter.dispose();
+        return Math.min(png.size(), jpeg.size());
+    }
+
+    static BufferedImage screenshot(int width, int height, int seed) {
+        var random = new Random(seed);
+        var image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = image.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+        g.setColor(new Color(0x2B2D30));
+        g.fillRect(0, 0, width, height);
+        g.setColor(new Color(0x1E1F22));
+        g.fillRect(0, 0, width / 5, height);
+        g.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 14));
+        Color[] syntaxColors = { new Color(0xBCBEC4), new Color(0xCF8E6D), new Color(0x6AAB73), new Color(0x56A8F5) };
+        for (int y = 20; y < height; y += 18) {
+            int x = width / 5 + 10 + 16 * random.nextInt(4);
+            for (int word = random.nextInt(8); word >= 0 && x < width; word--) {
+                g.setColor(syntaxColors[random.nextInt(syntaxColors.length)]);
+                String text = Long.toString(random.nextLong() & 0xFFFFFFFL, 36);
+                g.drawString(text, x, y);
+                x += g.getFontMetrics().stringWidth(text + " ");
+            }
+        }
+        g.dispose();
+        return image;
+    }
+}
@@ -0,0 +1,115 @@
+package com.didalgo.intellij.chatgpt.chat.messages;
+
+import org.junit.jupiter.api.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MediaSupportTest {
+
+    static final ImageSizeLimit OPEN_AI_LIMIT = new ImageSizeLimit(2048, 768);
+
+    @Test
+    void imageSizeLimit_scales_to_both_sides() {
+        assertEquals(1.0, OPEN_AI_LIMIT.scaleOf(1024, 768));
+        assertEquals(0.5, OPEN_AI_LIMIT.scaleOf(3072, 1536));
+        assertEquals(0.5, OPEN_AI_LIMIT.scaleOf(4096, 600));
+        assertEquals(1.0, ImageSizeLimit.NONE.scaleOf(10000, 10000));
+    }
+
+    @Test
+    void fromRenderedImageAsCompressedMedia_picks_png_for_flat_images_and_jpeg_for_photos() throws IOException {
+        var screenshot = MediaSupport.fromRenderedImageAsCompressedMedia(flatImage(1280, 800), OPEN_AI_LIMIT);
+        var photo = MediaSupport.fromRenderedImageAsCompressedMedia(photo(1280, 800, 1), OPEN_AI_LIMIT);
+
+        assertEquals("png", screenshot.getMimeType().getSubtype());
+        assertEquals("jpeg", photo.getMimeType().getSubtype());
+        var decoded = ImageIO.read(new ByteArrayInputStream((byte[]) screenshot.getData()));
+        assertEquals(768, decoded.getHeight());
+        assertEquals(1280 * 768 / 800, decoded.getWidth(), 1);
+    }
+
+    @Test
+    void encode_aborts_once_output_exceeds_smallest_size() {
+        var image = photo(640, 480, 2);
+        var smallestSize = new AtomicLong(1000);
+
+        assertNull(MediaSupport.encode(image, MediaSupport.ImageFormat.PNG, smallestSize));
+        assertEquals(1000, smallestSize.get());
+    }
+
+    @Test
+    void readImageSubsampled_skips_pixels_of_images_larger_than_twice_the_bounds() throws IOException {
+        var large = MediaSupport.readImageSubsampled(png(flatImage(1600, 1200)), 100, 100);
+        var small = MediaSupport.readImageSubsampled(png(flatImage(150, 100)), 100, 100);
+
+        assertEquals(200, large.getWidth());
+        assertEquals(150, large.getHeight());
+        assertEquals(150, small.getWidth());
+        assertEquals(100, small.getHeight());
+    }
+
+    @Test
+    void readImageSubsampled_rejects_unsupported_data() {
+        assertThrows(IOException.class, () -> MediaSupport.readImageSubsampled(new byte[] { 1, 2, 3, 4 }, 100, 100));
+    }
+
+    @Test
+    void resizeImage_scales_down_in_steps_to_fit_bounds_keeping_aspect_ratio() {
+        var opaque = MediaSupport.resizeImage(photo(1600, 1200, 3), 100, 100);
+        var transparent = MediaSupport.resizeImage(flatImage(1000, 250), 300, 300);
+
+        assertEquals(100, opaque.getWidth());
+        assertEquals(75, opaque.getHeight());
+        assertEquals(BufferedImage.TYPE_INT_RGB, opaque.getType());
+        assertEquals(300, transparent.getWidth());
+        assertEquals(75, transparent.getHeight());
+        assertEquals(BufferedImage.TYPE_INT_ARGB, transparent.getType());
+    }
+
+    @Test
+    void resizeImage_returns_image_already_within_bounds() {
+        var image = photo(80, 60, 4);
+
+        assertSame(image, MediaSupport.resizeImage(image, 100, 100));
+    }
+
+    static byte[] png(BufferedImage image) throws IOException {
+        var out = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", out);
+        return out.toByteArray();
+    }
+
+    static BufferedImage flatImage(int width, int height) {
+        var image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = image.createGraphics();
+        g.setColor(new Color(0x2B2D30));
+        g.fillRect(0, 0, width, height);
+        g.setColor(new Color(0x3574F0));
+        g.fillRect(width / 4, height / 4, width / 2, height / 2);
+        g.dispose();
+        return image;
+    }
+
+    static BufferedImage photo(int width, int height, int seed) {
+        var random = new Random(seed);
+        var image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int r = (x * 255 / width + random.nextInt(24)) & 0xFF;
+                int g = (y * 255 / height + random.nextInt(24)) & 0xFF;
+                int b = ((x + y) * 127 / (width + height) + random.nextInt(24)) & 0xFF;
+                image.setRGB(x, y, (r << 16) | (g << 8) | b);
+            }
+        }
+        return image;
+    }
+}
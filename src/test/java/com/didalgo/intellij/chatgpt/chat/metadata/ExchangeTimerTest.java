@@ -0,0 +1,65 @@
+/*
+ * Copyright (c) 2024 Mariusz Bernacki <consulting@didalgo.com>
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.didalgo.intellij.chatgpt.chat.metadata;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ExchangeTimerTest {
+
+    private final AtomicLong clock = new AtomicLong();
+    private final ExchangeTimer timer = new ExchangeTimer(clock::get);
+
+    @Test
+    void completed_measures_first_token_chunk_gaps_and_throughput() {
+        timer.subscribed();
+        advanceMillis(800);
+        timer.chunkArrived();
+        advanceMillis(100);
+        timer.chunkArrived();
+        advanceMillis(300);
+        timer.chunkArrived();
+        advanceMillis(600);
+
+        var timings = timer.completed("gpt-4o", 100);
+
+        assertEquals("gpt-4o", timings.modelId());
+        assertEquals(Duration.ofMillis(800), timings.timeToFirstToken());
+        assertEquals(Duration.ofMillis(1800), timings.totalTime());
+        assertEquals(Duration.ofMillis(200), timings.meanChunkGap());
+        assertEquals(Duration.ofMillis(300), timings.maxChunkGap());
+        assertEquals(3, timings.chunkCount());
+        assertEquals(100.0, timings.tokensPerSecond(), 1e-9);
+    }
+
+    @Test
+    void tokensPerSecond_of_single_chunk_response_includes_waiting_time() {
+        timer.subscribed();
+        advanceMillis(2000);
+        timer.chunkArrived();
+
+        assertEquals(50.0, timer.completed("o1", 100).tokensPerSecond(), 1e-9);
+    }
+
+    @Test
+    void histogram_percentiles_follow_rolling_window() {
+        var histogram = new LatencyHistogram(4);
+        for (long value : new long[] { 1000, 1000, 10, 10, 10, 10 })
+            histogram.record(value);
+
+        assertEquals(4, histogram.size());
+        assertEquals(15, histogram.percentile(0.9));
+        assertEquals(-1, new LatencyHistogram(1).percentile(0.5));
+    }
+
+    private void advanceMillis(long millis) {
+        clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(millis));
+    }
+}
@@ -0,0 +1,41 @@
+/*
+ * Copyright (c) 2024 Mariusz Bernacki <consulting@didalgo.com>
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.didalgo.intellij.chatgpt.chat.models;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TokenizerRegistryTest {
+
+    private final TokenizerRegistry registry = TokenizerRegistry.getInstance();
+
+    @Test
+    void getTokenizer_is_memoized_per_model() {
+        var model = new CustomModel("llama3", ModelFamily.OLLAMA, 8192);
+
+        assertSame(registry.getTokenizer(model), registry.getTokenizer(model));
+        assertSame(registry.getTokenizer(model), registry.getTokenizer(new CustomModel("llama3", ModelFamily.OLLAMA, 8192)));
+        assertSame(registry.getChatFormatDescriptor(model), registry.getChatFormatDescriptor(model));
+    }
+
+    @Test
+    void getTokenizer_approximates_unknown_models_with_default_tokenizer() {
+        var defaultTokenizer = registry.getTokenizer(StandardModel.GPT_4);
+
+        assertSame(defaultTokenizer, registry.getTokenizer(StandardModel.CLAUDE_3_5_SONNET));
+        assertSame(defaultTokenizer, registry.getTokenizer(StandardModel.GEMINI_1_5_PRO_LATEST));
+        assertSame(defaultTokenizer, registry.getTokenizer(new CustomModel("no-such-model", ModelFamily.OPEN_AI, 4096)));
+    }
+
+    @Test
+    void warmUp_loads_tokenizers_with_given_executor() {
+        registry.warmUp(List.of(StandardModel.GPT_3_5_TURBO), Runnable::run);
+
+        assertEquals(1, StandardModel.GPT_3_5_TURBO.getTokenizer().encode("hello").size());
+    }
+}
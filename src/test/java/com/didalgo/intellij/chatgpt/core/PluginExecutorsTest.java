@@ -0,0 +1,75 @@
+package com.didalgo.intellij.chatgpt.core;
+
+import com.intellij.testFramework.junit5.TestApplication;
+import com.intellij.util.concurrency.AppExecutorUtil;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+
+import java.util.concurrent.ExecutorService;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+@TestApplication
+class PluginExecutorsTest {
+
+    static final boolean VIRTUAL_THREADS_SUPPORTED = Runtime.version().feature() >= 21;
+
+    static boolean isVirtual(Thread thread) throws ReflectiveOperationException {
+        return (Boolean) Thread.class.getMethod("isVirtual").invoke(thread);
+    }
+
+    @Test
+    void createVirtualThreadExecutor_returns_null_when_disabled_or_on_older_runtime() {
+        assertNull(PluginExecutors.createVirtualThreadExecutor(false, Runtime.version().feature()));
+        assertNull(PluginExecutors.createVirtualThreadExecutor(true, 17));
+    }
+
+    @Test
+    void createVirtualThreadExecutor_falls_back_when_virtual_threads_are_missing() {
+        // on a Java 17 runtime the reflective lookup fails, even if a newer runtime is assumed
+        ExecutorService executor = PluginExecutors.createVirtualThreadExecutor(true, 21);
+        try {
+            assertEquals(VIRTUAL_THREADS_SUPPORTED, executor != null);
+        } finally {
+            if (executor != null)
+                executor.shutdown();
+        }
+    }
+
+    @Test
+    void createVirtualThreadExecutor_runs_tasks_on_named_virtual_threads() throws Exception {
+        assumeTrue(VIRTUAL_THREADS_SUPPORTED, "Virtual threads require Java 21+");
+
+        ExecutorService executor = PluginExecutors.createVirtualThreadExecutor(true, Runtime.version().feature());
+        try {
+            Thread thread = executor.submit(Thread::currentThread).get();
+
+            assertTrue(isVirtual(thread));
+            assertTrue(thread.getName().startsWith("ChatGPT-"), thread.getName());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    void getExecutor_falls_back_to_application_pool_without_virtual_threads() {
+        assertEquals(PluginExecutors.isVirtual(), PluginExecutors.getExecutor() != AppExecutorUtil.getAppExecutorService());
+        if (!VIRTUAL_THREADS_SUPPORTED)
+            assertFalse(PluginExecutors.isVirtual());
+    }
+
+    @Test
+    void getScheduler_runs_subscriptions_on_plugin_executor() throws Exception {
+        Thread caller = Thread.currentThread();
+
+        Thread thread = Mono.fromCallable(Thread::currentThread)
+                .subscribeOn(PluginExecutors.getScheduler())
+                .block();
+
+        assertNotNull(thread);
+        assertNotSame(caller, thread);
+        if (PluginExecutors.isVirtual())
+            assertTrue(isVirtual(thread));
+    }
+}
@@ -0,0 +1,24 @@
+/*
+ * Copyright (c) 2024 Mariusz Bernacki <consulting@didalgo.com>
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.didalgo.intellij.chatgpt.diagnostic;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class JfrEventsTest {
+
+    @ParameterizedTest
+    @CsvSource(delimiter = '|', value = {
+            "plain text|0",
+            "```java\\ncode\\n```|1",
+            "text\\n```\\ncode\\n```\\nmore\\n```python\\nopen|2",
+            "inline ```not a fence```|0"
+    })
+    void countCodeBlocks_counts_fenced_blocks(String markdown, int expected) {
+        assertEquals(expected, JfrEvents.countCodeBlocks(markdown.replace("\\n", "\n")));
+    }
+}
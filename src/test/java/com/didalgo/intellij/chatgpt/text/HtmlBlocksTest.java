@@ -0,0 +1,32 @@
+package com.didalgo.intellij.chatgpt.text;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class HtmlBlocksTest {
+
+    @Test
+    void split_gives_top_level_blocks_with_trailing_newlines() {
+        String html = "<p>First<br>line</p>\n<ul>\n<li><p>item</p></li>\n</ul>\n<hr />\n<p>Last</p>\n";
+
+        assertEquals(List.of("<p>First<br>line</p>\n", "<ul>\n<li><p>item</p></li>\n</ul>\n", "<hr />\n", "<p>Last</p>\n"),
+                HtmlBlocks.split(html));
+    }
+
+    @Test
+    void split_skips_unescaped_code_content() {
+        String html = "<pre><code class=\"language-java\">List<String> a = x</p>;\n</code></pre>\n<p>After</p>\n";
+
+        assertEquals(List.of("<pre><code class=\"language-java\">List<String> a = x</p>;\n</code></pre>\n", "<p>After</p>\n"),
+                HtmlBlocks.split(html));
+    }
+
+    @Test
+    void split_keeps_top_level_inline_content_in_one_block() {
+        assertEquals(List.of("plain <b>bold</b> text"), HtmlBlocks.split("plain <b>bold</b> text"));
+        assertEquals(List.of(), HtmlBlocks.split(""));
+    }
+}
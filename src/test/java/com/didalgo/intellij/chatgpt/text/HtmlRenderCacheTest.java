@@ -0,0 +1,61 @@
+package com.didalgo.intellij.chatgpt.text;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+class HtmlRenderCacheTest {
+
+    int formatCount;
+    TextFragmentFormatter formatter = fragment -> {
+        formatCount++;
+        return "<p>" + fragment.markdown() + "</p>";
+    };
+
+    @Test
+    void toHtml_formats_same_content_once() {
+        var cache = new HtmlRenderCache(formatter, 1, HtmlRenderCache.DEFAULT_MAX_BYTES);
+
+        assertEquals("<p>text</p>", cache.toHtml(TextFragment.of("text")));
+        assertEquals("<p>text</p>", cache.toHtml(TextFragment.of("text")));
+        assertEquals("<p>other</p>", cache.toHtml(TextFragment.of("other")));
+
+        assertEquals(2, formatCount);
+        var statistics = cache.getStatistics();
+        assertEquals(1, statistics.hits());
+        assertEquals(2, statistics.misses());
+        assertEquals(2, statistics.entries());
+        assertEquals(1.0 / 3, statistics.hitRate(), 1e-9);
+    }
+
+    @Test
+    void toHtml_evicts_least_recently_used_entries_beyond_size_limit() {
+        var cache = new HtmlRenderCache(formatter, 1, 1024);
+        String a = "a".repeat(150), b = "b".repeat(150), c = "c".repeat(150);
+
+        cache.toHtml(TextFragment.of(a));
+        cache.toHtml(TextFragment.of(b));
+        cache.toHtml(TextFragment.of(a));
+        cache.toHtml(TextFragment.of(c));
+        assertEquals(1, cache.getStatistics().evictions());
+
+        formatCount = 0;
+        cache.toHtml(TextFragment.of(a));
+        cache.toHtml(TextFragment.of(c));
+        assertEquals(0, formatCount);
+        cache.toHtml(TextFragment.of(b));
+        assertEquals(1, formatCount);
+    }
+
+    @Test
+    void toHtml_does_not_share_entries_between_formatter_versions() {
+        var cache = new HtmlRenderCache(formatter, 1, HtmlRenderCache.DEFAULT_MAX_BYTES);
+        var otherCache = new HtmlRenderCache(formatter, 2, HtmlRenderCache.DEFAULT_MAX_BYTES);
+
+        assertNotEquals(HtmlRenderCache.Key.of("text", 1), HtmlRenderCache.Key.of("text", 2));
+        cache.toHtml(TextFragment.of("text"));
+        otherCache.toHtml(TextFragment.of("text"));
+        assertEquals(2, formatCount);
+    }
+}
@@ -0,0 +1,79 @@
+package com.didalgo.intellij.chatgpt.text;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class IncrementalMarkdownFormatterTest {
+
+    static final String MARKDOWN = """
+            First paragraph
+            continued here.
+
+            - item one
+            - item two
+
+              still item two
+            - item three
+
+            ```java
+            class A {
+
+                int a;
+            }
+            ```
+            Closing paragraph.
+
+            1. first
+            2. second
+            """;
+
+    int formattedChars;
+    IncrementalMarkdownFormatter formatter = new IncrementalMarkdownFormatter(fragment -> {
+        formattedChars += fragment.markdown().length();
+        return "[" + fragment.markdown() + "]";
+    });
+
+    @Test
+    void format_freezes_only_blocks_which_cannot_change() {
+        String html = null;
+        for (int i = 1; i <= MARKDOWN.length(); i++)
+            html = formatter.format(MARKDOWN.substring(0, i));
+
+        assertEquals("[First paragraph\ncontinued here.\n\n- item one\n- item two\n\n  still item two\n- item three\n\n]"
+                + "[```java\nclass A {\n\n    int a;\n}\n```\n]"
+                + "[Closing paragraph.\n\n1. first\n2. second\n]", html);
+    }
+
+    @Test
+    void format_streamed_content_in_linear_time() {
+        var markdown = new StringBuilder();
+        for (int i = 0; i < 500; i++)
+            markdown.append("Paragraph ").append(i).append("\n\n");
+
+        for (int i = 1; i <= markdown.length(); i++)
+            formatter.format(markdown.substring(0, i));
+
+        assertTrue(formattedChars < 40 * markdown.length(), "formatted " + formattedChars + " chars");
+    }
+
+    @Test
+    void format_gives_same_html_as_whole_content_formatting() {
+        var htmlFormatter = new TextFragmentToHtmlFormatter();
+        var incremental = new IncrementalMarkdownFormatter(htmlFormatter);
+
+        String html = null;
+        for (int i = 1; i <= MARKDOWN.length(); i++)
+            html = incremental.format(MARKDOWN.substring(0, i));
+
+        assertEquals(htmlFormatter.format(TextFragment.of(MARKDOWN)), html);
+    }
+
+    @Test
+    void format_starts_over_when_content_is_replaced() {
+        formatter.format("Alpha\n\nBeta\n\nGamma");
+        assertEquals("[Other]", formatter.format("Other"));
+        assertEquals(0, formatter.getFrozenLength());
+    }
+}
@@ -15,4 +15,25 @@ class TextFragmentToHtmlFormatterTest {
         String actualHtml = formatter.format(fragment);
         assertEquals(expectedHtml, actualHtml);
     }
-}
\ No newline at end of file
+
+    @Test
+    void format_escapes_html_and_code_exactly_once() {
+        TextFragment fragment = TextFragment.of("Use `a<b` & <b>x</b>");
+        String expectedHtml = "<p>Use <code>a&lt;b</code> &amp; &lt;b&gt;x&lt;/b&gt;</p>\n";
+        assertEquals(expectedHtml, formatter.format(fragment));
+    }
+
+    @Test
+    void format_gives_code_block_content_verbatim() {
+        TextFragment fragment = TextFragment.of("```java\nList<String> a = \"&amp;\";\n```");
+        String expectedHtml = "<pre><code class=\"language-java\">List&lt;String&gt; a = &quot;&amp;amp;&quot;;\n</code></pre>\n";
+        assertEquals(expectedHtml, formatter.format(fragment));
+    }
+
+    @Test
+    void format_does_not_recognize_html_blocks() {
+        TextFragment fragment = TextFragment.of("<div>\nhi &amp; bye\n</div>");
+        String expectedHtml = "<p>&lt;div&gt;<br>hi &amp;amp; bye<br>&lt;/div&gt;</p>\n";
+        assertEquals(expectedHtml, formatter.format(fragment));
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright (c) 2024 Mariusz Bernacki <consulting@didalgo.com>
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.didalgo.intellij.chatgpt.text;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TextRopeTest {
+
+    private final TextRope rope = new TextRope();
+
+    @Test
+    void is_empty_initially() {
+        assertEquals(0, rope.length());
+        assertEquals("", rope.snapshot().toString());
+    }
+
+    @Test
+    void append_accumulates_content() {
+        rope.append("Hello");
+        rope.append("");
+        rope.append(", ");
+        var view = rope.append("World!");
+
+        assertEquals(13, view.length());
+        assertEquals("Hello, World!", view.toString());
+        assertEquals("Hello, World!", rope.toString());
+    }
+
+    @Test
+    void snapshot_is_not_affected_by_later_appends() {
+        rope.append("abc");
+        var snapshot = rope.snapshot();
+        rope.append("def");
+
+        assertEquals("abc", snapshot.toString());
+        assertEquals(3, snapshot.length());
+        assertEquals("abcdef", rope.snapshot().toString());
+    }
+
+    @Test
+    void older_snapshot_materializes_correctly_after_newer_one() {
+        var older = rope.append("abc");
+        var newer = rope.append("def");
+
+        assertEquals("abcdef", newer.toString());
+        assertEquals("abc", older.toString());
+    }
+
+    @Test
+    void charAt_finds_characters_across_chunks() {
+        for (int i = 0; i < 40; i++)
+            rope.append(String.valueOf((char) ('0' + i % 10)).repeat(i % 3 + 1));
+        var view = rope.snapshot();
+        var expected = view.toString();
+
+        var unmaterialized = rope.snapshot();
+        for (int i = 0; i < expected.length(); i++)
+            assertEquals(expected.charAt(i), unmaterialized.charAt(i), "at index " + i);
+        assertThrows(IndexOutOfBoundsException.class, () -> unmaterialized.charAt(expected.length()));
+    }
+}
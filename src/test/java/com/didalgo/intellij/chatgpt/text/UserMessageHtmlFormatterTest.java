@@ -0,0 +1,40 @@
+package com.didalgo.intellij.chatgpt.text;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class UserMessageHtmlFormatterTest {
+
+    UserMessageHtmlFormatter formatter = new UserMessageHtmlFormatter(new TextFragmentToHtmlFormatter().getMarkdownParser());
+
+    @Test
+    void format_wraps_code_snippets_in_collapsible_blocks() {
+        TextFragment message = TextFragment.of("Explain this\n[Selected code from src/Foo.java]\n```java\nif (a < b) {}\n```\n\nThanks");
+        String expectedHtml = "Explain this<br>"
+                + "<div class=\"collapsible\" ai-code-snippet title=\"Selected code ... Foo.java\">\n"
+                + "[Selected code from src/Foo.java]<br>```java<br>if (a &lt; b) {}<br>```"
+                + "\n</div>"
+                + "Thanks";
+        assertEquals(expectedHtml, formatter.format(message));
+    }
+
+    @Test
+    void format_keeps_plain_text_line_breaks_and_indentation() {
+        TextFragment message = TextFragment.of("Why\n  [not this]\n\tcode?");
+        assertEquals("Why<br>&nbsp;&nbsp;[not this]<br>&nbsp;&nbsp;&nbsp;&nbsp;code?", formatter.format(message));
+    }
+
+    @Test
+    void findSnippets_locates_title_line_and_code_blocks() {
+        String markdown = "Explain this\n[Selected code from src/Foo.java]\n```java\nif (a < b) {}\n```\n\n[Other]\n```\nx\n```";
+
+        var snippets = formatter.findSnippets(markdown);
+
+        assertEquals(List.of("Selected code from src/Foo.java", "Other"), snippets.stream().map(UserMessageHtmlFormatter.Snippet::title).toList());
+        assertEquals("[Selected code from src/Foo.java]\n```java\nif (a < b) {}\n```", snippets.get(0).text(markdown));
+        assertEquals("[Other]\n```\nx\n```", snippets.get(1).text(markdown));
+    }
+}
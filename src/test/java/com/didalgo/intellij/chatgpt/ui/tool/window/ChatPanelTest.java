@@ -61,6 +61,25 @@ class ChatPanelTest {
         });
     }
 
+    @ParameterizedTest
+    @EnumSource(value = AssistantType.System.class, names = "GPT_4")
+    void completed_reply_resolves_link_references_defined_after_use(AssistantType.System type) throws Throwable {
+        when(chatModel.stream(any(Prompt.class)))
+                .thenReturn(Flux.just(
+                        new ChatResponse(List.of(new Generation("See the [docs].\n\n"))),
+                        new ChatResponse(List.of(new Generation("More text.\n\n"))),
+                        new ChatResponse(List.of(new Generation("[docs]: https://example.com/docs\n")))));
+
+        var chatPanel = aChatPanel(type);
+        aUserMessage(chatPanel, "Where are the docs?");
+
+        verifyEventually(() -> {
+            var messageText = chatPanel.getConversationTurnPanel(-1).getMessageText();
+            assertTrue(messageText.markdown().endsWith("[docs]: https://example.com/docs\n"));
+            assertTrue(messageText.toHtml().contains("href=\"https://example.com/docs\""), messageText.toHtml());
+        });
+    }
+
     @TestApplication
     @Nested
     class NonStreaming {
@@ -0,0 +1,125 @@
+package com.didalgo.intellij.chatgpt.ui.tool.window;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConversationMemoryManagerTest {
+
+    final List<String> dehydrated = new ArrayList<>();
+    final ConversationMemoryManager manager = new ConversationMemoryManager(() -> 250);
+
+    @AfterEach
+    void tearDown() {
+        manager.dispose();
+    }
+
+    class FakeTurn implements ConversationMemoryManager.Dehydratable {
+        final String name;
+        final long size;
+        boolean isDehydrated;
+
+        FakeTurn(String name, long size) {
+            this.name = name;
+            this.size = size;
+        }
+
+        @Override
+        public long getRetainedSize() {
+            return isDehydrated ? 0 : size;
+        }
+
+        @Override
+        public boolean isDehydrated() {
+            return isDehydrated;
+        }
+
+        @Override
+        public void dehydrate() {
+            isDehydrated = true;
+            dehydrated.add(name);
+        }
+
+        @Override
+        public void rehydrate() {
+            isDehydrated = false;
+        }
+    }
+
+    @Test
+    void dehydrates_least_recently_viewed_hidden_turns_beyond_budget() {
+        var first = new FakeTurn("first", 100);
+        var second = new FakeTurn("second", 100);
+        var third = new FakeTurn("third", 100);
+        manager.shown(first);
+        manager.shown(second);
+        manager.hidden(second);
+        manager.hidden(first);
+        manager.shown(first);
+        manager.hidden(first);
+        assertEquals(200, manager.getRetainedSize());
+        assertEquals(List.of(), dehydrated);
+
+        manager.shown(third);
+
+        assertEquals(List.of("second"), dehydrated);
+        assertEquals(200, manager.getRetainedSize());
+
+        var fourth = new FakeTurn("fourth", 100);
+        manager.shown(fourth);
+
+        assertEquals(List.of("second", "first"), dehydrated);
+        assertEquals(200, manager.getRetainedSize());
+    }
+
+    @Test
+    void never_dehydrates_turns_in_view() {
+        var first = new FakeTurn("first", 200);
+        var second = new FakeTurn("second", 200);
+
+        manager.shown(first);
+        manager.shown(second);
+
+        assertEquals(List.of(), dehydrated);
+        assertEquals(400, manager.getRetainedSize());
+
+        manager.hidden(first);
+
+        assertEquals(List.of("first"), dehydrated);
+        assertEquals(200, manager.getRetainedSize());
+    }
+
+    @Test
+    void rehydrates_turn_coming_back_into_view() {
+        var first = new FakeTurn("first", 200);
+        var second = new FakeTurn("second", 200);
+        manager.shown(first);
+        manager.hidden(first);
+        manager.shown(second);
+        manager.hidden(second);
+        assertTrue(first.isDehydrated());
+
+        manager.shown(first);
+
+        assertFalse(first.isDehydrated());
+        assertEquals(List.of("first", "second"), dehydrated);
+        assertEquals(200, manager.getRetainedSize());
+    }
+
+    @Test
+    void removed_turns_no_longer_count_towards_budget() {
+        var first = new FakeTurn("first", 200);
+        manager.shown(first);
+        manager.hidden(first);
+
+        manager.removed(first);
+
+        assertEquals(0, manager.getRetainedSize());
+        manager.shown(new FakeTurn("second", 200));
+        assertEquals(List.of(), dehydrated);
+    }
+}
@@ -0,0 +1,60 @@
+package com.didalgo.intellij.chatgpt.ui.tool.window;
+
+import org.junit.jupiter.api.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.ExecutionException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ImageThumbnailCacheTest {
+
+    /** Room for two 50x50 thumbnails, but not for three. */
+    final ImageThumbnailCache cache = new ImageThumbnailCache(25_000, Runnable::run);
+
+    @Test
+    void getThumbnail_scales_image_down_to_bounds() throws Exception {
+        var thumbnail = cache.getThumbnail(png(400, 200, Color.RED), 50, 50).get();
+
+        assertEquals(50, thumbnail.getWidth());
+        assertEquals(25, thumbnail.getHeight());
+    }
+
+    @Test
+    void getThumbnail_evicts_least_recently_used_thumbnails_beyond_size_limit() throws Exception {
+        byte[] red = png(100, 100, Color.RED), green = png(100, 100, Color.GREEN), blue = png(100, 100, Color.BLUE);
+
+        cache.getThumbnail(red, 50, 50).get();
+        cache.getThumbnail(green, 50, 50).get();
+        assertTrue(cache.getIfPresent(red, 50, 50).isPresent());
+        cache.getThumbnail(blue, 50, 50).get();
+
+        assertTrue(cache.getIfPresent(red, 50, 50).isPresent());
+        assertTrue(cache.getIfPresent(green, 50, 50).isEmpty());
+        assertTrue(cache.getIfPresent(blue, 50, 50).isPresent());
+    }
+
+    @Test
+    void getThumbnail_fails_for_undecodable_image_and_retries_on_next_request() {
+        byte[] garbage = { 1, 2, 3, 4 };
+
+        assertThrows(ExecutionException.class, () -> cache.getThumbnail(garbage, 50, 50).get());
+        assertThrows(ExecutionException.class, () -> cache.getThumbnail(garbage, 50, 50).get());
+        assertTrue(cache.getIfPresent(garbage, 50, 50).isEmpty());
+    }
+
+    static byte[] png(int width, int height, Color color) throws IOException {
+        var image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = image.createGraphics();
+        g.setColor(color);
+        g.fillRect(0, 0, width, height);
+        g.dispose();
+        var out = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", out);
+        return out.toByteArray();
+    }
+}
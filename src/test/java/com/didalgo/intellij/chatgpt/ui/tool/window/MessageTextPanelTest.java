@@ -0,0 +1,126 @@
+package com.didalgo.intellij.chatgpt.ui.tool.window;
+
+import com.didalgo.intellij.chatgpt.text.TextFragment;
+import com.didalgo.intellij.chatgpt.text.UserMessageHtmlFormatter;
+import com.intellij.testFramework.junit5.TestApplication;
+import org.fife.ui.rsyntaxtextarea.RSyntaxTextArea;
+import org.junit.jupiter.api.Test;
+
+import javax.swing.*;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.text.BadLocationException;
+import java.awt.*;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@TestApplication
+class MessageTextPanelTest {
+
+    static final String SNIPPET_MESSAGE = "Explain this\n[Selected code]\n```java\n  if (a < b) {}\n```\n";
+
+    @Test
+    void expanded_snippet_keeps_line_breaks() throws Exception {
+        SwingUtilities.invokeAndWait(() -> {
+            var panel = userMessagePanel("Intro\n\n" + SNIPPET_MESSAGE);
+
+            assertEquals("[Selected code]<br>```java<br>&nbsp;&nbsp;if (a &lt; b) {}<br>```",
+                    panel.getCollapsibleContentHtml(0));
+            assertNull(panel.getCollapsibleContentHtml(1));
+
+            descendants(panel, JButton.class).get(0).doClick(0);
+            var contentPane = descendants(panel, MessageTextPanel.class).get(0);
+            String contentHtml = contentPane.getText();
+            assertEquals(3, contentHtml.split("<br>", -1).length - 1, contentHtml);
+        });
+    }
+
+    @Test
+    void collapsible_content_is_built_on_first_expansion_and_reused_after_rebuild() throws Exception {
+        SwingUtilities.invokeAndWait(() -> {
+            var panel = userMessagePanel("Intro\n\n" + SNIPPET_MESSAGE);
+            assertEquals(List.of(), descendants(panel, MessageTextPanel.class));
+
+            descendants(panel, JButton.class).get(0).doClick(0);
+            var contentPane = descendants(panel, MessageTextPanel.class).get(0);
+
+            // the text before the snippet changes, shifting its offsets, but not its ordinal
+            var markdown = "A much longer introduction\n\n" + SNIPPET_MESSAGE;
+            panel.updateMessage(TextFragment.of(markdown, new UserMessageHtmlFormatter().format(TextFragment.of(markdown))));
+            assertEquals(List.of(), descendants(panel, MessageTextPanel.class));
+
+            descendants(panel, JButton.class).get(0).doClick(0);
+            assertEquals(List.of(contentPane), descendants(panel, MessageTextPanel.class));
+        });
+    }
+
+    @Test
+    void collapsible_content_is_not_reused_for_different_snippet() throws Exception {
+        SwingUtilities.invokeAndWait(() -> {
+            var panel = userMessagePanel("Intro\n\n" + SNIPPET_MESSAGE);
+            descendants(panel, JButton.class).get(0).doClick(0);
+            var contentPane = descendants(panel, MessageTextPanel.class).get(0);
+
+            var markdown = "Intro\n\n" + SNIPPET_MESSAGE.replace("[Selected code]", "[Other code]");
+            panel.updateMessage(TextFragment.of(markdown, new UserMessageHtmlFormatter().format(TextFragment.of(markdown))));
+            descendants(panel, JButton.class).get(0).doClick(0);
+
+            var newContentPane = descendants(panel, MessageTextPanel.class).get(0);
+            assertNotSame(contentPane, newContentPane);
+        });
+    }
+
+    @Test
+    void growing_code_block_reuses_component_and_receives_appended_text() throws Exception {
+        SwingUtilities.invokeAndWait(() -> {
+            var panel = new MessageTextPanel(false);
+            panel.updateMessage(TextFragment.of("Intro\n\n```java\nint a = 1;\n```\n"));
+            var textArea = descendants(panel, RSyntaxTextArea.class).get(0);
+            var edits = new ArrayList<String>();
+            textArea.getDocument().addDocumentListener(new DocumentListener() {
+                @Override
+                public void insertUpdate(DocumentEvent e) {
+                    try {
+                        edits.add("+" + e.getDocument().getText(e.getOffset(), e.getLength()));
+                    } catch (BadLocationException ex) {
+                        throw new AssertionError(ex);
+                    }
+                }
+
+                @Override
+                public void removeUpdate(DocumentEvent e) {
+                    edits.add("-" + e.getLength());
+                }
+
+                @Override
+                public void changedUpdate(DocumentEvent e) { }
+            });
+
+            panel.updateMessage(TextFragment.of("Intro\n\n```java\nint a = 1;\nint b = 2;\n```\n"));
+
+            assertEquals(List.of(textArea), descendants(panel, RSyntaxTextArea.class));
+            assertEquals("int a = 1;\nint b = 2;", textArea.getText());
+            assertEquals(List.of("+\nint b = 2;"), edits);
+        });
+    }
+
+    static MessageTextPanel userMessagePanel(String markdown) {
+        var panel = new MessageTextPanel(true);
+        var message = TextFragment.of(markdown);
+        panel.updateMessage(TextFragment.of(markdown, new UserMessageHtmlFormatter().format(message)));
+        return panel;
+    }
+
+    static <T extends Component> List<T> descendants(Container parent, Class<T> type) {
+        var found = new ArrayList<T>();
+        for (Component child : parent.getComponents()) {
+            if (type.isInstance(child))
+                found.add(type.cast(child));
+            if (child instanceof Container container)
+                found.addAll(descendants(container, type));
+        }
+        return found;
+    }
+}
@@ -0,0 +1,121 @@
+package com.didalgo.intellij.chatgpt.ui.tool.window;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import javax.swing.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RenderSchedulerTest {
+
+    static final long FRAME_PERIOD = TimeUnit.MILLISECONDS.toNanos(16);
+
+    final AtomicLong clock = new AtomicLong();
+    /** The delays of frames scheduled so far, each frame run only when the test says so. */
+    final List<Long> scheduledFrames = new ArrayList<>();
+    final RenderScheduler scheduler = new RenderScheduler(FRAME_PERIOD, clock::get, scheduledFrames::add);
+    final List<String> rendered = new ArrayList<>();
+
+    @AfterEach
+    void tearDown() {
+        scheduler.dispose();
+    }
+
+    RenderScheduler.Renderable renderable(String name, long renderMillis) {
+        return () -> {
+            rendered.add(name);
+            advanceMillis(renderMillis);
+        };
+    }
+
+    void advanceMillis(long millis) {
+        clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(millis));
+    }
+
+    /** Runs the scheduled frame on time. */
+    void runFrame() {
+        clock.addAndGet(scheduledFrames.get(scheduledFrames.size() - 1));
+        scheduler.renderFrame();
+    }
+
+    @Test
+    void renderFrame_carries_over_renders_exceeding_frame_budget() {
+        scheduler.requestRender(renderable("first", 5));
+        scheduler.requestRender(renderable("second", 5));
+        scheduler.requestRender(renderable("third", 5));
+
+        runFrame();
+
+        assertEquals(List.of("first", "second"), rendered);
+        assertEquals(2, scheduledFrames.size());
+
+        runFrame();
+
+        assertEquals(List.of("first", "second", "third"), rendered);
+        assertEquals(2, scheduledFrames.size());
+    }
+
+    @Test
+    void requests_are_coalesced_until_next_frame() {
+        var target = renderable("target", 0);
+        int[] revalidations = { 0 };
+        var component = new JPanel() {
+            @Override
+            public void revalidate() {
+                revalidations[0]++;
+            }
+        };
+        int initialRevalidations = revalidations[0];
+        var tasks = new ArrayList<String>();
+
+        scheduler.requestRender(target);
+        scheduler.requestRender(target);
+        scheduler.requestLayout(component);
+        scheduler.requestLayout(component);
+        scheduler.invokeInFrame(() -> tasks.add("task"));
+        runFrame();
+
+        assertEquals(List.of(FRAME_PERIOD), scheduledFrames);
+        assertEquals(List.of("target"), rendered);
+        assertEquals(initialRevalidations + 1, revalidations[0]);
+        assertEquals(List.of("task"), tasks);
+
+        scheduler.requestRender(target);
+        runFrame();
+
+        assertEquals(List.of("target", "target"), rendered);
+        assertEquals(2, scheduledFrames.size());
+    }
+
+    @Test
+    void frame_period_stretches_under_load_and_recovers() {
+        for (int i = 0; i < 10; i++) {
+            scheduler.requestRender(renderable("slow", 20));
+            runFrame();
+        }
+        assertEquals(RenderScheduler.MAX_FRAME_PERIOD_NANOS, scheduler.getFramePeriodNanos());
+
+        for (int i = 0; i < 20; i++) {
+            scheduler.requestRender(renderable("fast", 0));
+            runFrame();
+        }
+        assertEquals(FRAME_PERIOD, scheduler.getFramePeriodNanos());
+    }
+
+    @Test
+    void frame_period_stretches_when_frames_lag_behind() {
+        scheduler.requestRender(renderable("target", 0));
+        clock.addAndGet(3 * FRAME_PERIOD);
+        scheduler.renderFrame();
+
+        assertEquals(2 * FRAME_PERIOD, scheduler.getFramePeriodNanos());
+
+        scheduler.requestRender(renderable("target", 0));
+        assertEquals(2 * FRAME_PERIOD, scheduledFrames.get(scheduledFrames.size() - 1));
+    }
+}
@@ -0,0 +1,112 @@
+package com.didalgo.intellij.chatgpt.ui.tool.window;
+
+import com.intellij.testFramework.junit5.TestApplication;
+import com.intellij.util.ui.JBUI;
+import org.junit.jupiter.api.Test;
+
+import javax.swing.*;
+import java.awt.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@TestApplication
+class VirtualConversationListTest {
+
+    final VirtualConversationList list = new VirtualConversationList();
+    final JViewport viewport = new JViewport();
+
+    /** An item of fixed height, counting how many times it has been measured. */
+    static class FakeItem extends JPanel {
+        int height;
+        int measureCount;
+
+        FakeItem(int height) {
+            this.height = height;
+        }
+
+        @Override
+        public Dimension getPreferredSize() {
+            measureCount++;
+            return new Dimension(10, height);
+        }
+    }
+
+    void showInViewport(int height) {
+        viewport.setView(list);
+        viewport.setSize(200, height);
+        viewport.doLayout();
+        list.doLayout();
+    }
+
+    void scrollTo(int y) {
+        viewport.setViewPosition(new Point(0, y));
+        list.doLayout();
+    }
+
+    @Test
+    void addItem_does_not_measure_existing_items() {
+        var items = new FakeItem[10_000];
+        for (int i = 0; i < items.length; i++)
+            list.addItem(items[i] = new FakeItem(100));
+
+        for (FakeItem item : items)
+            assertEquals(0, item.measureCount);
+        assertEquals(items.length * JBUI.scale(VirtualConversationList.DEFAULT_ITEM_HEIGHT), list.getPreferredSize().height);
+        assertEquals(0, list.getComponentCount());
+    }
+
+    @Test
+    void realizes_only_items_near_visible_part() {
+        for (int i = 0; i < 1000; i++)
+            list.addItem(new FakeItem(100));
+        showInViewport(300);
+
+        assertTrue(list.getComponentCount() <= 10, "Too many realized items: " + list.getComponentCount());
+        assertSame(list, list.getItem(0).getParent());
+        assertNull(list.getItem(20).getParent());
+
+        scrollTo(50_000);
+
+        assertTrue(list.getComponentCount() <= 10, "Too many realized items: " + list.getComponentCount());
+        assertNull(list.getItem(0).getParent());
+        assertNotNull(realizedItemAt(50_000));
+    }
+
+    Component realizedItemAt(int y) {
+        for (Component item : list.getComponents())
+            if (item.getY() <= y && y < item.getY() + item.getHeight())
+                return item;
+        return null;
+    }
+
+    @Test
+    void item_height_change_moves_following_items() {
+        var items = new FakeItem[5];
+        for (int i = 0; i < items.length; i++)
+            list.addItem(items[i] = new FakeItem(100));
+        showInViewport(300);
+        int totalHeight = list.getPreferredSize().height;
+        assertEquals(500, totalHeight);
+        assertEquals(200, items[2].getY());
+
+        items[1].height = 300;
+        list.doLayout();
+
+        assertEquals(300, items[1].getHeight());
+        assertEquals(400, items[2].getY());
+        assertEquals(totalHeight + 200, list.getPreferredSize().height);
+    }
+
+    @Test
+    void removeAllItems_forgets_measured_heights() {
+        for (int i = 0; i < 10; i++)
+            list.addItem(new FakeItem(40));
+        showInViewport(300);
+
+        list.removeAllItems();
+        list.addItem(new FakeItem(40));
+
+        assertEquals(0, list.getComponentCount());
+        assertEquals(JBUI.scale(VirtualConversationList.DEFAULT_ITEM_HEIGHT), list.getPreferredSize().height);
+    }
+}
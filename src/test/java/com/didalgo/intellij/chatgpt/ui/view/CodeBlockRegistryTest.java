@@ -0,0 +1,81 @@
+package com.didalgo.intellij.chatgpt.ui.view;
+
+import com.didalgo.intellij.chatgpt.util.StandardLanguage;
+import org.junit.jupiter.api.Test;
+
+import javax.swing.*;
+import javax.swing.text.Element;
+import javax.swing.text.StyleConstants;
+import javax.swing.text.html.HTML;
+import javax.swing.text.html.HTMLDocument;
+import javax.swing.text.html.HTMLEditorKit;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CodeBlockRegistryTest {
+
+    final CodeBlockRegistry registry = new CodeBlockRegistry();
+
+    static HTMLDocument document(String body) throws Exception {
+        var kit = new HTMLEditorKit();
+        var document = (HTMLDocument) kit.createDefaultDocument();
+        kit.read(new StringReader("<html><body>" + body + "</body></html>"), document, 0);
+        return document;
+    }
+
+    static List<Element> codeBlocks(Element element) {
+        var found = new ArrayList<Element>();
+        if (CodeBlockRegistry.isCodeBlock(element.getAttributes()))
+            found.add(element);
+        else
+            for (int i = 0; i < element.getElementCount(); i++)
+                found.addAll(codeBlocks(element.getElement(i)));
+        return found;
+    }
+
+    @Test
+    void indexOf_numbers_code_blocks_in_document_order() throws Exception {
+        var document = document("<div id=\"block-0\"><p>Intro</p><pre>int a;</pre></div>"
+                + "<div id=\"block-1\"><pre>int b;</pre><p>Between</p><pre>int c;</pre></div>"
+                + "<p>Outro</p><pre>int d;</pre>");
+        var codeBlocks = codeBlocks(document.getDefaultRootElement());
+
+        assertEquals(4, codeBlocks.size());
+        for (int i = 0; i < codeBlocks.size(); i++)
+            assertEquals(i, registry.indexOf(codeBlocks.get(i)));
+        assertEquals(4, registry.countCodeBlocks(document));
+    }
+
+    @Test
+    void indexOf_follows_replaced_top_level_elements() throws Exception {
+        var document = document("<div id=\"block-0\"><pre>int a;</pre></div><div id=\"block-1\"><p>Text</p></div>");
+        assertEquals(1, registry.countCodeBlocks(document));
+
+        document.setOuterHTML(document.getElement("block-1"), "<div id=\"block-1\"><pre>int b;</pre><pre>int c;</pre></div>");
+        var body = document.getElement(document.getDefaultRootElement(), StyleConstants.NameAttribute, HTML.Tag.BODY);
+        document.insertBeforeEnd(body, "<div id=\"block-2\"><pre>int d;</pre></div>");
+
+        var codeBlocks = codeBlocks(document.getDefaultRootElement());
+        assertEquals(3, registry.indexOf(codeBlocks.get(3)));
+        assertEquals(4, registry.countCodeBlocks(document));
+    }
+
+    @Test
+    void retainBelow_drops_components_of_vanished_code_blocks() {
+        var components = new ArrayList<JComponent>();
+        for (int i = 0; i < 3; i++) {
+            components.add(new JPanel());
+            registry.put(i, StandardLanguage.JAVA, components.get(i));
+        }
+
+        registry.retainBelow(2);
+
+        assertEquals(2, registry.size());
+        assertSame(components.get(1), registry.get(1, StandardLanguage.JAVA));
+        assertNull(registry.get(2, StandardLanguage.JAVA));
+        assertNull(registry.get(1, StandardLanguage.NONE));
+    }
+}
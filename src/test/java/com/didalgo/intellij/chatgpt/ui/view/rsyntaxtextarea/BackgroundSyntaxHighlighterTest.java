@@ -0,0 +1,81 @@
+package com.didalgo.intellij.chatgpt.ui.view.rsyntaxtextarea;
+
+import org.fife.ui.rsyntaxtextarea.RSyntaxTextArea;
+import org.fife.ui.rsyntaxtextarea.SyntaxConstants;
+import org.junit.jupiter.api.Test;
+
+import javax.swing.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BackgroundSyntaxHighlighterTest {
+
+    /** The tokenization tasks, run only when the test says so. */
+    final List<Runnable> tasks = new ArrayList<>();
+
+    static String largeCode(String name) {
+        return ("int " + name + " = 1;\n").repeat(BackgroundSyntaxHighlighter.LARGE_TEXT_CHARS / 8);
+    }
+
+    static RSyntaxTextArea javaTextArea() {
+        var textArea = new RSyntaxTextArea();
+        textArea.setSyntaxEditingStyle(SyntaxConstants.SYNTAX_STYLE_JAVA);
+        textArea.setEditable(false);
+        return textArea;
+    }
+
+    @Test
+    void install_carries_text_appended_while_tokenization_is_pending() throws Exception {
+        String text = largeCode("x");
+        var textArea = javaTextArea();
+        SwingUtilities.invokeAndWait(() -> {
+            BackgroundSyntaxHighlighter.setText(textArea, text, tasks::add);
+            textArea.append("int y = 2;\n");
+        });
+        assertTrue(BackgroundSyntaxHighlighter.isPending(textArea));
+
+        tasks.get(0).run();
+        SwingUtilities.invokeAndWait(() -> { });
+
+        assertFalse(BackgroundSyntaxHighlighter.isPending(textArea));
+        assertEquals(text + "int y = 2;\n", textArea.getText());
+        assertEquals(SyntaxConstants.SYNTAX_STYLE_JAVA, textArea.getSyntaxEditingStyle());
+    }
+
+    @Test
+    void setText_cancels_pending_tokenization() throws Exception {
+        var textArea = javaTextArea();
+        SwingUtilities.invokeAndWait(() -> {
+            BackgroundSyntaxHighlighter.setText(textArea, largeCode("x"), tasks::add);
+            BackgroundSyntaxHighlighter.setText(textArea, largeCode("y"), tasks::add);
+        });
+
+        assertTrue(((Future<?>) tasks.get(0)).isCancelled());
+        assertFalse(((Future<?>) tasks.get(1)).isCancelled());
+    }
+
+    @Test
+    void setText_ignores_stale_tokenization_result() throws Exception {
+        String newText = largeCode("y");
+        var textArea = javaTextArea();
+        SwingUtilities.invokeAndWait(() -> {
+            BackgroundSyntaxHighlighter.setText(textArea, largeCode("x"), tasks::add);
+            // the stale result is already on its way to the EDT when the text is replaced
+            tasks.get(0).run();
+            BackgroundSyntaxHighlighter.setText(textArea, newText, tasks::add);
+        });
+        SwingUtilities.invokeAndWait(() -> { });
+
+        assertTrue(BackgroundSyntaxHighlighter.isPending(textArea));
+        assertEquals(newText, textArea.getText());
+
+        tasks.get(1).run();
+        SwingUtilities.invokeAndWait(() -> { });
+
+        assertFalse(BackgroundSyntaxHighlighter.isPending(textArea));
+        assertEquals(newText, textArea.getText());
+    }
+}